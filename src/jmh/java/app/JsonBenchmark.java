@@ -0,0 +1,67 @@
+package app;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Jackson round-trips of the request and response bodies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private ObjectMapper mapper;
+    private byte[] upload;
+    private StatResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        upload = mapper.writeValueAsBytes(new UploadRequest(1508450400L, 42));
+
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        response = new StatResponse(new Statistics.Record(1, 1000, 500500, 1000), histogram, QUANTILES);
+    }
+
+    @Benchmark
+    public UploadRequest readUploadRequest() throws IOException {
+        return mapper.readValue(upload, UploadRequest.class);
+    }
+
+    @Benchmark
+    public byte[] uploadRequestRoundTrip() throws IOException {
+        return mapper.writeValueAsBytes(mapper.readValue(upload, UploadRequest.class));
+    }
+
+    @Benchmark
+    public byte[] writeStatResponse() throws IOException {
+        return mapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public JsonNode statResponseRoundTrip() throws IOException {
+        // StatResponse is write-only, it's read back as a tree like clients do
+        return mapper.readTree(mapper.writeValueAsBytes(response));
+    }
+}
@@ -0,0 +1,89 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single bump and of the histogram recording which is a part of it.
+ * <p>
+ * Uploads usually hit the current second, {@code bumpOneSecond} measures exactly that
+ * contention. {@code bumpSpreadSeconds} bumps random seconds of the window including sealed
+ * ones. Both are run by one thread and by as many threads as there are processors,
+ * other thread counts can be set with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBumpBenchmark {
+    private Statistics statistics;
+    private LogHistogram histogram;
+    private int[] compact;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        now = Instant.now().getEpochSecond();
+        // the clock is frozen, so the spread of seconds stays the same for the whole run
+        statistics = new Statistics(60, new VirtualClock(now));
+        histogram = new LogHistogram();
+        compact = new int[LogHistogram.BUCKETS];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void bumpOneSecond() {
+        statistics.bump(now, ThreadLocalRandom.current().nextInt(1, 100));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void bumpOneSecondAllThreads() {
+        statistics.bump(now, ThreadLocalRandom.current().nextInt(1, 100));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void bumpSpreadSeconds() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        statistics.bump(now + 1 - random.nextInt(60), random.nextInt(1, 100));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void bumpSpreadSecondsAllThreads() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        statistics.bump(now + 1 - random.nextInt(60), random.nextInt(1, 100));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordHistogram() {
+        LogHistogram.recordTo(compact, ThreadLocalRandom.current().nextInt(1, 100));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long mergeWindowHistograms() {
+        LogHistogram acc = new LogHistogram();
+        for (int i = 0; i < 60; i++) {
+            acc.add(histogram);
+        }
+        return acc.total();
+    }
+}
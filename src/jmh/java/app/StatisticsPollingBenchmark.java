@@ -0,0 +1,67 @@
+package app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a /statistics poll when many dashboards poll the same window:
+ * <ul>
+ * <li>{@code render} - report is built and serialized for every request, as without the cache</li>
+ * <li>{@code cached} - serialized report is taken from the cache for the current version</li>
+ * <li>{@code notModified} - client already has the current version, only the ETag is compared</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class StatisticsPollingBenchmark {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private WindowedStatistics statistics;
+    private ReportCache reports;
+
+    @Setup
+    public void setUp() {
+        long now = Instant.now().getEpochSecond();
+        statistics = new WindowedStatistics(new Statistics(60), new long[]{300, 3600, 86400}, EpochClock.system());
+        for (int i = 0; i < 100000; i++) {
+            statistics.bump(now - ThreadLocalRandom.current().nextInt(60), ThreadLocalRandom.current().nextInt(1, 100));
+        }
+        reports = new ReportCache(statistics, new ObjectMapper()::writeValueAsBytes, QUANTILES);
+    }
+
+    @Benchmark
+    public byte[] render() throws IOException {
+        statistics.version();
+        return reports.render(60, QUANTILES);
+    }
+
+    @Benchmark
+    public byte[] cached() throws IOException {
+        return reports.report(60, statistics.version());
+    }
+
+    @Benchmark
+    public long notModified() {
+        return statistics.version();
+    }
+}
@@ -0,0 +1,88 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reports for windows of 60 and 3,600 buckets with data in every bucket.
+ * <p>
+ * {@code fullReport} is served by the incremental window aggregate, {@code mergeSeconds}
+ * merges the records of all seconds one by one and {@code mergeRecords} is the pure cost of
+ * {@link Statistics.Record#merge} for the same number of records.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsReportBenchmark {
+    @Param({"60", "3600"})
+    private int buckets;
+
+    private Statistics statistics;
+    private Statistics.Record[] records;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        VirtualClock clock = new VirtualClock(1508450400L);
+        statistics = new Statistics(buckets, clock);
+        records = new Statistics.Record[buckets];
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < buckets; i++) {
+            for (int j = 0; j < 10; j++) {
+                statistics.bump(clock.epochSecond(), random.nextInt(1, 1000));
+            }
+            records[i] = statistics.get(clock.epochSecond());
+            clock.advance(1);
+        }
+        clock.advance(-1);
+        now = clock.epochSecond();
+    }
+
+    @Benchmark
+    public Statistics.Record fullReport() {
+        return statistics.fullReport();
+    }
+
+    @Benchmark
+    public Statistics.Record fullReportWithHistogram() {
+        LogHistogram histogram = new LogHistogram();
+        return statistics.fullReport(histogram);
+    }
+
+    @Benchmark
+    public Statistics.Record mergeSeconds() {
+        Statistics.Record acc = null;
+        for (long ts = now - buckets + 1; ts <= now; ts++) {
+            Statistics.Record r = statistics.get(ts);
+            if (null != r) {
+                acc = Statistics.Record.merge(acc, r);
+            }
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public Statistics.Record mergeRecords() {
+        Statistics.Record acc = null;
+        for (Statistics.Record r : records) {
+            acc = Statistics.Record.merge(acc, r);
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,139 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Overhead of the upload log on bump throughput and the time to replay a log on start.
+ * <p>
+ * {@code bump} is the baseline, {@code bumpAndAppend} logs every upload the same way the
+ * endpoint does. {@code replay} is a single shot which rebuilds statistics from
+ * {@link #REPLAY_UPLOADS} logged uploads.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadLogBenchmark {
+    private static final int REPLAY_UPLOADS = 10_000_000;
+
+    private VirtualClock clock;
+    private UploadValidator validator;
+    private WindowedStatistics statistics;
+    private UploadLog log;
+    private Path replayDir;
+    private Path appendDir;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        now = System.currentTimeMillis() / 1000;
+        clock = new VirtualClock(now);
+        validator = new UploadValidator(60);
+        replayDir = Files.createTempDirectory("upload-log");
+
+        // uploads for the replay
+        UploadLog writer = log(replayDir, new Statistics(60, clock));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < REPLAY_UPLOADS; i++) {
+            writer.append(now - random.nextInt(60), random.nextInt(1, 100));
+        }
+        stop(writer);
+
+        statistics = new WindowedStatistics(new Statistics(60, clock), new long[]{60}, clock);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(replayDir);
+    }
+
+    // the clock is frozen and segments never expire, so appends get a fresh log every iteration
+
+    @Setup(Level.Iteration)
+    public void openLog() throws IOException {
+        appendDir = Files.createTempDirectory("upload-log");
+        log = log(appendDir, new Statistics(60, clock));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeLog() throws IOException {
+        stop(log);
+        delete(appendDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Threads(Threads.MAX)
+    public void bump() {
+        statistics.bump(now, ThreadLocalRandom.current().nextInt(1, 100));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Threads(Threads.MAX)
+    public void bumpAndAppend() {
+        long count = ThreadLocalRandom.current().nextInt(1, 100);
+        log.append(now, count);
+        statistics.bump(now, count);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public long replay() throws IOException {
+        // the log is read but nothing is appended to it
+        UploadLog replay = log(replayDir, new Statistics(60, clock));
+        long replayed = replay.replayed();
+        stop(replay);
+        return replayed;
+    }
+
+    private UploadLog log(Path dir, Statistics seconds) throws IOException {
+        WindowedStatistics statistics = new WindowedStatistics(seconds, new long[]{60}, clock);
+        UploadLog log = new UploadLog(dir, 1 << 20, 1000, statistics, validator, clock);
+        log.start();
+        return log;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void stop(UploadLog log) {
+        try {
+            log.stop();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
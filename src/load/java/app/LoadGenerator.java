@@ -0,0 +1,457 @@
+package app;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load and soak harness: starts the server in this JVM on a random port and drives it with
+ * an open-model load of uploads and statistics reads (see {@link Schedule}).
+ * <p>
+ * A run is a warmup followed by the measured phase. The report has startup time, throughput, latency
+ * percentiles from the intended start of every request, response statuses, GC pauses and heap
+ * after a full GC. At the end the statistics of the recent seconds are compared with the
+ * uploads the server accepted, a mismatch fails the run with exit code 1.
+ * <p>
+ * Options are {@code --load.name=value} arguments, see {@link #DEFAULTS}. Other arguments
+ * are passed to the server, e.g. {@code --ingestion.async=true}. Latencies have the relative
+ * error of {@link LogHistogram}, at most 1/32. The generator shares the JVM with the server,
+ * so GC and heap numbers include its own garbage, which is a few objects per request.
+ */
+public class LoadGenerator {
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+    // spring or light
+    private static final String SERVER = "load.server";
+    private static final String WARMUP = "load.warmup";
+    private static final String DURATION = "load.duration";
+    // uploads per second, between bursts for the burst shape
+    private static final String RATE = "load.rate";
+    // constant or burst
+    private static final String SHAPE = "load.shape";
+    private static final String BURST_FACTOR = "load.burst-factor";
+    private static final String BURST_SECONDS = "load.burst-seconds";
+    private static final String BURST_PERIOD = "load.burst-period";
+    // timestamps are spread over this many seconds before now
+    private static final String SPREAD = "load.spread";
+    // fraction of uploads with timestamps older than any window
+    private static final String STALE = "load.stale";
+    private static final String MAX_COUNT = "load.max-count";
+    // statistics reads per second, 0 to disable
+    private static final String READ_RATE = "load.read-rate";
+    // threads sending requests, so the max number of requests in flight
+    private static final String CONNECTIONS = "load.connections";
+
+    static {
+        DEFAULTS.put(SERVER, "spring");
+        DEFAULTS.put(WARMUP, "10s");
+        DEFAULTS.put(DURATION, "60s");
+        DEFAULTS.put(RATE, "1000");
+        DEFAULTS.put(SHAPE, "constant");
+        DEFAULTS.put(BURST_FACTOR, "5");
+        DEFAULTS.put(BURST_SECONDS, "1");
+        DEFAULTS.put(BURST_PERIOD, "10");
+        DEFAULTS.put(SPREAD, "0");
+        DEFAULTS.put(STALE, "0");
+        DEFAULTS.put(MAX_COUNT, "10");
+        DEFAULTS.put(READ_RATE, "10");
+        DEFAULTS.put(CONNECTIONS, "64");
+    }
+
+    // stale timestamps are older than the largest default window
+    private static final long STALE_AGE = 2 * 24 * 3600;
+    // seconds compared at the end, well inside the one minute window
+    private static final int VERIFIED_SECONDS = 45;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private final String base;
+    private final Schedule uploads;
+    private final double readRate;
+    private final int connections;
+    private final int spread;
+    private final double stale;
+    private final int maxCount;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // accepted uploads by timestamp
+    private final Map<Long, Statistics.Record[]> accepted = new ConcurrentHashMap<>();
+
+    private LoadGenerator(int port, Map<String, String> options) {
+        this.base = "http://127.0.0.1:" + port;
+        double rate = Double.parseDouble(options.get(RATE));
+        switch (options.get(SHAPE)) {
+            case "constant":
+                this.uploads = Schedule.constant(rate);
+                break;
+            case "burst":
+                this.uploads = Schedule.bursts(rate, Double.parseDouble(options.get(BURST_FACTOR)),
+                        WindowedStatistics.parseWindow(options.get(BURST_SECONDS)),
+                        WindowedStatistics.parseWindow(options.get(BURST_PERIOD)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + options.get(SHAPE));
+        }
+        this.readRate = Double.parseDouble(options.get(READ_RATE));
+        this.connections = Integer.parseInt(options.get(CONNECTIONS));
+        this.spread = Integer.parseInt(options.get(SPREAD));
+        this.stale = Double.parseDouble(options.get(STALE));
+        this.maxCount = Integer.parseInt(options.get(MAX_COUNT));
+        if (connections <= 0 || spread < 0 || stale < 0 || stale > 1 || maxCount <= 0) {
+            throw new IllegalArgumentException("Invalid load options: " + options);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        Map<String, String> server = new HashMap<>();
+        server.put("server.address", "127.0.0.1");
+        server.put("server.port", "0");
+        for (Map.Entry<String, String> e : LightServer.options(args).entrySet()) {
+            (e.getKey().startsWith("load.") ? options : server).put(e.getKey(), e.getValue());
+        }
+        if (!DEFAULTS.keySet().containsAll(options.keySet())) {
+            throw new IllegalArgumentException("Unknown load options: " + options.keySet());
+        }
+        // keep-alive connections are pooled per destination, 5 by default
+        System.setProperty("http.maxConnections", options.get(CONNECTIONS));
+
+        boolean matches;
+        long started = System.nanoTime();
+        try (Server target = start(options.get(SERVER), server)) {
+            System.out.printf("Started %s server in %d ms%n", options.get(SERVER),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            LoadGenerator generator = new LoadGenerator(target.port(), options);
+            System.out.printf("Warming up %s server for %s%n", options.get(SERVER), options.get(WARMUP));
+            generator.run(WindowedStatistics.parseWindow(options.get(WARMUP)));
+
+            long heapBefore = heapAfterGc();
+            GcPauses pauses = new GcPauses();
+            System.out.printf("Running %s load at %s uploads/s for %s, timestamps spread over %s s, %s stale%n",
+                    options.get(SHAPE), options.get(RATE), options.get(DURATION), options.get(SPREAD),
+                    options.get(STALE));
+            Phase phase = generator.run(WindowedStatistics.parseWindow(options.get(DURATION)));
+            pauses.close();
+
+            phase.print();
+            pauses.print();
+            System.out.printf("heap after full GC: %d MB before, %d MB after%n", heapBefore >> 20, heapAfterGc() >> 20);
+            matches = generator.verify();
+        }
+        System.exit(matches ? 0 : 1);
+    }
+
+    /**
+     * Runs uploads and reads for a number of seconds.
+     */
+    private Phase run(long seconds) throws InterruptedException {
+        Phase phase = new Phase(seconds);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        int readers = 0 == readRate ? 0 : Math.max(1, connections / 16);
+
+        ExecutorService pool = Executors.newFixedThreadPool(connections + readers);
+        AtomicLong uploadSequence = new AtomicLong();
+        AtomicLong readSequence = new AtomicLong();
+        for (int i = 0; i < connections; i++) {
+            pool.submit(() -> drive(uploads, start, end, uploadSequence, this::upload, phase.uploads, phase));
+        }
+        for (int i = 0; i < readers; i++) {
+            pool.submit(() -> drive(Schedule.constant(readRate), start, end, readSequence,
+                    () -> request("GET", "/statistics", null), phase.reads, phase));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        phase.elapsedNanos = System.nanoTime() - start;
+        return phase;
+    }
+
+    private static void drive(Schedule schedule, long start, long end, AtomicLong sequence, Request request,
+                              LatencyRecorder latencies, Phase phase) {
+        for (long n = sequence.getAndIncrement(); ; n = sequence.getAndIncrement()) {
+            long due = start + schedule.offsetNanos(n);
+            if (due - end >= 0) {
+                return;
+            }
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            int status;
+            try {
+                status = request.send();
+            } catch (IOException ex) {
+                status = 0;
+            }
+            // from the intended start, so time spent waiting for a busy connection counts
+            latencies.record(System.nanoTime() - due);
+            phase.statuses.incrementAndGet(status);
+        }
+    }
+
+    private int upload() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = Instant.now().getEpochSecond();
+        long timestamp = random.nextDouble() < stale
+                ? now - STALE_AGE - random.nextInt(3600)
+                : now - random.nextInt(spread + 1);
+        long count = 1 + random.nextInt(maxCount);
+        int status = request("POST", "/upload",
+                String.format("{\"timestamp\":%d,\"count\":%d}", timestamp, count));
+        if (202 == status) {
+            Statistics.Record[] second = accepted.computeIfAbsent(timestamp, ts -> new Statistics.Record[1]);
+            synchronized (second) {
+                second[0] = Statistics.Record.merge(second[0], new Statistics.Record(count));
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Sends a request and reads the whole response, so the connection is reused.
+     *
+     * @return status of the response
+     */
+    private int request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestMethod(method);
+        if (null != body) {
+            connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (null != in) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[4096];
+                while (stream.read(buffer) >= 0) {
+                    // drained
+                }
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Compares statistics of the recent seconds with the accepted uploads.
+     * Uploads may be applied after they are accepted, so mismatches are retried for a while.
+     */
+    private boolean verify() throws IOException, InterruptedException {
+        long now = Instant.now().getEpochSecond();
+        long from = now - VERIFIED_SECONDS;
+        long to = now + 1;
+        Statistics.Record expected = Statistics.Record.empty();
+        for (long ts = from; ts <= to; ts++) {
+            Statistics.Record[] second = accepted.get(ts);
+            if (null != second) {
+                expected = 0 == expected.count ? second[0] : Statistics.Record.merge(expected, second[0]);
+            }
+        }
+
+        JsonNode actual = null;
+        for (int attempt = 0; attempt < 20; attempt++) {
+            actual = statistics(from, to);
+            if (matches(expected, actual)) {
+                System.out.printf("statistics of [%d, %d] match accepted uploads: count %d, sum %d%n",
+                        from, to, expected.count, expected.sum);
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        System.out.printf("statistics of [%d, %d] don't match accepted uploads: expected count %d, sum %d, "
+                + "min %d, max %d, got %s%n", from, to, expected.count, expected.sum, expected.min, expected.max, actual);
+        return false;
+    }
+
+    private JsonNode statistics(long from, long to) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                base + "/statistics?from=" + from + "&to=" + to).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return mapper.readTree(in);
+        }
+    }
+
+    private static boolean matches(Statistics.Record expected, JsonNode actual) {
+        return expected.count == actual.path("count").asLong()
+                && expected.sum == actual.path("sum").asLong()
+                && expected.min == actual.path("min").asLong()
+                && expected.max == actual.path("max").asLong();
+    }
+
+    private static long heapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static Server start(String kind, Map<String, String> options) throws IOException {
+        if ("light".equals(kind)) {
+            LightServer server = new LightServer(options);
+            server.start();
+            return new Server() {
+                @Override
+                public int port() {
+                    return server.port();
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        server.stop();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+        }
+        if (!"spring".equals(kind)) {
+            throw new IllegalArgumentException("Unknown server: " + kind);
+        }
+        List<String> properties = new ArrayList<>();
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            properties.add(e.getKey() + "=" + e.getValue());
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(properties.toArray(new String[0]))
+                .run();
+        int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+        return new Server() {
+            @Override
+            public int port() {
+                return port;
+            }
+
+            @Override
+            public void close() {
+                context.close();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        int send() throws IOException;
+    }
+
+    private interface Server extends AutoCloseable {
+        int port();
+
+        // doesn't throw, so try-with-resources isn't left with an InterruptedException to handle
+        @Override
+        void close();
+    }
+
+    /**
+     * Results of a run.
+     */
+    private static final class Phase {
+        private final long seconds;
+        private final LatencyRecorder uploads = new LatencyRecorder();
+        private final LatencyRecorder reads = new LatencyRecorder();
+        // requests by response status, 0 for I/O errors
+        private final AtomicLongArray statuses = new AtomicLongArray(600);
+        private long elapsedNanos;
+
+        Phase(long seconds) {
+            this.seconds = seconds;
+        }
+
+        void print() {
+            LogHistogram latencies = new LogHistogram();
+            uploads.addTo(latencies);
+            System.out.printf("uploads: %d in %d s, %.1f/s, latency %s%n", latencies.total(), seconds,
+                    latencies.total() * 1e9 / elapsedNanos, percentiles(latencies));
+            long accepted = statuses.get(202);
+            long ignored = statuses.get(204);
+            System.out.printf("uploads: 202 %d (%.2f%%), 204 %d (%.2f%%)%n", accepted,
+                    100.0 * accepted / Math.max(1, latencies.total()), ignored,
+                    100.0 * ignored / Math.max(1, latencies.total()));
+
+            LogHistogram reads = new LogHistogram();
+            this.reads.addTo(reads);
+            System.out.printf("reads: %d, latency %s%n", reads.total(), percentiles(reads));
+
+            StringBuilder other = new StringBuilder();
+            for (int status = 0; status < statuses.length(); status++) {
+                long n = statuses.get(status);
+                if (0 != n && 200 != status && 202 != status && 204 != status) {
+                    other.append(' ').append(0 == status ? "errors" : String.valueOf(status)).append(' ').append(n);
+                }
+            }
+            System.out.printf("other responses:%s%n", 0 == other.length() ? " none" : other);
+        }
+
+        private static String percentiles(LogHistogram nanos) {
+            return String.format("p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us",
+                    TimeUnit.NANOSECONDS.toMicros(nanos.valueAt(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(nanos.valueAt(0.9)),
+                    TimeUnit.NANOSECONDS.toMicros(nanos.valueAt(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(nanos.valueAt(0.999)),
+                    TimeUnit.NANOSECONDS.toMicros(nanos.valueAt(1)));
+        }
+    }
+
+    /**
+     * Collects durations of garbage collections reported by the JVM while it's open.
+     */
+    private static final class GcPauses implements NotificationListener {
+        // milliseconds, guarded by this
+        private final LogHistogram pauses = new LogHistogram();
+        private long total;
+
+        GcPauses() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, Object handback) {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                long millis = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                        .getGcInfo().getDuration();
+                pauses.record(millis);
+                total += millis;
+            }
+        }
+
+        void close() throws Exception {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).removeNotificationListener(this);
+            }
+        }
+
+        synchronized void print() {
+            System.out.printf("GC: %d collections, %d ms in total, p99 %d ms, max %d ms%n", pauses.total(), total,
+                    pauses.valueAt(0.99), pauses.valueAt(1));
+        }
+    }
+}
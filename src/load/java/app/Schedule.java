@@ -0,0 +1,57 @@
+package app;
+
+/**
+ * Intended start times of the requests of an open-model load.
+ * <p>
+ * The start time of request {@code n} depends only on {@code n}, not on how long earlier requests
+ * took. So a slow server makes requests late instead of making the generator send fewer of them,
+ * and latency is measured from the intended start. This avoids coordinated omission.
+ */
+@FunctionalInterface
+interface Schedule {
+    long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Returns the intended start of request n in nanoseconds since the start of the run.
+     */
+    long offsetNanos(long n);
+
+    /**
+     * Returns the schedule of requests evenly spaced at a rate.
+     *
+     * @param rate - requests per second
+     */
+    static Schedule constant(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        return n -> (long) (n * (NANOS_PER_SECOND / rate));
+    }
+
+    /**
+     * Returns the schedule of a steady rate with a burst at the start of every period.
+     *
+     * @param rate   - requests per second between bursts
+     * @param factor - how many times the rate is higher during a burst
+     * @param burst  - seconds of a burst
+     * @param period - seconds from the start of a burst to the start of the next one
+     */
+    static Schedule bursts(double rate, double factor, long burst, long period) {
+        if (rate <= 0 || factor <= 0) {
+            throw new IllegalArgumentException("Rate and burst factor must be positive: " + rate + ", " + factor);
+        }
+        if (burst <= 0 || burst >= period) {
+            throw new IllegalArgumentException("Burst must be shorter than its period: " + burst + ", " + period);
+        }
+        long inBurst = Math.max(1, Math.round(rate * factor * burst));
+        long calm = Math.max(1, Math.round(rate * (period - burst)));
+        return n -> {
+            long cycle = n / (inBurst + calm);
+            long i = n % (inBurst + calm);
+            long start = cycle * period * NANOS_PER_SECOND;
+            return i < inBurst
+                    ? start + (long) ((double) i * burst * NANOS_PER_SECOND / inBurst)
+                    : start + burst * NANOS_PER_SECOND + (long) ((double) (i - inBurst) * (period - burst) * NANOS_PER_SECOND / calm);
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package app;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an upload is processed or rejected cheaply before anything is done for it.
+ * <p>
+ * An upload needs a token of its client, see {@link TokenBuckets}, and a place under the limit
+ * of uploads in flight, see {@link ConcurrencyLimiter}. Reads are not limited here: the limit of
+ * uploads is kept below the number of server threads, so the rest are reserved for reads.
+ * <p>
+ * All operations are thread safe.
+ */
+class AdmissionControl {
+    enum Decision {
+        ADMITTED,
+        // the client is over its rate
+        THROTTLED,
+        // the server is over its concurrency limit
+        SHED
+    }
+
+    private final TokenBuckets clients;
+    private final ConcurrencyLimiter uploads;
+    private final long origin = System.nanoTime();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    AdmissionControl(TokenBuckets clients, ConcurrencyLimiter uploads) {
+        this.clients = clients;
+        this.uploads = uploads;
+    }
+
+    /**
+     * Decides on an upload, an admitted one must be reported by {@link #complete}.
+     *
+     * @param client - API key or address of the client
+     */
+    Decision admit(String client) {
+        // the limit goes first, so a shed upload doesn't cost its client a token
+        if (!uploads.tryAcquire()) {
+            shed.increment();
+            return Decision.SHED;
+        }
+        long millis = (System.nanoTime() - origin) / 1_000_000;
+        if (!clients.tryAcquire(UploaderStatistics.hash(client), millis)) {
+            uploads.cancel();
+            throttled.increment();
+            return Decision.THROTTLED;
+        }
+        admitted.increment();
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Reports completion of an admitted upload.
+     */
+    void complete(long latencyNanos) {
+        uploads.release(latencyNanos, System.nanoTime());
+    }
+
+    long admitted() {
+        return admitted.sum();
+    }
+
+    long throttled() {
+        return throttled.sum();
+    }
+
+    long shed() {
+        return shed.sum();
+    }
+
+    int limit() {
+        return uploads.limit();
+    }
+
+    int inFlight() {
+        return uploads.inFlight();
+    }
+}
@@ -0,0 +1,64 @@
+package app;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Applies {@link AdmissionControl} to uploads before their body is read,
+ * rejected ones get 429 without binding JSON.
+ * <p>
+ * A client is identified by its API key only if the key is one of the configured ones, otherwise by
+ * the remote address. So a client can't get a fresh token bucket by sending a new key every time,
+ * nor evict other clients from the table of buckets with made-up keys.
+ */
+class AdmissionFilter extends OncePerRequestFilter {
+    private final AdmissionControl control;
+    private final String keyHeader;
+    private final Set<String> keys;
+
+    /**
+     * @param keyHeader - header with API key of a client
+     * @param keys      - known API keys, the remote address is used without one of them
+     */
+    AdmissionFilter(AdmissionControl control, String keyHeader, Set<String> keys) {
+        this.control = control;
+        this.keyHeader = keyHeader;
+        this.keys = keys;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !"/upload".equals(path) && !"/upload/batch".equals(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String client = request.getHeader(keyHeader);
+        if (null == client || !keys.contains(client)) {
+            client = request.getRemoteAddr();
+        }
+        if (AdmissionControl.Decision.ADMITTED != control.admit(client)) {
+            response.setStatus(429);
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            control.complete(System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AdmissionResponse {
+    @JsonProperty
+    final long admitted;
+
+    @JsonProperty
+    final long throttled;
+
+    @JsonProperty
+    final long shed;
+
+    @JsonProperty
+    final int limit;
+
+    @JsonProperty
+    final int inFlight;
+
+    public AdmissionResponse(AdmissionControl control) {
+        this.admitted = control.admitted();
+        this.throttled = control.throttled();
+        this.shed = control.shed();
+        this.limit = control.limit();
+        this.inFlight = control.inFlight();
+    }
+}
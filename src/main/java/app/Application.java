@@ -1,70 +1,565 @@
 package app;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.Instant;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
 @RestController
 public class Application {
     private static Logger LOG = LoggerFactory.getLogger(Application.class);
     private static int STAT_WINDOW_SECS = 60;
+    // batches are grouped by second for the default window and one second ahead
+    private static int BATCH_GROUP_SECS = STAT_WINDOW_SECS + 2;
+    private static int MAX_TOP = 100;
+    private static int MAX_HISTORY_POINTS = 100_000;
 
     @Bean
-    Statistics statistics() {
-        return new Statistics(STAT_WINDOW_SECS);
+    Jackson2ObjectMapperBuilderCustomizer strictNumbers() {
+        // a count of 1.5 is malformed, not 1, as LightJson reads it
+        return builder -> builder.featuresToDisable(DeserializationFeature.ACCEPT_FLOAT_AS_INT);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    TickingClock clock(@Value("${clock.tick-millis:10}") long tickMillis) {
+        return new TickingClock(tickMillis);
+    }
+
+    @Bean
+    Statistics statistics(EpochClock clock, Optional<History> history,
+                          @Value("${storage.mapped-file:}") String mappedFile) throws IOException {
+        // one extra slot for timestamps which are one second ahead of server time
+        BucketStore storage = mappedFile.isEmpty()
+                ? new BucketRing(STAT_WINDOW_SECS + 1)
+                : new MappedBucketStore(Paths.get(mappedFile), STAT_WINDOW_SECS + 1);
+        return new Statistics(STAT_WINDOW_SECS, storage, history.orElse(null), clock);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "history.enabled", havingValue = "true")
+    History history(@Value("${history.max-bytes:67108864}") long maxBytes,
+                    @Value("${history.retention:7d}") String retention) {
+        return new History(maxBytes, WindowedStatistics.parseWindow(retention));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "history.enabled", havingValue = "true")
+    WindowSweeper windowSweeper(Statistics statistics) {
+        // several times per second, so no second leaves the window unsealed
+        return new WindowSweeper(statistics, 250);
+    }
+
+    @Bean
+    WindowedStatistics windowedStatistics(Statistics statistics, EpochClock clock,
+                                          @Value("${statistics.windows:1m,5m,1h,24h}") String[] windows) {
+        long[] seconds = Arrays.stream(windows).mapToLong(WindowedStatistics::parseWindow).toArray();
+        return new WindowedStatistics(statistics, seconds, clock);
+    }
+
+    @Bean
+    UploadValidator uploadValidator(WindowedStatistics statistics) {
+        // uploads are accepted as long as they get into the largest window
+        return new UploadValidator(statistics::oldest);
+    }
+
+    @Bean
+    ReportCache reportCache(WindowedStatistics statistics, Optional<UploaderStatistics> uploaders,
+                            ObjectMapper mapper,
+                            @Value("${statistics.quantiles:0.5,0.9,0.99}") String quantiles) {
+        return new ReportCache(statistics, uploaders.orElse(null), mapper::writeValueAsBytes,
+                ReportCache.parseQuantiles(quantiles));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "uploaders.enabled", havingValue = "true")
+    UploaderStatistics uploaderStatistics(EpochClock clock) {
+        return new UploaderStatistics(STAT_WINDOW_SECS, clock);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "persistence.enabled", havingValue = "true")
+    UploadLog uploadLog(WindowedStatistics statistics, UploadValidator validator, EpochClock clock,
+                        @Value("${persistence.dir:data}") String dir,
+                        @Value("${persistence.segment-records:1048576}") int segmentRecords,
+                        @Value("${persistence.fsync-millis:1000}") long fsyncMillis) {
+        return new UploadLog(Paths.get(dir), segmentRecords, fsyncMillis, statistics, validator, clock);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+    ClusterView clusterView(EpochClock clock,
+                            @Value("${cluster.node-id}") String node,
+                            @Value("${cluster.stale-secs:5}") long staleSecs) {
+        return new ClusterView(node, staleSecs, STAT_WINDOW_SECS, clock);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    StatisticsBroadcaster statisticsBroadcaster(WindowedStatistics statistics, ReportCache reports,
+                                                @Value("${stream.tick-millis:1000}") long tickMillis,
+                                                @Value("${stream.max-missed-frames:3}") int maxMissed,
+                                                @Value("${stream.writer-threads:4}") int writerThreads) {
+        return new StatisticsBroadcaster(statistics, reports, STAT_WINDOW_SECS, tickMillis, maxMissed, writerThreads);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+    ClusterExporter clusterExporter(WindowedStatistics statistics, EpochClock clock,
+                                    @Value("${cluster.node-id}") String node,
+                                    @Value("${cluster.peers:}") String[] peers,
+                                    @Value("${cluster.export-millis:1000}") long exportMillis) {
+        return new ClusterExporter(statistics, node, Arrays.asList(peers), exportMillis, clock);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dimensions.enabled", havingValue = "true")
+    DimensionStatistics dimensionStatistics(EpochClock clock,
+                                            @Value("${dimensions.max-tracked:4096}") int maxTracked) {
+        return new DimensionStatistics(STAT_WINDOW_SECS, maxTracked, clock);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "udp.enabled", havingValue = "true")
+    UdpListener udpListener(WindowedStatistics statistics, UploadValidator validator, EpochClock clock,
+                            Optional<UploadLog> log,
+                            @Value("${udp.host:0.0.0.0}") String host,
+                            @Value("${udp.port:8125}") int port,
+                            @Value("${udp.receive-buffer-bytes:0}") int receiveBufferBytes) {
+        return new UdpListener(statistics, validator, clock, log.orElse(null), new InetSocketAddress(host, port),
+                receiveBufferBytes);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "metrics.enabled", havingValue = "true", matchIfMissing = true)
+    Metrics metrics(WindowedStatistics statistics) {
+        return new Metrics(statistics);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "metrics.enabled", havingValue = "true", matchIfMissing = true)
+    MetricsFilter metricsFilter(Metrics metrics) {
+        return new MetricsFilter(metrics);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+    AdmissionControl admissionControl(@Value("${admission.clients:4096}") int clients,
+                                      @Value("${admission.rate:100}") long rate,
+                                      @Value("${admission.burst:200}") long burst,
+                                      @Value("${admission.min-concurrency:8}") int minConcurrency,
+                                      @Value("${admission.target-latency-millis:20}") long targetMillis,
+                                      @Value("${admission.reserved-reads:50}") int reservedReads,
+                                      @Value("${server.tomcat.max-threads:200}") int threads) {
+        // uploads never take the threads reserved for reads
+        int maxConcurrency = threads - reservedReads;
+        return new AdmissionControl(new TokenBuckets(clients, rate, burst),
+                new ConcurrencyLimiter(Math.min(minConcurrency, maxConcurrency), maxConcurrency,
+                        TimeUnit.MILLISECONDS.toNanos(targetMillis)));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+    AdmissionFilter admissionFilter(AdmissionControl control,
+                                    @Value("${admission.key-header:X-Api-Key}") String keyHeader,
+                                    @Value("${admission.api-keys:}") String[] keys) {
+        return new AdmissionFilter(control, keyHeader, new HashSet<>(Arrays.asList(keys)));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "ingestion.async", havingValue = "true")
+    AsyncIngestion asyncIngestion(WindowedStatistics statistics, UploadValidator validator, EpochClock clock,
+                                  Optional<UploadLog> log,
+                                  @Value("${ingestion.queue-capacity:65536}") int capacity,
+                                  @Value("${ingestion.drain-batch:4096}") int drainBatch,
+                                  @Value("${ingestion.overflow:UNAVAILABLE}") String overflow) {
+        return new AsyncIngestion(statistics, validator, BATCH_GROUP_SECS, capacity, drainBatch,
+                AsyncIngestion.Overflow.parse(overflow), clock, log.orElse(null));
     }
 
     @Autowired
-    private Statistics statistics;
+    private WindowedStatistics statistics;
+
+    // present only if uploads are applied asynchronously
+    @Autowired(required = false)
+    private AsyncIngestion ingestion;
+
+    // present only if uploads are persisted
+    @Autowired(required = false)
+    private UploadLog log;
+
+    // present only if statistics are broken down by dimension
+    @Autowired(required = false)
+    private DimensionStatistics dimensions;
+
+    // present only if uploaders are tracked
+    @Autowired(required = false)
+    private UploaderStatistics uploaders;
+
+    // present only if uploads are received over UDP
+    @Autowired(required = false)
+    private UdpListener udp;
+
+    // present only if the node is a part of a cluster
+    @Autowired(required = false)
+    private ClusterView cluster;
+
+    // present only if expired seconds are kept
+    @Autowired(required = false)
+    private History history;
+
+    // present only if uploads pass admission control
+    @Autowired(required = false)
+    private AdmissionControl admission;
+
+    // present unless instrumentation is turned off
+    @Autowired(required = false)
+    private Metrics metrics;
+
+    @Autowired
+    private StatisticsBroadcaster broadcaster;
+
+    @Value("${stream.timeout-millis:1800000}")
+    private long streamTimeoutMillis;
+
+    @Autowired
+    private UploadValidator validator;
+
+    @Autowired
+    private EpochClock clock;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private ReportCache reports;
+
+    private final ETags etags = new ETags();
 
 
     @RequestMapping(value = "/upload", consumes = {"application/json"}, method = RequestMethod.POST)
     public ResponseEntity<Void> batchUpload(@RequestBody UploadRequest req) {
-        long time = Instant.now().getEpochSecond();
+        long time = clock.epochSecond();
 
-        // if upload doesn't upload anything then return 204 code
-        if (req.getCount() <= 0) {
-            return ResponseEntity.status(204).build();
+        String dimension = req.getDimension();
+        if (null != dimension && !DimensionStatistics.isValid(dimension)) {
+            return ResponseEntity.badRequest().build();
+        }
+        String uploader = req.getUploader();
+        if (null != uploader && (uploader.isEmpty() || UploaderStatistics.MAX_LENGTH < uploader.length())) {
+            return ResponseEntity.badRequest().build();
         }
 
-        boolean isTooOld = STAT_WINDOW_SECS < (time - req.getTimestamp());
-
-        // client time could be ahead of server time. In general,
-        // it's a normal case when we get request from the future
-        // but we limit the difference by 1 seconds
-        boolean isFromFuture = 1 < (req.getTimestamp() - time);
-
-        if (isTooOld || isFromFuture) {
+        UploadValidator.Verdict verdict = validator.check(req.getTimestamp(), req.getCount(), time);
+        if (UploadValidator.Verdict.ACCEPTED != verdict) {
+            if (null != metrics) {
+                metrics.rejected(verdict);
+            }
             return ResponseEntity.status(204).build();
         }
 
+        if (null != ingestion) {
+            if (ingestion.submit(req.getTimestamp(), req.getCount())) {
+                bumpDimension(req);
+                bumpUploader(req);
+                return ResponseEntity.accepted().build();
+            }
+            boolean tooMany = AsyncIngestion.Overflow.TOO_MANY_REQUESTS == ingestion.overflow();
+            return ResponseEntity.status(tooMany ? 429 : 503).build();
+        }
+
+        // before statistics, so a report of the new version has the uploader
+        bumpUploader(req);
         try {
             statistics.bump(req.getTimestamp(), req.getCount());
+            // only what statistics took is logged, so a replay counts the same uploads
+            appendToLog(req);
+        } catch (ArithmeticException ex) {
+            if (null != metrics) {
+                metrics.overflowed();
+            }
+            LOG.error("Failed to report statistics", ex);
         } catch (Exception ex) {
             // I assumed that upload operation should not fail
             // if something wrong with statistics. Wrap to try-catch
             // and output exception to the log if it's thrown.
             LOG.error("Failed to report statistics", ex);
         }
+        bumpDimension(req);
 
         return ResponseEntity.accepted().build();
     }
 
+    /**
+     * Appends a counted upload to the log. An upload which can't be logged stays counted
+     * and accepted, it's only lost on restart, the same as the ones which wait for fsync.
+     */
+    private void appendToLog(UploadRequest req) {
+        if (null == log) {
+            return;
+        }
+        try {
+            log.append(req.getTimestamp(), req.getCount());
+        } catch (RuntimeException ex) {
+            LOG.error("Failed to append upload to the log", ex);
+        }
+    }
+
+    private void bumpUploader(UploadRequest req) {
+        if (null != uploaders && null != req.getUploader()) {
+            uploaders.bump(req.getUploader(), req.getTimestamp(), req.getCount());
+        }
+    }
+
+    private void bumpDimension(UploadRequest req) {
+        if (null == dimensions || null == req.getDimension()) {
+            return;
+        }
+        try {
+            dimensions.bump(req.getDimension(), req.getTimestamp(), req.getCount());
+        } catch (Exception ex) {
+            // the same as for statistics
+            LOG.error("Failed to report statistics of dimension", ex);
+        }
+    }
+
+    @RequestMapping(value = "/upload/batch", consumes = {"application/json", "application/x-ndjson"},
+            produces = {"application/json"}, method = RequestMethod.POST)
+    public ResponseEntity<BatchResponse> batchUploadMany(InputStream body) throws IOException {
+        UploadBatch batch = new UploadBatch(validator, BATCH_GROUP_SECS, clock.epochSecond(), log);
+        try (JsonParser parser = mapper.getFactory().createParser(body)) {
+            batch.read(parser);
+        }
+
+        try {
+            batch.applyTo(statistics);
+        } catch (Exception ex) {
+            // the same as for a single upload
+            LOG.error("Failed to report statistics", ex);
+        }
+
+        return ResponseEntity.accepted().body(new BatchResponse(batch.accepted(), batch.rejected()));
+    }
+
     @RequestMapping(value = "/statistics", produces = {"application/json"}, method = RequestMethod.GET)
-    public ResponseEntity<StatResponse> getStatistics() {
-        StatResponse response = new StatResponse(statistics.fullReport());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<byte[]> getStatistics(
+            @RequestParam(value = "window", required = false) String window,
+            @RequestParam(value = "quantiles", required = false) double[] quantiles,
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws IOException {
+        boolean ranged = null != from || null != to;
+        long first = null == from ? Long.MIN_VALUE : from;
+        long last = null == to ? Long.MAX_VALUE : to;
+        // a range is answered by the range tree which has no distributions
+        if (ranged && (null != window || null != quantiles || first > last)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        long windowSecs;
+        try {
+            windowSecs = null == window ? STAT_WINDOW_SECS : WindowedStatistics.parseWindow(window);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!statistics.supports(windowSecs)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (null != quantiles) {
+            for (double q : quantiles) {
+                if (q < 0 || q > 1) {
+                    return ResponseEntity.badRequest().build();
+                }
+            }
+        }
+
+        // the version is read before the report is built, so the report is never older than its ETag
+        long version = statistics.version();
+        String etag = etags.of(version);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        byte[] body;
+        if (ranged) {
+            body = mapper.writeValueAsBytes(new StatResponse(statistics.range(first, last)));
+        } else if (null == quantiles) {
+            body = reports.report(windowSecs, version);
+        } else {
+            body = reports.render(windowSecs, quantiles);
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(body);
+    }
+
+    @RequestMapping(value = "/statistics/series", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<SeriesResponse> getSeries(
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to) {
+        long first = null == from ? Long.MIN_VALUE : from;
+        long last = null == to ? Long.MAX_VALUE : to;
+        if (first > last) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(new SeriesResponse(statistics.series(first, last)));
+    }
+
+    @RequestMapping(value = "/statistics/history", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<SeriesResponse> getHistory(
+            @RequestParam(value = "from") long from,
+            @RequestParam(value = "to") long to,
+            @RequestParam(value = "step", required = false, defaultValue = "1") String step) {
+        if (null == history) {
+            return ResponseEntity.notFound().build();
+        }
+        long stepSecs;
+        try {
+            stepSecs = WindowedStatistics.parseWindow(step);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (from > to || stepSecs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        // the difference overflows for ranges wider than long
+        if (to - from < 0 || (to - from) / stepSecs >= MAX_HISTORY_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(new SeriesResponse(history.query(from, to, stepSecs)));
+    }
+
+    @RequestMapping(value = "/statistics/stream", produces = {"text/event-stream"}, method = RequestMethod.GET)
+    public SseEmitter streamStatistics() {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        StatisticsBroadcaster.Subscription subscription = broadcaster.subscribe(new SseSubscriber(emitter));
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        return emitter;
+    }
+
+    @RequestMapping(value = "/statistics/rates", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<RatesResponse> getRates() {
+        return ResponseEntity.ok(new RatesResponse(statistics));
+    }
+
+    @RequestMapping(value = "/statistics/top", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<TopResponse> getTopUploaders(
+            @RequestParam(value = "k", required = false, defaultValue = "10") int k) {
+        if (null == uploaders) {
+            return ResponseEntity.notFound().build();
+        }
+        if (k <= 0 || k > MAX_TOP) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(new TopResponse(uploaders.top(k)));
+    }
+
+    // the pattern keeps dots, otherwise suffix matching cuts "eu.west" to "eu"
+    @RequestMapping(value = "/statistics/{dimension:.+}", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<StatResponse> getDimensionStatistics(@PathVariable("dimension") String dimension) {
+        if (null == dimensions) {
+            return ResponseEntity.notFound().build();
+        }
+        Statistics.Record record = dimensions.report(dimension);
+        return ResponseEntity.ok(new StatResponse(null == record ? Statistics.Record.empty() : record));
+    }
+
+    @RequestMapping(value = "/statistics/cluster", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<ClusterResponse> getClusterStatistics() {
+        if (null == cluster) {
+            return ResponseEntity.notFound().build();
+        }
+        long now = clock.epochSecond();
+        long from = now - STAT_WINDOW_SECS + 1;
+        ClusterView.Report report = cluster.report(statistics.series(from, now + 1), from, now + 1);
+        return ResponseEntity.ok(new ClusterResponse(report));
+    }
+
+    @RequestMapping(value = ClusterExporter.PATH, consumes = {"application/octet-stream"},
+            method = RequestMethod.POST)
+    public ResponseEntity<Void> receiveBuckets(InputStream body) throws IOException {
+        if (null == cluster) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            cluster.accept(BucketCodec.decode(body));
+        } catch (IllegalArgumentException ex) {
+            LOG.debug("Malformed buckets", ex);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @RequestMapping(value = "/internal/ingestion", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<IngestionResponse> getIngestion() {
+        if (null == ingestion) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new IngestionResponse(ingestion));
+    }
+
+    @RequestMapping(value = "/internal/udp", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<UdpResponse> getUdp() {
+        if (null == udp) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new UdpResponse(udp));
+    }
+
+    @RequestMapping(value = "/internal/admission", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<AdmissionResponse> getAdmission() {
+        if (null == admission) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new AdmissionResponse(admission));
+    }
+
+    @RequestMapping(value = "/internal/metrics", produces = {"application/json"}, method = RequestMethod.GET)
+    public ResponseEntity<MetricsResponse> getMetrics() {
+        if (null == metrics) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new MetricsResponse(metrics));
+    }
+
+    @ExceptionHandler(JsonProcessingException.class)
+    public ResponseEntity<Void> malformedBatch(JsonProcessingException ex) {
+        LOG.debug("Malformed batch", ex);
+        return ResponseEntity.badRequest().build();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,212 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous ingestion of uploads.
+ * <p>
+ * Request threads only put validated uploads into {@link IngestionQueue}. A single consumer
+ * thread drains the queue in batches, groups every batch by second in {@link UploadBatch}
+ * and merges it into statistics once per second. So statistics sees a single writer
+ * instead of every request thread competing for the same second.
+ * <p>
+ * When the queue is full, uploads are either rejected or the request thread waits
+ * for free space, depending on {@link Overflow}.
+ */
+class AsyncIngestion {
+    private static Logger LOG = LoggerFactory.getLogger(AsyncIngestion.class);
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    enum Overflow {
+        // reject with 503 Service Unavailable
+        UNAVAILABLE,
+        // reject with 429 Too Many Requests
+        TOO_MANY_REQUESTS,
+        // wait until the consumer frees space
+        BLOCK;
+
+        /**
+         * Parses an overflow policy ignoring case.
+         *
+         * @throws IllegalArgumentException if the policy is unknown
+         */
+        static Overflow parse(String overflow) {
+            try {
+                return valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown overflow policy: " + overflow
+                        + ", expected one of " + Arrays.toString(values()));
+            }
+        }
+    }
+
+    private final IngestionQueue queue;
+    private final WindowedStatistics statistics;
+    private final UploadBatch batch;
+    private final int drainBatch;
+    private final Overflow overflow;
+    private final EpochClock clock;
+    private final IngestionQueue.Sink sink = this::collect;
+
+    private final LongAdder rejected = new LongAdder();
+    // written only by the consumer thread
+    private volatile long drained;
+    private volatile long dropped;
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    // the oldest upload of the current drain, consumer thread only
+    private long oldestEnqueuedAt;
+
+    private volatile boolean running;
+    private Thread consumer;
+
+    /**
+     * Creates new ingestion. It doesn't accept uploads until {@link #start()} is called.
+     *
+     * @param statistics - storage to apply uploads to
+     * @param validator  - rules to recheck uploads which waited in the queue for too long
+     * @param seconds    - number of recent seconds a drained batch is grouped for
+     * @param capacity   - size of the queue, must be a power of two
+     * @param drainBatch - max number of uploads applied at once
+     * @param overflow   - what to do when the queue is full
+     * @param clock      - source of current epoch time in seconds
+     * @param log        - log to append applied uploads to, nullable
+     */
+    AsyncIngestion(WindowedStatistics statistics, UploadValidator validator, int seconds,
+                   int capacity, int drainBatch, Overflow overflow, EpochClock clock, UploadLog log) {
+        this.queue = new IngestionQueue(capacity);
+        this.statistics = statistics;
+        this.clock = clock;
+        this.batch = new UploadBatch(validator, seconds, epoch(), log);
+        this.drainBatch = drainBatch;
+        this.overflow = overflow;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        consumer = new Thread(this::run, "ingestion-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Stops the consumer after everything in the queue is applied.
+     */
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(consumer);
+        consumer.join();
+    }
+
+    /**
+     * Puts an upload into the queue.
+     *
+     * @return false if the upload is rejected because the queue is full
+     */
+    boolean submit(long timestamp, long count) {
+        if (queue.offer(timestamp, count)) {
+            return true;
+        }
+        if (Overflow.BLOCK == overflow) {
+            while (running) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                if (queue.offer(timestamp, count)) {
+                    return true;
+                }
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    Overflow overflow() {
+        return overflow;
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    int capacity() {
+        return queue.capacity();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long drained() {
+        return drained;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the time the oldest upload of the latest drain spent in the queue.
+     */
+    long lastLagNanos() {
+        return lastLagNanos;
+    }
+
+    long maxLagNanos() {
+        return maxLagNanos;
+    }
+
+    private void run() {
+        while (running || 0 < queue.size()) {
+            if (0 == drainOnce()) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private int drainOnce() {
+        batch.reset(epoch());
+        oldestEnqueuedAt = Long.MAX_VALUE;
+
+        int n = queue.drain(sink, drainBatch);
+        if (0 == n) {
+            return 0;
+        }
+
+        try {
+            batch.applyTo(statistics);
+        } catch (Exception ex) {
+            // the same as for synchronous upload
+            LOG.error("Failed to report statistics", ex);
+        }
+
+        long lag = System.nanoTime() - oldestEnqueuedAt;
+        lastLagNanos = lag;
+        if (lag > maxLagNanos) {
+            maxLagNanos = lag;
+        }
+        drained += n;
+        dropped += batch.rejected();
+        return n;
+    }
+
+    private void collect(long timestamp, long count, long enqueuedNanos) {
+        oldestEnqueuedAt = Math.min(oldestEnqueuedAt, enqueuedNanos);
+        batch.add(timestamp, count);
+    }
+
+    private long epoch() {
+        return clock.epochSecond();
+    }
+}
@@ -0,0 +1,16 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BatchResponse {
+    @JsonProperty
+    final long accepted;
+
+    @JsonProperty
+    final long rejected;
+
+    public BatchResponse(long accepted, long rejected) {
+        this.accepted = accepted;
+        this.rejected = rejected;
+    }
+}
@@ -0,0 +1,124 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compact binary format of per-second buckets which nodes of the cluster exchange.
+ * <p>
+ * Layout: magic, format version, node id (modified UTF-8), export time, number of buckets
+ * and the buckets ordered by timestamp. The first timestamp is written as is, every next
+ * one as the delta from the previous one. All numbers except the magic, the version and
+ * the export time are variable-length: 7 bits per byte, min and max are zigzag-encoded
+ * since they can be negative. A minute of buckets with small counts takes a few hundred bytes.
+ */
+final class BucketCodec {
+    private static final int MAGIC = 0x5053;
+    private static final int VERSION = 1;
+    // a node never has more buckets than this, anything above is garbage
+    static final int MAX_BUCKETS = 1 << 20;
+    // enough for a minute window without growing
+    private static final int INITIAL_BUCKETS = 64;
+
+    private BucketCodec() {
+    }
+
+    static byte[] encode(String node, long exportedAt, Series series) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + series.size() * 8);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(node);
+            out.writeLong(exportedAt);
+            writeVarLong(out, series.size());
+
+            long previous = 0;
+            for (int i = 0; i < series.size(); i++) {
+                long ts = series.timestamp(i);
+                writeVarLong(out, zigzag(0 == i ? ts : ts - previous));
+                writeVarLong(out, zigzag(series.min(i)));
+                writeVarLong(out, zigzag(series.max(i)));
+                writeVarLong(out, zigzag(series.sum(i)));
+                writeVarLong(out, series.count(i));
+                previous = ts;
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // never happens for in-memory stream
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the content is not valid buckets
+     */
+    static NodeBuckets decode(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            if (MAGIC != in.readUnsignedShort() || VERSION != in.readUnsignedByte()) {
+                throw new IllegalArgumentException("Unknown format of buckets");
+            }
+            String node = in.readUTF();
+            long exportedAt = in.readLong();
+            long n = readVarLong(in);
+            if (n < 0 || n > MAX_BUCKETS) {
+                throw new IllegalArgumentException("Too many buckets: " + n);
+            }
+
+            // the number comes from a peer: memory is taken as buckets actually arrive, not upfront
+            Series series = new Series((int) Math.min(n, INITIAL_BUCKETS));
+            long ts = 0;
+            for (int i = 0; i < n; i++) {
+                long delta = unzigzag(readVarLong(in));
+                ts = 0 == i ? delta : ts + delta;
+                long min = unzigzag(readVarLong(in));
+                long max = unzigzag(readVarLong(in));
+                long sum = unzigzag(readVarLong(in));
+                long count = readVarLong(in);
+                if (count <= 0) {
+                    throw new IllegalArgumentException("Bucket without data: " + ts);
+                }
+                // throws IllegalArgumentException if timestamps are not ascending
+                series.add(ts, new Statistics.Record(min, max, sum, count));
+            }
+            return new NodeBuckets(node, exportedAt, series);
+        } catch (EOFException ex) {
+            throw new IllegalArgumentException("Buckets are truncated", ex);
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long v) throws IOException {
+        while (0 != (v & ~0x7FL)) {
+            out.write((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if (0 == (b & 0x80)) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length number");
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,353 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size ring of per-second buckets on the heap.
+ * <p>
+ * A timestamp is mapped to the slot {@code timestamp % capacity}. Every slot remembers
+ * the timestamp (epoch stamp) of the data it holds, so a slot resets itself when it is
+ * reused for a newer second. Old seconds never have to be searched for and removed:
+ * they are simply overwritten.
+ * <p>
+ * Usually all uploads hit the same second, so a slot is striped in the spirit of
+ * {@link java.util.concurrent.atomic.LongAdder}: it consists of several cells and
+ * every thread bumps the cell chosen by its probe. A thread which finds its cell busy
+ * moves to another one. Cells are merged only when the slot is read. Every cell has
+ * its own epoch stamp and is reset independently from others.
+ * <p>
+ * Cells store min/max/sum/count as primitive longs together with a compact
+ * {@link LogHistogram} of bumped values. The histogram of a cell is allocated on the first
+ * bump of the cell and reused afterwards, so cells no thread has bumped don't take memory
+ * and bump allocates only once per cell.
+ * <p>
+ * A second can be sealed once its data is handed over to some other aggregate.
+ * Bumps of a sealed second are not applied, the caller is told to apply them to
+ * both the ring and the aggregate with {@link #bumpSealed(long, long)}.
+ * <p>
+ * The ring knows nothing about the current time. Callers are responsible for not
+ * bumping or reading timestamps which are outside of the window.
+ * <p>
+ * All operations are thread safe.
+ */
+class BucketRing implements BucketStore {
+    private static final int MAX_STRIPES = 64;
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(
+            () -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    private final Cell[][] slots;
+    private final int stripeMask;
+    // attempts which found the cell busy, touched only on the contended path
+    private final LongAdder contended = new LongAdder();
+
+    /**
+     * Creates new ring with the number of stripes based on available processors.
+     *
+     * @param capacity - number of seconds the ring can hold at the same time
+     */
+    BucketRing(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates new ring.
+     *
+     * @param capacity - number of seconds the ring can hold at the same time
+     * @param stripes  - number of cells per second, rounded up to a power of two
+     */
+    BucketRing(int capacity, int stripes) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive: " + stripes);
+        }
+        int n = Math.min(MAX_STRIPES, Integer.highestOneBit(stripes - 1) << 1);
+        if (1 == stripes) {
+            n = 1;
+        }
+        this.stripeMask = n - 1;
+        this.slots = new Cell[capacity][n];
+        for (Cell[] slot : slots) {
+            for (int i = 0; i < n; i++) {
+                slot[i] = new Cell();
+            }
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    int stripes() {
+        return stripeMask + 1;
+    }
+
+    @Override
+    public long contended() {
+        return contended.sum();
+    }
+
+    @Override
+    public Outcome bump(long timestamp, long val) {
+        return bump(timestamp, val, false);
+    }
+
+    @Override
+    public Outcome bumpSealed(long timestamp, long val) {
+        return bump(timestamp, val, true);
+    }
+
+    @Override
+    public Outcome merge(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        return merge(timestamp, record, histogram, false);
+    }
+
+    @Override
+    public Outcome mergeSealed(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        return merge(timestamp, record, histogram, true);
+    }
+
+    private Outcome bump(long timestamp, long val, boolean ignoreSeal) {
+        Cell cell = acquire(slot(timestamp));
+        try {
+            Outcome outcome = cell.prepare(timestamp, ignoreSeal);
+            if (Outcome.ACCEPTED == outcome) {
+                cell.add(val, val, val, 1);
+                LogHistogram.recordTo(cell.histogram(), val);
+            }
+            return outcome;
+        } finally {
+            cell.unlock();
+        }
+    }
+
+    private Outcome merge(long timestamp, Statistics.Record record, LogHistogram histogram, boolean ignoreSeal) {
+        Cell cell = acquire(slot(timestamp));
+        try {
+            Outcome outcome = cell.prepare(timestamp, ignoreSeal);
+            if (Outcome.ACCEPTED == outcome) {
+                cell.add(record.min, record.max, record.sum, record.count);
+                histogram.addTo(cell.histogram());
+            }
+            return outcome;
+        } finally {
+            cell.unlock();
+        }
+    }
+
+    @Override
+    public Statistics.Record seal(long timestamp, LogHistogram histogram) {
+        Accumulator acc = new Accumulator(histogram);
+        for (Cell cell : slot(timestamp)) {
+            cell.lock();
+            try {
+                if (cell.epoch < timestamp) {
+                    cell.reset(timestamp);
+                }
+                if (cell.epoch == timestamp) {
+                    cell.sealed = true;
+                    acc.add(cell);
+                }
+            } finally {
+                cell.unlock();
+            }
+        }
+        return acc.toRecord();
+    }
+
+    @Override
+    public Statistics.Record get(long timestamp, LogHistogram histogram) {
+        Accumulator acc = new Accumulator(histogram);
+        acc.add(slot(timestamp), timestamp);
+        return acc.toRecord();
+    }
+
+    /**
+     * Returns the number of cells which have allocated a histogram.
+     */
+    int histograms() {
+        int n = 0;
+        for (Cell[] slot : slots) {
+            for (Cell cell : slot) {
+                cell.lock();
+                try {
+                    if (null != cell.histogram) {
+                        n++;
+                    }
+                } finally {
+                    cell.unlock();
+                }
+            }
+        }
+        return n;
+    }
+
+    private Cell[] slot(long timestamp) {
+        return slots[(int) Math.floorMod(timestamp, (long) slots.length)];
+    }
+
+    /**
+     * Locks a cell of the slot. Thread starts from the cell chosen by its probe
+     * and rehashes the probe every time the cell is busy.
+     */
+    private Cell acquire(Cell[] slot) {
+        int[] probe = PROBE.get();
+        int h = probe[0];
+        for (int attempt = 0; ; attempt++) {
+            Cell cell = slot[h & stripeMask];
+            if (cell.tryLock()) {
+                probe[0] = h;
+                return cell;
+            }
+            contended.increment();
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            if (attempt > stripeMask) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Merges cells of a single second.
+     */
+    private static final class Accumulator {
+        final LogHistogram histogram;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum;
+        long count;
+
+        Accumulator(LogHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        void add(Cell[] slot, long timestamp) {
+            for (Cell cell : slot) {
+                cell.lock();
+                try {
+                    if (cell.epoch == timestamp) {
+                        add(cell);
+                    }
+                } finally {
+                    cell.unlock();
+                }
+            }
+        }
+
+        void add(Cell cell) {
+            if (0 != cell.count) {
+                min = Math.min(min, cell.min);
+                max = Math.max(max, cell.max);
+                sum = Math.addExact(sum, cell.sum);
+                count = Math.addExact(count, cell.count);
+                if (null != histogram) {
+                    histogram.add(cell.histogram);
+                }
+            }
+        }
+
+        Statistics.Record toRecord() {
+            if (0 == count) {
+                return null;
+            }
+            return new Statistics.Record(min, max, sum, count);
+        }
+    }
+
+    // padding keeps frequently written cells of the same slot on different cache lines
+
+    @SuppressWarnings("unused")
+    private static class LeftPad {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private static class CellFields extends LeftPad {
+        static final AtomicIntegerFieldUpdater<CellFields> BUSY =
+                AtomicIntegerFieldUpdater.newUpdater(CellFields.class, "busy");
+
+        volatile int busy;
+        long epoch = Long.MIN_VALUE;
+        boolean sealed;
+        long min;
+        long max;
+        long sum;
+        long count;
+        // allocated on the first bump, guarded by busy
+        int[] histogram;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Cell extends CellFields {
+        long p11, p12, p13, p14, p15, p16, p17;
+
+        boolean tryLock() {
+            return 0 == busy && BUSY.compareAndSet(this, 0, 1);
+        }
+
+        void lock() {
+            while (!tryLock()) {
+                Thread.yield();
+            }
+        }
+
+        void unlock() {
+            busy = 0;
+        }
+
+        /**
+         * Returns the histogram, allocates it on the first call. Must be called under the cell lock.
+         */
+        int[] histogram() {
+            if (null == histogram) {
+                histogram = new int[LogHistogram.BUCKETS];
+            }
+            return histogram;
+        }
+
+        /**
+         * Resets the cell if it belongs to an older second. Must be called under the cell lock.
+         */
+        Outcome prepare(long timestamp, boolean ignoreSeal) {
+            if (epoch > timestamp) {
+                return Outcome.EXPIRED;
+            }
+            if (epoch < timestamp) {
+                reset(timestamp);
+            }
+            if (sealed && !ignoreSeal) {
+                return Outcome.SEALED;
+            }
+            return Outcome.ACCEPTED;
+        }
+
+        void reset(long timestamp) {
+            epoch = timestamp;
+            sealed = false;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            sum = 0;
+            // an empty cell has nothing recorded, so there is nothing to clear
+            if (0 != count) {
+                Arrays.fill(histogram, 0);
+            }
+            count = 0;
+        }
+
+        void add(long min, long max, long sum, long count) {
+            // calculate everything which can overflow first to keep cell untouched on failure
+            long newSum = Math.addExact(this.sum, sum);
+            long newCount = Math.addExact(this.count, count);
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum = newSum;
+            this.count = newCount;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package app;
+
+/**
+ * Fixed-size ring of per-second buckets behind {@link Statistics}.
+ * <p>
+ * A timestamp is mapped to the slot {@code timestamp % capacity} and every slot remembers the
+ * timestamp (epoch stamp) of the data it holds, so a slot resets itself when it's reused for a newer
+ * second. A second can be sealed once its data is handed over to some other aggregate, bumps of a
+ * sealed second are not applied and the caller is told to apply them to both the store and the
+ * aggregate with {@link #bumpSealed(long, long)}.
+ * <p>
+ * A store knows nothing about the current time. Callers are responsible for not bumping
+ * or reading timestamps which are outside of the window.
+ * <p>
+ * Implementations are thread safe.
+ *
+ * @see BucketRing
+ * @see MappedBucketStore
+ */
+interface BucketStore {
+    enum Outcome {
+        ACCEPTED,
+        // the slot is already taken by a newer second
+        EXPIRED,
+        // the second is sealed, value is not applied
+        SEALED
+    }
+
+    int capacity();
+
+    /**
+     * Returns the number of times a bump found its bucket busy.
+     */
+    long contended();
+
+    /**
+     * Bumps the given value for a specified timestamp.
+     *
+     * @param timestamp epoch time in UTC
+     * @param val       the value to bump
+     * @return outcome of the bump
+     * @throws ArithmeticException if the result overflows long
+     */
+    Outcome bump(long timestamp, long val);
+
+    /**
+     * Bumps the given value for a specified timestamp even if the second is sealed.
+     *
+     * @return outcome of the bump, never {@link Outcome#SEALED}
+     * @throws ArithmeticException if the result overflows long
+     */
+    Outcome bumpSealed(long timestamp, long val);
+
+    /**
+     * Merges pre-aggregated values into a specified timestamp.
+     *
+     * @param histogram - distribution of the values the record was built from
+     * @return outcome of the bump
+     * @throws ArithmeticException if the result overflows long
+     */
+    Outcome merge(long timestamp, Statistics.Record record, LogHistogram histogram);
+
+    /**
+     * Merges pre-aggregated values into a specified timestamp even if the second is sealed.
+     *
+     * @return outcome of the bump, never {@link Outcome#SEALED}
+     * @throws ArithmeticException if the result overflows long
+     */
+    Outcome mergeSealed(long timestamp, Statistics.Record record, LogHistogram histogram);
+
+    /**
+     * Seals a specified second and returns its snapshot.
+     *
+     * @param timestamp epoch time in UTC
+     * @param histogram - receives the distribution of the second, nullable
+     * @return snapshot of the second or null if there is no data for it
+     */
+    Statistics.Record seal(long timestamp, LogHistogram histogram);
+
+    /**
+     * Returns the snapshot of a specified second or null if the store doesn't hold it.
+     */
+    default Statistics.Record get(long timestamp) {
+        return get(timestamp, null);
+    }
+
+    /**
+     * Returns the snapshot of a specified second or null if the store doesn't hold it.
+     *
+     * @param histogram - receives the distribution of the second, nullable
+     */
+    Statistics.Record get(long timestamp, LogHistogram histogram);
+
+    /**
+     * Returns the number of non-empty seconds in range [from, to].
+     */
+    default int size(long from, long to) {
+        int size = 0;
+        for (long ts = Math.max(from, to - capacity() + 1); ts <= to; ts++) {
+            if (null != get(ts)) {
+                size++;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,136 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Periodically sends all live per-second buckets of the local node to peers,
+ * see {@link BucketCodec} and {@link ClusterView}.
+ * <p>
+ * Peers are pushed one by one from a single background thread. A peer which is down only
+ * costs a connection timeout, it gets the next export as soon as it's back.
+ */
+class ClusterExporter {
+    private static Logger LOG = LoggerFactory.getLogger(ClusterExporter.class);
+    static final String PATH = "/internal/cluster/buckets";
+
+    private final WindowedStatistics statistics;
+    private final String node;
+    private final List<URL> peers;
+    private final long intervalMillis;
+    private final EpochClock clock;
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean running;
+    private Thread exporter;
+
+    /**
+     * @param statistics     - storage of the local node
+     * @param node           - id of the local node
+     * @param peers          - base URLs of peers, e.g. http://10.0.0.2:8080
+     * @param intervalMillis - how often buckets are exported
+     * @param clock          - source of current epoch time in seconds
+     */
+    ClusterExporter(WindowedStatistics statistics, String node, List<String> peers, long intervalMillis,
+                    EpochClock clock) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Export interval must be positive: " + intervalMillis);
+        }
+        this.statistics = statistics;
+        this.node = node;
+        this.peers = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                this.peers.add(new URL(peer.trim().replaceAll("/+$", "") + PATH));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Malformed peer URL: " + peer, ex);
+            }
+        }
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        exporter = new Thread(this::run, "cluster-exporter");
+        exporter.setDaemon(true);
+        exporter.start();
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(exporter);
+        exporter.join();
+    }
+
+    /**
+     * Returns the number of exports which peers didn't take.
+     */
+    long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * Sends current buckets to every peer.
+     */
+    void export() {
+        byte[] body = BucketCodec.encode(node, clock.epochSecond(), statistics.series(Long.MIN_VALUE, Long.MAX_VALUE));
+        for (URL peer : peers) {
+            try {
+                send(peer, body);
+            } catch (IOException ex) {
+                failures.increment();
+                LOG.debug("Failed to export buckets to {}", peer, ex);
+            }
+        }
+    }
+
+    private void run() {
+        long nanos = intervalMillis * 1_000_000L;
+        while (running) {
+            export();
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private void send(URL peer, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) peer.openConnection();
+        try {
+            int timeout = (int) Math.min(Integer.MAX_VALUE, intervalMillis);
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new IOException("Peer replied with " + status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
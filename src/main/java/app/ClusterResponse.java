@@ -0,0 +1,19 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class ClusterResponse extends StatResponse {
+    @JsonProperty
+    final List<String> nodes;
+
+    @JsonProperty
+    final List<String> stale;
+
+    public ClusterResponse(ClusterView.Report report) {
+        super(report.record);
+        this.nodes = report.nodes;
+        this.stale = report.stale;
+    }
+}
@@ -0,0 +1,129 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statistics of the whole cluster built from the buckets peers export.
+ * <p>
+ * Every peer periodically sends all its live per-second buckets, the latest export of a peer
+ * replaces the previous one. A report merges the buckets of the local node and of every fresh
+ * peer second by second and then merges the seconds of the window, {@link Statistics.Record#merge}
+ * is associative, so the result is the same as if all uploads hit a single node.
+ * <p>
+ * A peer which hasn't sent anything for the staleness bound is left out of reports and listed
+ * as stale. A peer which is silent for longer than the window is forgotten, its buckets would
+ * be expired anyway.
+ * <p>
+ * All operations are thread safe.
+ */
+class ClusterView {
+    private final String self;
+    private final long staleSecs;
+    private final long forgetSecs;
+    private final EpochClock clock;
+    private final ConcurrentHashMap<String, Entry> peers = new ConcurrentHashMap<>();
+
+    /**
+     * @param self      - id of the local node, its own exports are ignored
+     * @param staleSecs - max age of peer buckets which are still merged
+     * @param window    - window of statistics in seconds
+     * @param clock     - source of current epoch time in seconds
+     */
+    ClusterView(String self, long staleSecs, long window, EpochClock clock) {
+        if (staleSecs <= 0) {
+            throw new IllegalArgumentException("Staleness bound must be positive: " + staleSecs);
+        }
+        this.self = self;
+        this.staleSecs = staleSecs;
+        this.forgetSecs = Math.max(staleSecs, window);
+        this.clock = clock;
+    }
+
+    /**
+     * Takes buckets of a peer unless newer ones are already taken.
+     */
+    void accept(NodeBuckets buckets) {
+        if (self.equals(buckets.node)) {
+            return;
+        }
+        Entry entry = new Entry(buckets, clock.epochSecond());
+        peers.merge(buckets.node, entry, (old, e) -> old.buckets.exportedAt > e.buckets.exportedAt ? old : e);
+    }
+
+    /**
+     * Merges local buckets with buckets of fresh peers.
+     *
+     * @param local - buckets of the local node
+     * @param from  - the oldest second of the window, inclusive
+     * @param to    - the newest second of the window, inclusive
+     */
+    Report report(Series local, long from, long to) {
+        long now = clock.epochSecond();
+        peers.values().removeIf(e -> forgetSecs < now - e.receivedAt);
+
+        Statistics.Record[] seconds = new Statistics.Record[(int) Math.max(0, to - from + 1)];
+        List<String> nodes = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+
+        nodes.add(self);
+        add(seconds, local, from, to);
+        for (Entry entry : peers.values()) {
+            if (staleSecs < now - entry.receivedAt) {
+                stale.add(entry.buckets.node);
+            } else {
+                nodes.add(entry.buckets.node);
+                add(seconds, entry.buckets.series, from, to);
+            }
+        }
+
+        Statistics.Record total = null;
+        for (Statistics.Record r : seconds) {
+            if (null != r) {
+                total = Statistics.Record.merge(total, r);
+            }
+        }
+        Collections.sort(nodes);
+        Collections.sort(stale);
+        return new Report(null == total ? Statistics.Record.empty() : total, nodes, stale);
+    }
+
+    private static void add(Statistics.Record[] seconds, Series series, long from, long to) {
+        for (int i = 0; i < series.size(); i++) {
+            long ts = series.timestamp(i);
+            if (from <= ts && ts <= to) {
+                Statistics.Record r = new Statistics.Record(
+                        series.min(i), series.max(i), series.sum(i), series.count(i));
+                int idx = (int) (ts - from);
+                seconds[idx] = Statistics.Record.merge(seconds[idx], r);
+            }
+        }
+    }
+
+    static final class Report {
+        final Statistics.Record record;
+        // ids of nodes whose buckets are merged, including the local one
+        final List<String> nodes;
+        // ids of peers which are left out
+        final List<String> stale;
+
+        Report(Statistics.Record record, List<String> nodes, List<String> stale) {
+            this.record = record;
+            this.nodes = nodes;
+            this.stale = stale;
+        }
+    }
+
+    private static final class Entry {
+        final NodeBuckets buckets;
+        // local epoch second when the buckets were received
+        final long receivedAt;
+
+        Entry(NodeBuckets buckets, long receivedAt) {
+            this.buckets = buckets;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit of requests in flight which adapts to their latency (AIMD).
+ * <p>
+ * While requests complete within the target latency and use at least half of the limit, the limit
+ * grows by one per {@code limit} completed requests. A request slower than the target cuts the limit
+ * by {@link #BACKOFF}, at most once per target latency, so a burst of slow requests which were
+ * admitted together counts once. The limit stays in range [min, max].
+ * <p>
+ * All operations are thread safe and lock free.
+ */
+class ConcurrencyLimiter {
+    static final double BACKOFF = 0.9;
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final int min;
+    private final int max;
+    private final long targetNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger limit;
+    private final AtomicInteger completed = new AtomicInteger();
+    // time of the last backoff, NEVER until there is one
+    private final AtomicLong lastBackoff = new AtomicLong(NEVER);
+
+    /**
+     * @param min         - the lowest limit
+     * @param max         - the highest limit, also the initial one
+     * @param targetNanos - latency above which the limit goes down
+     */
+    ConcurrencyLimiter(int min, int max, long targetNanos) {
+        if (min <= 0 || min > max) {
+            throw new IllegalArgumentException("Limits must be positive and min not above max: " + min + ", " + max);
+        }
+        if (targetNanos <= 0) {
+            throw new IllegalArgumentException("Target latency must be positive: " + targetNanos);
+        }
+        this.min = min;
+        this.max = max;
+        this.targetNanos = targetNanos;
+        this.limit = new AtomicInteger(max);
+    }
+
+    /**
+     * Takes a place of a request if the limit is not reached,
+     * the place must be given back by {@link #release} or {@link #cancel}.
+     */
+    boolean tryAcquire() {
+        for (;;) {
+            int n = inFlight.get();
+            if (n >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a place of a completed request.
+     *
+     * @param latencyNanos - how long the request took
+     * @param now          - monotonic time in nanoseconds when it completed
+     */
+    void release(long latencyNanos, long now) {
+        int busy = inFlight.getAndDecrement();
+        int current = limit.get();
+        if (latencyNanos > targetNanos) {
+            long last = lastBackoff.get();
+            if ((NEVER == last || now - last >= targetNanos) && lastBackoff.compareAndSet(last, now)) {
+                limit.compareAndSet(current, Math.max(min, (int) (current * BACKOFF)));
+                completed.set(0);
+            }
+        } else if (2 * busy >= current && current < max && completed.incrementAndGet() >= current) {
+            completed.set(0);
+            limit.compareAndSet(current, current + 1);
+        }
+    }
+
+    /**
+     * Gives back a place which wasn't used, the limit doesn't change.
+     */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    int limit() {
+        return limit.get();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
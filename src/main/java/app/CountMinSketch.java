@@ -0,0 +1,93 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min Sketch of weighted items identified by 64-bit hashes.
+ * <p>
+ * There are {@code depth} rows of {@code width} counters, an item adds its weight to one
+ * counter per row and is estimated by the smallest of them. Estimates are never below the
+ * true weight. With total weight {@code N} of all added items an estimate exceeds the true
+ * weight by more than {@code e / width * N} with probability at most {@code e^-depth}.
+ * <p>
+ * Memory is fixed, sketches of the same size are merged by adding counters.
+ * <p>
+ * Not thread safe.
+ */
+class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * @param depth - number of rows, the probability of a bad estimate is e^-depth
+     * @param width - counters per row, power of two, the error is e / width of the total weight
+     */
+    CountMinSketch(int depth, int width) {
+        if (depth <= 0 || depth > 8 || width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Depth must be in [1, 8] and width a power of two: %d x %d", depth, width));
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    void add(long hash, long weight) {
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + index(hash, row)] += weight;
+        }
+        total += weight;
+    }
+
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the total weight of all added items.
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Returns the max overestimate which holds with probability {@link #confidence()}.
+     */
+    double errorBound() {
+        return Math.E / width * total;
+    }
+
+    double confidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    void add(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Sketches of different sizes can't be merged");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    void reset() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+
+    /**
+     * Derives independent indexes from halves of the hash (Kirsch-Mitzenmacher).
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return (h1 + row * h2) & (width - 1);
+    }
+}
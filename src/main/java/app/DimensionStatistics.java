@@ -0,0 +1,349 @@
+package app;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the recent window broken down by an arbitrary dimension, e.g. user, device or region.
+ * <p>
+ * Memory is bounded by the number of tracked dimensions. Every tracked dimension gets an entry id,
+ * all per-entry data lives in primitive arrays indexed by it: a compact ring of per-second
+ * min/max/sum/count buckets (without histograms), links of the LRU list and of the
+ * {@link TimerWheel}. Dimensions are found by an open-addressed table of entry ids with
+ * linear probing. Nothing is allocated per upload once a dimension is tracked.
+ * <p>
+ * A dimension expires when its newest upload leaves the window, the timer wheel finds such
+ * dimensions in O(1) per second instead of scanning all of them. When all entries are taken,
+ * the least recently used dimension is evicted to make room for a new one.
+ * <p>
+ * Dimensions are spread over segments by hash to reduce contention, every segment has its own
+ * lock, part of the cap, LRU list and wheel. So LRU order is kept per segment.
+ * <p>
+ * All operations are thread safe.
+ */
+class DimensionStatistics {
+    // dimensions are names, not documents
+    static final int MAX_LENGTH = 128;
+    // names of other endpoints under /statistics/, a dimension called so could never be queried
+    static final Set<String> RESERVED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "series", "history", "stream", "rates", "top", "cluster")));
+    private static final int MAX_SEGMENTS = 16;
+    private static final int NONE = -1;
+
+    private final int ttl;
+    private final EpochClock clock;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Returns whether a dimension can be queried by {@code /statistics/{dimension}}: it is not empty,
+     * not too long, has no slash and is not a name of another endpoint.
+     */
+    static boolean isValid(String dimension) {
+        return !dimension.isEmpty() && dimension.length() <= MAX_LENGTH
+                && dimension.indexOf('/') < 0 && !RESERVED.contains(dimension);
+    }
+
+    /**
+     * @param ttl        - window time
+     * @param maxTracked - max number of tracked dimensions
+     * @param clock      - source of current epoch time in seconds
+     */
+    DimensionStatistics(int ttl, int maxTracked, EpochClock clock) {
+        this(ttl, maxTracked, Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxTracked / 64))), clock);
+    }
+
+    /**
+     * @param ttl        - window time
+     * @param maxTracked - max number of tracked dimensions, split evenly between segments
+     * @param segments   - number of segments, power of two
+     * @param clock      - source of current epoch time in seconds
+     */
+    DimensionStatistics(int ttl, int maxTracked, int segments, EpochClock clock) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + ttl);
+        }
+        if (maxTracked <= 0) {
+            throw new IllegalArgumentException("Number of tracked dimensions must be positive: " + maxTracked);
+        }
+        if (segments <= 0 || Integer.bitCount(segments) != 1 || segments > maxTracked) {
+            throw new IllegalArgumentException("Number of segments must be a power of two up to the cap: "
+                    + segments);
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+        this.segments = new Segment[segments];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segments);
+        long now = clock.epochSecond();
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment((maxTracked + segments - 1) / segments, now);
+        }
+    }
+
+    /**
+     * Bumps the given value for a specified timestamp of a dimension.
+     * Timestamps outside of the window are ignored.
+     *
+     * @throws ArithmeticException if the result overflows long
+     */
+    void bump(String dimension, long timestamp, long count) {
+        int hash = hash(dimension);
+        segment(hash).bump(dimension, hash, timestamp, count, clock.epochSecond());
+    }
+
+    /**
+     * Returns statistics of a dimension for the window or null if there is no data.
+     */
+    Statistics.Record report(String dimension) {
+        int hash = hash(dimension);
+        return segment(hash).report(dimension, hash, clock.epochSecond());
+    }
+
+    /**
+     * Returns the number of tracked dimensions.
+     */
+    int size() {
+        int size = 0;
+        long now = clock.epochSecond();
+        for (Segment segment : segments) {
+            size += segment.size(now);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of dimensions which were evicted to make room for new ones.
+     */
+    long evicted() {
+        return evicted.sum();
+    }
+
+    /**
+     * Returns the number of dimensions which expired because they had no uploads in the window.
+     */
+    long expired() {
+        return expired.sum();
+    }
+
+    private Segment segment(int hash) {
+        return 1 == segments.length ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(String dimension) {
+        int h = dimension.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private final class Segment {
+        private final int capacity;
+        private final int[] table;
+        private final int mask;
+
+        private final String[] keys;
+        private final int[] hashes;
+        // the newest bumped second of every entry
+        private final long[] newest;
+        // free entry ids
+        private final int[] free;
+        private int freeSize;
+
+        // least recently used list, head is the most recent
+        private final int[] lruPrev;
+        private final int[] lruNext;
+        private int lruHead = NONE;
+        private int lruTail = NONE;
+
+        private final TimerWheel wheel;
+
+        // ring of ttl + 1 buckets per entry, one for the second ahead of server time
+        private final int ring;
+        private final long[] epochs;
+        private final long[] min;
+        private final long[] max;
+        private final long[] sum;
+        private final long[] count;
+
+        Segment(int capacity, long now) {
+            this.capacity = capacity;
+            this.table = new int[Integer.highestOneBit(Math.max(2, 2 * capacity - 1)) << 1];
+            this.mask = table.length - 1;
+            Arrays.fill(table, NONE);
+
+            this.keys = new String[capacity];
+            this.hashes = new int[capacity];
+            this.newest = new long[capacity];
+            this.free = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                free[i] = capacity - 1 - i;
+            }
+            this.freeSize = capacity;
+            this.lruPrev = new int[capacity];
+            this.lruNext = new int[capacity];
+            this.wheel = new TimerWheel(capacity, now);
+
+            this.ring = ttl + 1;
+            this.epochs = new long[capacity * ring];
+            this.min = new long[capacity * ring];
+            this.max = new long[capacity * ring];
+            this.sum = new long[capacity * ring];
+            this.count = new long[capacity * ring];
+            Arrays.fill(epochs, Long.MIN_VALUE);
+        }
+
+        synchronized void bump(String key, int hash, long timestamp, long val, long now) {
+            if (ttl <= now - timestamp || now + 1 < timestamp) {
+                return;
+            }
+            wheel.advance(now, this::expire);
+
+            int id = find(key, hash);
+            if (NONE == id) {
+                id = insert(key, hash);
+            } else {
+                unlinkLru(id);
+            }
+            linkLru(id);
+
+            int b = id * ring + (int) Math.floorMod(timestamp, (long) ring);
+            if (epochs[b] != timestamp) {
+                // the bucket holds an expired second, a newer one can't be there
+                epochs[b] = timestamp;
+                min[b] = Long.MAX_VALUE;
+                max[b] = Long.MIN_VALUE;
+                sum[b] = 0;
+                count[b] = 0;
+            }
+            long newSum = Math.addExact(sum[b], val);
+            long newCount = Math.addExact(count[b], 1);
+            min[b] = Math.min(min[b], val);
+            max[b] = Math.max(max[b], val);
+            sum[b] = newSum;
+            count[b] = newCount;
+
+            if (timestamp > newest[id]) {
+                newest[id] = timestamp;
+                // the dimension is empty once its newest second expires
+                wheel.schedule(id, timestamp + ttl);
+            }
+        }
+
+        synchronized Statistics.Record report(String key, int hash, long now) {
+            wheel.advance(now, this::expire);
+            int id = find(key, hash);
+            if (NONE == id) {
+                return null;
+            }
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            long sum = 0;
+            long count = 0;
+            for (int b = id * ring, end = b + ring; b < end; b++) {
+                long epoch = epochs[b];
+                if (0 != this.count[b] && ttl > now - epoch && epoch <= now + 1) {
+                    min = Math.min(min, this.min[b]);
+                    max = Math.max(max, this.max[b]);
+                    sum = Math.addExact(sum, this.sum[b]);
+                    count = Math.addExact(count, this.count[b]);
+                }
+            }
+            return 0 == count ? null : new Statistics.Record(min, max, sum, count);
+        }
+
+        synchronized int size(long now) {
+            wheel.advance(now, this::expire);
+            return capacity - freeSize;
+        }
+
+        private int find(String key, int hash) {
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int id = table[i];
+                if (NONE == id || (hashes[id] == hash && keys[id].equals(key))) {
+                    return id;
+                }
+            }
+        }
+
+        private int insert(String key, int hash) {
+            if (0 == freeSize) {
+                int lru = lruTail;
+                wheel.cancel(lru);
+                remove(lru);
+                evicted.increment();
+            }
+            int id = free[--freeSize];
+            keys[id] = key;
+            hashes[id] = hash;
+            newest[id] = Long.MIN_VALUE;
+            for (int b = id * ring, end = b + ring; b < end; b++) {
+                epochs[b] = Long.MIN_VALUE;
+            }
+
+            int i = hash & mask;
+            while (NONE != table[i]) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id;
+            return id;
+        }
+
+        private void expire(int id) {
+            remove(id);
+            expired.increment();
+        }
+
+        /**
+         * Removes an entry which is not scheduled in the wheel.
+         */
+        private void remove(int id) {
+            int i = hashes[id] & mask;
+            while (table[i] != id) {
+                i = (i + 1) & mask;
+            }
+            // backward shift deletion, entries which probed past the hole are moved into it
+            for (int j = (i + 1) & mask; NONE != table[j]; j = (j + 1) & mask) {
+                int home = hashes[table[j]] & mask;
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    table[i] = table[j];
+                    i = j;
+                }
+            }
+            table[i] = NONE;
+
+            unlinkLru(id);
+            keys[id] = null;
+            free[freeSize++] = id;
+        }
+
+        private void linkLru(int id) {
+            lruPrev[id] = NONE;
+            lruNext[id] = lruHead;
+            if (NONE != lruHead) {
+                lruPrev[lruHead] = id;
+            }
+            lruHead = id;
+            if (NONE == lruTail) {
+                lruTail = id;
+            }
+        }
+
+        private void unlinkLru(int id) {
+            if (NONE == lruPrev[id]) {
+                lruHead = lruNext[id];
+            } else {
+                lruNext[lruPrev[id]] = lruNext[id];
+            }
+            if (NONE == lruNext[id]) {
+                lruTail = lruPrev[id];
+            } else {
+                lruPrev[lruNext[id]] = lruPrev[id];
+            }
+        }
+    }
+}
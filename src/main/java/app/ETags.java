@@ -0,0 +1,38 @@
+package app;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ETags of statistics reports, shared by both servers so conditional requests behave the same.
+ * <p>
+ * An ETag is a version of statistics with a random prefix: versions start from scratch on restart,
+ * so ETags must not match the ones of another run.
+ */
+final class ETags {
+    private final String prefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    /**
+     * Returns the strong ETag of a version of statistics.
+     */
+    String of(long version) {
+        return "\"" + prefix + "-" + Long.toHexString(version) + "\"";
+    }
+
+    /**
+     * Checks If-None-Match header against an ETag, weak comparison is used as RFC 7232 requires.
+     *
+     * @param ifNoneMatch - header value, nullable
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || etag.equals(tag) || ("W/" + etag).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,25 @@
+package app;
+
+import java.time.Instant;
+
+/**
+ * Source of current epoch time in seconds.
+ * <p>
+ * Storage and endpoints read the time on every upload, so the clock should be cheap.
+ * {@link TickingClock} is used by the server, {@link VirtualClock} by tests and benchmarks.
+ */
+@FunctionalInterface
+interface EpochClock {
+
+    /**
+     * Returns current epoch time in UTC in seconds.
+     */
+    long epochSecond();
+
+    /**
+     * Returns the clock which asks the system on every call.
+     */
+    static EpochClock system() {
+        return () -> Instant.now().getEpochSecond();
+    }
+}
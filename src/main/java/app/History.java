@@ -0,0 +1,270 @@
+package app;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only history of per-second statistics which have left the window.
+ * <p>
+ * Seconds are compressed into blocks of {@link #BLOCK_BYTES} bytes in the spirit of Gorilla.
+ * Every second with data is encoded as zigzag varints of:
+ * <ul>
+ * <li>delta of delta of the timestamp, 1 byte for consecutive seconds</li>
+ * <li>deltas of count, sum and min from the previous second</li>
+ * <li>max - min</li>
+ * </ul>
+ * so steady traffic takes a few bytes per second. Deltas wrap around like the values do, decoding
+ * restores them exactly. The first second of a block is encoded against zeros, so blocks are
+ * decoded independently and a query decodes only the blocks which overlap its range.
+ * <p>
+ * Memory is bounded by a budget of bytes and by retention: the oldest blocks are dropped
+ * when either is exceeded.
+ * <p>
+ * All operations are thread safe. Sealed blocks never change, so queries decode them
+ * without holding the lock.
+ */
+class History {
+    static final int BLOCK_BYTES = 4096;
+    // 5 varints of up to 10 bytes
+    private static final int MAX_ENTRY_BYTES = 50;
+
+    private final int maxBlocks;
+    private final long retention;
+
+    // guarded by this
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    private Block current;
+    private long dropped;
+
+    /**
+     * @param maxBytes  - memory budget, at least one block
+     * @param retention - seconds to keep
+     */
+    History(long maxBytes, long retention) {
+        if (maxBytes < BLOCK_BYTES) {
+            throw new IllegalArgumentException("Budget must be at least " + BLOCK_BYTES + " bytes: " + maxBytes);
+        }
+        if (retention <= 0) {
+            throw new IllegalArgumentException("Retention must be positive: " + retention);
+        }
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, maxBytes / BLOCK_BYTES);
+        this.retention = retention;
+    }
+
+    /**
+     * Appends a second, seconds must be appended in ascending order.
+     * Seconds without data are skipped.
+     *
+     * @throws IllegalArgumentException if the second doesn't follow the last one
+     */
+    synchronized void append(long timestamp, long min, long max, long sum, long count) {
+        if (0 == count) {
+            return;
+        }
+        if (null != current && current.last >= timestamp) {
+            throw new IllegalArgumentException(
+                    String.format("Second %d doesn't follow %d", timestamp, current.last));
+        }
+        if (null == current || current.length > BLOCK_BYTES - MAX_ENTRY_BYTES) {
+            current = new Block(timestamp);
+            blocks.addLast(current);
+        }
+        current.append(timestamp, min, max, sum, count);
+        expire(timestamp);
+    }
+
+    /**
+     * Returns history in range [from, to] downsampled to steps. A step starts at
+     * {@code from + k * step} and aggregates its seconds, steps without data are skipped.
+     *
+     * @return records of steps ordered by their start
+     */
+    Series query(long from, long to, long step) {
+        if (from > to || step <= 0) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + "] by " + step);
+        }
+        List<Block> overlapping = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        synchronized (this) {
+            for (Block block : blocks) {
+                if (block.first <= to && block.last >= from) {
+                    overlapping.add(block);
+                    lengths.add(block.length);
+                }
+            }
+        }
+
+        // a block holds at most BLOCK_BYTES / 5 seconds, the range may be wider than long
+        long steps = to - from < 0 ? Long.MAX_VALUE : (to - from) / step + 1;
+        Series series = new Series((int) Math.min(steps, (long) overlapping.size() * (BLOCK_BYTES / 5)));
+        Step acc = new Step();
+        for (int b = 0; b < overlapping.size(); b++) {
+            Decoder decoder = new Decoder(overlapping.get(b), lengths.get(b));
+            while (decoder.next()) {
+                long ts = decoder.timestamp;
+                if (ts < from) {
+                    continue;
+                }
+                if (ts > to) {
+                    break;
+                }
+                // ts - from doesn't fit into long for a wide range, but fits unsigned
+                long start = from + Long.divideUnsigned(ts - from, step) * step;
+                if (start != acc.start) {
+                    acc.flushTo(series);
+                    acc.start = start;
+                }
+                acc.add(decoder.min, decoder.max, decoder.sum, decoder.count);
+            }
+        }
+        acc.flushTo(series);
+        return series;
+    }
+
+    /**
+     * Returns the number of bytes taken by blocks.
+     */
+    synchronized long bytes() {
+        return (long) blocks.size() * BLOCK_BYTES;
+    }
+
+    /**
+     * Returns the oldest second in history or {@link Long#MAX_VALUE} if it's empty.
+     */
+    synchronized long oldest() {
+        return blocks.isEmpty() ? Long.MAX_VALUE : blocks.getFirst().first;
+    }
+
+    /**
+     * Returns the number of blocks dropped because of the budget or retention.
+     */
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    private void expire(long newest) {
+        while (blocks.size() > maxBlocks || (blocks.size() > 1 && blocks.getFirst().last <= newest - retention)) {
+            blocks.removeFirst();
+            dropped++;
+        }
+    }
+
+    private static final class Block {
+        final byte[] bytes = new byte[BLOCK_BYTES];
+        final long first;
+        // written under the lock of history
+        long last;
+        int length;
+        long lastDelta;
+        long lastMin;
+        long lastSum;
+        long lastCount;
+
+        Block(long first) {
+            this.first = first;
+            this.last = first;
+        }
+
+        void append(long timestamp, long min, long max, long sum, long count) {
+            long delta = timestamp - last;
+            writeVarint(zigzag(delta - lastDelta));
+            writeVarint(zigzag(count - lastCount));
+            writeVarint(zigzag(sum - lastSum));
+            writeVarint(zigzag(min - lastMin));
+            writeVarint(zigzag(max - min));
+            last = timestamp;
+            lastDelta = delta;
+            lastCount = count;
+            lastSum = sum;
+            lastMin = min;
+        }
+
+        private void writeVarint(long value) {
+            while (0 != (value & ~0x7FL)) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] bytes;
+        private final int length;
+        private int pos;
+        private long delta;
+
+        long timestamp;
+        long min;
+        long max;
+        long sum;
+        long count;
+
+        Decoder(Block block, int length) {
+            this.bytes = block.bytes;
+            this.length = length;
+            this.timestamp = block.first;
+        }
+
+        boolean next() {
+            if (pos >= length) {
+                return false;
+            }
+            delta += unzigzag(readVarint());
+            timestamp += delta;
+            count += unzigzag(readVarint());
+            sum += unzigzag(readVarint());
+            min += unzigzag(readVarint());
+            max = min + unzigzag(readVarint());
+            return true;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Aggregate of a step, sums wrap around like the ones of the window.
+     */
+    private static final class Step {
+        long start = Long.MIN_VALUE;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum;
+        long count;
+
+        void add(long min, long max, long sum, long count) {
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum += sum;
+            this.count += count;
+        }
+
+        void flushTo(Series series) {
+            if (0 != count) {
+                series.add(start, new Statistics.Record(min, max, sum, count));
+            }
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            sum = 0;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimator of the number of distinct items identified by 64-bit hashes.
+ * <p>
+ * The first {@code precision} bits of a hash pick one of {@code 2^precision} registers, the
+ * register keeps the max position of the first set bit of the rest. The relative standard
+ * error of an estimate is {@code 1.04 / sqrt(2^precision)}. Small cardinalities are estimated
+ * by linear counting of empty registers, which is more precise there.
+ * <p>
+ * Memory is fixed, estimators of the same precision are merged by taking max of registers.
+ * <p>
+ * Not thread safe.
+ */
+class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision - number of index bits in range [4, 16]
+     */
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be in [4, 16]: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // a sentinel bit keeps the rank finite for hashes with all zeros in the rest
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (0 == register) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && 0 != zeros) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the relative standard error of estimates.
+     */
+    double standardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    void add(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Estimators of different precision can't be merged");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    void reset() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded multi-producer single-consumer queue of uploads.
+ * <p>
+ * The queue is a preallocated ring of primitive (timestamp, count) pairs in the spirit
+ * of Disruptor. A producer claims a sequence with CAS on the tail, writes the pair and
+ * publishes the slot by storing the lap number of the sequence in the availability array.
+ * The consumer reads published slots in order and moves the head forward once per drain.
+ * <p>
+ * Offer and drain don't allocate.
+ */
+class IngestionQueue {
+    /**
+     * Receives uploads from {@link #drain(Sink, int)}.
+     */
+    interface Sink {
+        void accept(long timestamp, long count, long enqueuedNanos);
+    }
+
+    private final int mask;
+    private final int shift;
+    private final long[] timestamps;
+    private final long[] counts;
+    private final long[] enqueuedAt;
+    private final AtomicIntegerArray published;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates new queue.
+     *
+     * @param capacity - max number of uploads in the queue, must be a power of two
+     */
+    IngestionQueue(int capacity) {
+        if (capacity <= 0 || 0 != (capacity & (capacity - 1))) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.timestamps = new long[capacity];
+        this.counts = new long[capacity];
+        this.enqueuedAt = new long[capacity];
+
+        int[] laps = new int[capacity];
+        Arrays.fill(laps, -1);
+        this.published = new AtomicIntegerArray(laps);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Puts an upload into the queue. Can be called from any thread.
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(long timestamp, long count) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head.get() > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+
+        int i = (int) seq & mask;
+        timestamps[i] = timestamp;
+        counts[i] = count;
+        enqueuedAt[i] = System.nanoTime();
+        published.lazySet(i, (int) (seq >>> shift));
+        return true;
+    }
+
+    /**
+     * Passes published uploads to the sink in order of sequences.
+     * Must be called from a single consumer thread.
+     *
+     * @param sink  - receiver of uploads
+     * @param limit - max number of uploads to drain
+     * @return the number of drained uploads
+     */
+    int drain(Sink sink, int limit) {
+        long h = head.get();
+        int n = 0;
+        while (n < limit) {
+            long seq = h + n;
+            int i = (int) seq & mask;
+            if (published.get(i) != (int) (seq >>> shift)) {
+                break;
+            }
+            sink.accept(timestamps[i], counts[i], enqueuedAt[i]);
+            n++;
+        }
+        if (0 < n) {
+            head.lazySet(h + n);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of claimed but not yet drained uploads.
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
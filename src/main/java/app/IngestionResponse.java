@@ -0,0 +1,38 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.concurrent.TimeUnit;
+
+public class IngestionResponse {
+    @JsonProperty
+    final long depth;
+
+    @JsonProperty
+    final long capacity;
+
+    @JsonProperty
+    final long drained;
+
+    @JsonProperty
+    final long rejected;
+
+    @JsonProperty
+    final long dropped;
+
+    @JsonProperty
+    final double lastLagMillis;
+
+    @JsonProperty
+    final double maxLagMillis;
+
+    public IngestionResponse(AsyncIngestion ingestion) {
+        this.depth = ingestion.depth();
+        this.capacity = ingestion.capacity();
+        this.drained = ingestion.drained();
+        this.rejected = ingestion.rejected();
+        this.dropped = ingestion.dropped();
+        this.lastLagMillis = (double) ingestion.lastLagNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+        this.maxLagMillis = (double) ingestion.maxLagNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,55 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent {@link LogHistogram} of durations in nanoseconds.
+ * <p>
+ * Counters are striped: a thread increments the stripe picked by its id, so threads rarely
+ * hit the same counters. Recording is a single atomic increment and doesn't allocate.
+ * Stripes are summed only when a snapshot is taken.
+ * <p>
+ * All operations are thread safe.
+ */
+class LatencyRecorder {
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicLongArray counts;
+    private final int stripeMask;
+
+    /**
+     * Creates new recorder with the number of stripes based on available processors.
+     */
+    LatencyRecorder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes - number of stripes, rounded up to a power of two
+     */
+    LatencyRecorder(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive: " + stripes);
+        }
+        int n = 1 == stripes ? 1 : Math.min(MAX_STRIPES, Integer.highestOneBit(stripes - 1) << 1);
+        this.stripeMask = n - 1;
+        this.counts = new AtomicLongArray(n * LogHistogram.BUCKETS);
+    }
+
+    void record(long nanos) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.getAndIncrement(stripe * LogHistogram.BUCKETS + LogHistogram.index(nanos));
+    }
+
+    /**
+     * Adds recorded durations to a histogram.
+     */
+    void addTo(LogHistogram histogram) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            if (0 != count) {
+                histogram.add(i % LogHistogram.BUCKETS, count);
+            }
+        }
+    }
+}
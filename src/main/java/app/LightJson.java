@@ -0,0 +1,234 @@
+package app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Hand-written JSON of {@link UploadRequest} and {@link StatResponse} for {@link LightServer}.
+ * <p>
+ * Produces and accepts the same documents as Jackson does for these classes: unknown fields
+ * of an upload are skipped, missing or null fields are 0, and numbers are formatted the same way.
+ */
+final class LightJson {
+    private LightJson() {
+    }
+
+    /**
+     * Parses an upload.
+     *
+     * @throws IllegalArgumentException if the body is not a JSON object of an upload
+     */
+    static UploadRequest readUpload(byte[] body, int length) {
+        Reader reader = new Reader(body, length);
+        long timestamp = 0;
+        long count = 0;
+
+        reader.expect('{');
+        if (!reader.consume('}')) {
+            do {
+                String name = reader.string();
+                reader.expect(':');
+                if ("timestamp".equals(name)) {
+                    timestamp = reader.longOrNull();
+                } else if ("count".equals(name)) {
+                    count = reader.longOrNull();
+                } else {
+                    reader.skipValue();
+                }
+            } while (reader.consume(','));
+            reader.expect('}');
+        }
+        reader.end();
+        return new UploadRequest(timestamp, count);
+    }
+
+    /**
+     * Serializes statistics.
+     */
+    static byte[] write(StatResponse response) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"min\":").append(response.min)
+                .append(",\"max\":").append(response.max)
+                .append(",\"sum\":").append(response.sum)
+                .append(",\"count\":").append(response.count);
+        if (null != response.percentiles) {
+            sb.append(",\"percentiles\":{");
+            boolean first = true;
+            for (Map.Entry<String, Long> e : response.percentiles.entrySet()) {
+                // names are "p" followed by a number, nothing to escape
+                sb.append(first ? "\"" : ",\"").append(e.getKey()).append("\":").append(e.getValue());
+                first = false;
+            }
+            sb.append('}');
+        }
+        if (null != response.distinctUploaders) {
+            sb.append(",\"distinctUploaders\":").append(response.distinctUploaders);
+        }
+        // Jackson formats doubles with Double.toString as well
+        sb.append(",\"avg\":").append(response.getAvg()).append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int length;
+        private int pos;
+
+        Reader(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw malformed("'" + c + "' expected");
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (pos < length && c == bytes[pos]) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() {
+            skipWhitespace();
+            if (pos != length) {
+                throw malformed("end of document expected");
+            }
+        }
+
+        long longOrNull() {
+            skipWhitespace();
+            if (literal("null")) {
+                return 0;
+            }
+            boolean negative = consume('-');
+            int from = pos;
+            long value = 0;
+            while (pos < length && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                int digit = bytes[pos++] - '0';
+                // accumulate negatively so Long.MIN_VALUE fits
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    throw malformed("number is out of range");
+                }
+                value = value * 10 - digit;
+            }
+            if (pos == from) {
+                throw malformed("integer expected");
+            }
+            if (pos < length && ('.' == bytes[pos] || 'e' == bytes[pos] || 'E' == bytes[pos])) {
+                throw malformed("integer expected");
+            }
+            if (!negative && Long.MIN_VALUE == value) {
+                throw malformed("number is out of range");
+            }
+            return negative ? value : -value;
+        }
+
+        String string() {
+            skipWhitespace();
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < length) {
+                byte b = bytes[pos++];
+                if ('"' == b) {
+                    return sb.toString();
+                }
+                if ('\\' == b) {
+                    if (pos >= length) {
+                        break;
+                    }
+                    b = bytes[pos++];
+                    if ('u' == b) {
+                        if (pos + 4 > length) {
+                            break;
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(new String(bytes, pos, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException ex) {
+                            throw malformed("invalid escape");
+                        }
+                        pos += 4;
+                        continue;
+                    }
+                }
+                // field names which matter are ASCII, others are only compared
+                sb.append((char) (b & 0xff));
+            }
+            throw malformed("unterminated string");
+        }
+
+        void skipValue() {
+            skipWhitespace();
+            if (pos >= length) {
+                throw malformed("value expected");
+            }
+            byte b = bytes[pos];
+            if ('"' == b) {
+                string();
+            } else if ('{' == b || '[' == b) {
+                skipNested();
+            } else if (literal("true") || literal("false") || literal("null")) {
+                return;
+            } else if ('-' == b || (b >= '0' && b <= '9')) {
+                while (pos < length && isNumberChar(bytes[pos])) {
+                    pos++;
+                }
+            } else {
+                throw malformed("value expected");
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                skipWhitespace();
+                if (pos >= length) {
+                    throw malformed("unterminated value");
+                }
+                byte b = bytes[pos];
+                if ('"' == b) {
+                    string();
+                    continue;
+                }
+                if ('{' == b || '[' == b) {
+                    depth++;
+                } else if ('}' == b || ']' == b) {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        }
+
+        private boolean literal(String literal) {
+            if (pos + literal.length() > length) {
+                return false;
+            }
+            for (int i = 0; i < literal.length(); i++) {
+                if (literal.charAt(i) != bytes[pos + i]) {
+                    return false;
+                }
+            }
+            pos += literal.length();
+            return true;
+        }
+
+        private void skipWhitespace() {
+            while (pos < length && (' ' == bytes[pos] || '\t' == bytes[pos] || '\n' == bytes[pos] || '\r' == bytes[pos])) {
+                pos++;
+            }
+        }
+
+        private static boolean isNumberChar(byte b) {
+            return (b >= '0' && b <= '9') || '-' == b || '+' == b || '.' == b || 'e' == b || 'E' == b;
+        }
+
+        private IllegalArgumentException malformed(String message) {
+            return new IllegalArgumentException("Malformed upload at " + pos + ": " + message);
+        }
+    }
+}
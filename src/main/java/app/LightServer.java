@@ -0,0 +1,292 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves {@code /upload} and {@code /statistics} of {@code swagger.yaml} without Spring.
+ * <p>
+ * Requests are handled by the JDK {@link HttpServer} on a fixed pool of threads, uploads
+ * and statistics are (de)serialized by {@link LightJson}. It starts in milliseconds and a request
+ * doesn't go through the servlet stack, but it has none of the optional features of
+ * {@link Application}: batches, series, streaming, persistence and clustering.
+ * <p>
+ * Options are given as {@code --name=value} arguments with the same names and defaults as
+ * for {@link Application}, plus {@code server.threads} and {@code server.backlog}.
+ */
+public class LightServer {
+    private static Logger LOG = LoggerFactory.getLogger(LightServer.class);
+    private static final int STAT_WINDOW_SECS = 60;
+    // an upload is a couple of numbers, anything larger is not an upload
+    private static final int MAX_UPLOAD_BYTES = 4096;
+
+    static {
+        // headers and body are written separately, with Nagle's algorithm the body waits for a delayed ACK.
+        // The JDK server reads the property once, before the first server is created
+        if (null == System.getProperty("sun.net.httpserver.nodelay")) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final TickingClock clock;
+    private final WindowedStatistics statistics;
+    private final UploadValidator validator;
+    private final ReportCache reports;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ETags etags = new ETags();
+
+    /**
+     * Creates new server, it doesn't accept connections until {@link #start()} is called.
+     *
+     * @param options - options by name, missing ones get defaults
+     */
+    LightServer(Map<String, String> options) throws IOException {
+        this.clock = new TickingClock(Long.parseLong(options.getOrDefault("clock.tick-millis", "10")));
+        long[] windows = Arrays.stream(options.getOrDefault("statistics.windows", "1m,5m,1h,24h").split(","))
+                .map(String::trim).mapToLong(WindowedStatistics::parseWindow).toArray();
+        this.statistics = new WindowedStatistics(new Statistics(STAT_WINDOW_SECS, clock), windows, clock);
+        this.validator = new UploadValidator(statistics::oldest);
+        this.reports = new ReportCache(statistics, LightJson::write,
+                ReportCache.parseQuantiles(options.getOrDefault("statistics.quantiles", "0.5,0.9,0.99")));
+
+        int threads = Integer.parseInt(options.getOrDefault("server.threads",
+                String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+        AtomicInteger n = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "light-http-" + n.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(
+                        options.getOrDefault("server.address", "0.0.0.0"),
+                        Integer.parseInt(options.getOrDefault("server.port", "8080"))),
+                Integer.parseInt(options.getOrDefault("server.backlog", "1024")));
+        this.server.setExecutor(executor);
+        this.server.createContext("/upload", this::upload);
+        this.server.createContext("/statistics", this::statistics);
+    }
+
+    void start() {
+        clock.start();
+        server.start();
+        LOG.info("Listening at http:{}", server.getAddress());
+    }
+
+    void stop() throws InterruptedException {
+        server.stop(0);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        clock.stop();
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    WindowedStatistics statistics() {
+        return statistics;
+    }
+
+    private void upload(HttpExchange exchange) throws IOException {
+        try {
+            if (!"/upload".equals(exchange.getRequestURI().getPath())) {
+                reply(exchange, 404);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405);
+                return;
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (null == contentType || !contentType.toLowerCase().startsWith("application/json")) {
+                reply(exchange, 415);
+                return;
+            }
+
+            byte[] body = new byte[MAX_UPLOAD_BYTES];
+            int length = read(exchange.getRequestBody(), body);
+            if (length < 0) {
+                reply(exchange, 413);
+                return;
+            }
+            UploadRequest req;
+            try {
+                req = LightJson.readUpload(body, length);
+            } catch (IllegalArgumentException ex) {
+                LOG.debug("Malformed upload", ex);
+                reply(exchange, 400);
+                return;
+            }
+
+            if (UploadValidator.Verdict.ACCEPTED != validator.check(req.getTimestamp(), req.getCount(),
+                    clock.epochSecond())) {
+                reply(exchange, 204);
+                return;
+            }
+            try {
+                statistics.bump(req.getTimestamp(), req.getCount());
+            } catch (Exception ex) {
+                // the same as for Application
+                LOG.error("Failed to report statistics", ex);
+            }
+            reply(exchange, 202);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void statistics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"/statistics".equals(exchange.getRequestURI().getPath())) {
+                reply(exchange, 404);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405);
+                return;
+            }
+
+            Map<String, List<String>> params = params(exchange.getRequestURI());
+            boolean ranged = params.containsKey("from") || params.containsKey("to");
+            long from = Long.MIN_VALUE;
+            long to = Long.MAX_VALUE;
+            long window;
+            double[] quantiles = null;
+            try {
+                if (params.containsKey("from")) {
+                    from = Long.parseLong(params.get("from").get(0));
+                }
+                if (params.containsKey("to")) {
+                    to = Long.parseLong(params.get("to").get(0));
+                }
+                window = params.containsKey("window")
+                        ? WindowedStatistics.parseWindow(params.get("window").get(0))
+                        : STAT_WINDOW_SECS;
+                if (params.containsKey("quantiles")) {
+                    quantiles = ReportCache.parseQuantiles(String.join(",", params.get("quantiles")));
+                }
+            } catch (IllegalArgumentException | ArithmeticException ex) {
+                reply(exchange, 400);
+                return;
+            }
+            if (!statistics.supports(window)
+                    || (ranged && (params.containsKey("window") || null != quantiles || from > to))) {
+                reply(exchange, 400);
+                return;
+            }
+
+            // the version is read before the report is built, so the report is never older than its ETag
+            long version = statistics.version();
+            String etag = etags.of(version);
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (ETags.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                reply(exchange, 304);
+                return;
+            }
+
+            byte[] body;
+            if (ranged) {
+                body = LightJson.write(new StatResponse(statistics.range(from, to)));
+            } else if (null == quantiles) {
+                body = reports.report(window, version);
+            } else {
+                body = reports.render(window, quantiles);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    /**
+     * Reads the whole body into a buffer.
+     *
+     * @return length of the body or -1 if it doesn't fit
+     */
+    private static int read(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        for (int n; length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) > 0; ) {
+            length += n;
+        }
+        if (length == buffer.length && in.read() >= 0) {
+            return -1;
+        }
+        return length;
+    }
+
+    private static Map<String, List<String>> params(URI uri) throws IOException {
+        Map<String, List<String>> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (null == query) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    /**
+     * Parses {@code --name=value} arguments.
+     */
+    static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Option --name=value expected: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws IOException {
+        LightServer server = new LightServer(options(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        server.start();
+    }
+}
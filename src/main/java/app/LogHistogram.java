@@ -0,0 +1,157 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative long values in the spirit of HdrHistogram.
+ * <p>
+ * Values below {@code 2 * 2^SUB_BITS} have their own buckets. Every following power of two
+ * is split into {@code 2^SUB_BITS} buckets of equal width. A bucket is reported by its middle,
+ * so the relative error of a reported value is at most {@code 2^-(SUB_BITS + 1)}, i.e. 1/32
+ * (~3.1%), and values below 32 are exact. Negative values are recorded as 0.
+ * <p>
+ * Memory is fixed ({@link #BUCKETS} counters) and recording doesn't allocate. Histograms can be
+ * merged and subtracted the same way as sums and counts, so the histogram of a window is
+ * maintained incrementally like the rest of {@link Statistics.Record}.
+ * <p>
+ * Not thread safe.
+ */
+class LogHistogram {
+    static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+
+    /**
+     * Returns the bucket of a value.
+     */
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return value <= 0 ? 0 : (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * Returns the lowest value of a bucket.
+     */
+    static long lowest(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+    }
+
+    /**
+     * Returns the value a bucket is reported by.
+     */
+    static long middle(int index) {
+        int shift = index < SUB_COUNT ? 0 : index / SUB_COUNT - 1;
+        return lowest(index) + ((1L << shift) - 1) / 2;
+    }
+
+    void record(long value) {
+        counts[index(value)]++;
+        total++;
+    }
+
+    /**
+     * Adds counters of a compact histogram, see {@link #recordTo(int[], long)}.
+     */
+    void add(int[] compact) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += compact[i];
+            total += compact[i];
+        }
+    }
+
+    /**
+     * Adds a number of values to a bucket, see {@link #index(long)}.
+     */
+    void add(int index, long count) {
+        counts[index] += count;
+        total += count;
+    }
+
+    void add(LogHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    void subtract(LogHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] -= other.counts[i];
+        }
+        total -= other.total;
+    }
+
+    /**
+     * Adds counters of this histogram to a compact one.
+     */
+    void addTo(int[] compact) {
+        for (int i = 0; i < BUCKETS; i++) {
+            compact[i] += (int) counts[i];
+        }
+    }
+
+    void copyFrom(LogHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+        total = other.total;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    /**
+     * Returns the number of values in a bucket, see {@link #index(long)}.
+     */
+    long countAt(int index) {
+        return counts[index];
+    }
+
+    long total() {
+        return total;
+    }
+
+    /**
+     * Returns the value at a specified quantile, the smallest reported value such that
+     * at least {@code quantile} of all recorded values are less or equal to it.
+     *
+     * @param quantile - number in range [0, 1]
+     * @return value at quantile or 0 if nothing is recorded
+     */
+    long valueAt(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in range [0, 1]: " + quantile);
+        }
+        if (0 == total) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return middle(i);
+            }
+        }
+        return middle(BUCKETS - 1);
+    }
+
+    /**
+     * Records a value into a compact histogram, which is an array of {@link #BUCKETS} int counters.
+     * Compact histograms are used by storage cells where memory matters.
+     */
+    static void recordTo(int[] compact, long value) {
+        compact[index(value)]++;
+    }
+}
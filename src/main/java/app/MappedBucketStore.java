@@ -0,0 +1,261 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ring of per-second buckets in a memory-mapped file, readable by other processes
+ * with {@link MappedStatisticsReader}.
+ * <p>
+ * Bucket data lives off the Java heap, so it doesn't add to GC work however long the ring is.
+ * The layout is fixed, all values are in the native byte order:
+ * <pre>
+ * header, 64 bytes:
+ *   0  int  magic, {@link #MAGIC}
+ *   4  int  layout version, {@link #VERSION}
+ *   8  int  number of slots
+ *   12 int  number of histogram buckets, {@link LogHistogram#BUCKETS}
+ *   16 int  slot size in bytes
+ *   20..63  reserved
+ * slot {@code timestamp % slots} at {@code 64 + slot * slot size}:
+ *   0  long sequence, odd while the slot is written
+ *   8  long epoch second of the data, {@link Long#MIN_VALUE} if there was none
+ *   16 long 1 if the second is sealed
+ *   24 long min
+ *   32 long max
+ *   40 long sum
+ *   48 long count, 0 if the second is empty
+ *   56 long reserved
+ *   64 long[histogram buckets] counters of {@link LogHistogram}
+ * </pre>
+ * Every slot is a seqlock. A writer makes the sequence odd with a CAS, which also excludes other
+ * writers, changes the slot and makes the sequence even again. A reader reads the sequence, the
+ * data and the sequence again, and retries if the sequence was odd or has changed. So readers
+ * never block writers and never see a half-written second. Reads of the owning process lock a slot
+ * like writers do, but restore its sequence, so they don't make readers of other processes retry.
+ * <p>
+ * Unlike {@link BucketRing} slots are not striped, concurrent bumps of the same second
+ * take turns. The file is zeroed on start, statistics don't survive a restart.
+ * <p>
+ * All operations are thread safe.
+ */
+class MappedBucketStore implements BucketStore, Closeable {
+    static final int MAGIC = 0x50414E53;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_BYTES = 64 + 8 * LogHistogram.BUCKETS;
+
+    static final int SEQUENCE = 0;
+    static final int EPOCH = 8;
+    static final int SEALED = 16;
+    static final int MIN = 24;
+    static final int MAX = 32;
+    static final int SUM = 40;
+    static final int COUNT = 48;
+    static final int HISTOGRAM = 64;
+
+    private final SharedMemory memory;
+    private final int capacity;
+    private final LongAdder contended = new LongAdder();
+
+    /**
+     * @param file     - file to map, created or overwritten
+     * @param capacity - number of seconds the ring can hold at the same time
+     */
+    MappedBucketStore(Path file, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.memory = SharedMemory.create(file, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+        for (int i = 0; i < capacity; i++) {
+            memory.putLong(HEADER_BYTES + (long) i * SLOT_BYTES + EPOCH, Long.MIN_VALUE);
+        }
+        memory.putInt(4, VERSION);
+        memory.putInt(8, capacity);
+        memory.putInt(12, LogHistogram.BUCKETS);
+        memory.putInt(16, SLOT_BYTES);
+        // readers check the magic first, so it's written the last
+        SharedMemory.storeFence();
+        memory.putInt(0, MAGIC);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long contended() {
+        return contended.sum();
+    }
+
+    @Override
+    public Outcome bump(long timestamp, long val) {
+        return add(timestamp, val, val, val, 1, null, val, false);
+    }
+
+    @Override
+    public Outcome bumpSealed(long timestamp, long val) {
+        return add(timestamp, val, val, val, 1, null, val, true);
+    }
+
+    @Override
+    public Outcome merge(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        return add(timestamp, record.min, record.max, record.sum, record.count, histogram, 0, false);
+    }
+
+    @Override
+    public Outcome mergeSealed(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        return add(timestamp, record.min, record.max, record.sum, record.count, histogram, 0, true);
+    }
+
+    @Override
+    public Statistics.Record seal(long timestamp, LogHistogram histogram) {
+        long slot = slot(timestamp);
+        long sequence = lock(slot);
+        try {
+            long epoch = memory.getLong(slot + EPOCH);
+            if (epoch < timestamp) {
+                reset(slot, timestamp);
+            } else if (epoch > timestamp) {
+                return null;
+            }
+            memory.putLong(slot + SEALED, 1);
+            return read(slot, histogram);
+        } finally {
+            unlock(slot, sequence);
+        }
+    }
+
+    @Override
+    public Statistics.Record get(long timestamp, LogHistogram histogram) {
+        long slot = slot(timestamp);
+        long sequence = lock(slot);
+        try {
+            return memory.getLong(slot + EPOCH) == timestamp ? read(slot, histogram) : null;
+        } finally {
+            // nothing is changed, so readers of other processes don't have to retry
+            release(slot, sequence);
+        }
+    }
+
+    /**
+     * Does nothing, the mapping is released when the store is collected.
+     */
+    @Override
+    public void close() {
+    }
+
+    private Outcome add(long timestamp, long min, long max, long sum, long count,
+                        LogHistogram histogram, long val, boolean ignoreSeal) {
+        long slot = slot(timestamp);
+        long sequence = lock(slot);
+        try {
+            long epoch = memory.getLong(slot + EPOCH);
+            if (epoch > timestamp) {
+                return Outcome.EXPIRED;
+            }
+            if (epoch < timestamp) {
+                reset(slot, timestamp);
+            }
+            if (0 != memory.getLong(slot + SEALED) && !ignoreSeal) {
+                return Outcome.SEALED;
+            }
+            // calculate everything which can overflow first to keep the slot untouched on failure
+            long newSum = Math.addExact(memory.getLong(slot + SUM), sum);
+            long newCount = Math.addExact(memory.getLong(slot + COUNT), count);
+            memory.putLong(slot + MIN, Math.min(memory.getLong(slot + MIN), min));
+            memory.putLong(slot + MAX, Math.max(memory.getLong(slot + MAX), max));
+            memory.putLong(slot + SUM, newSum);
+            memory.putLong(slot + COUNT, newCount);
+            if (null == histogram) {
+                long counter = slot + HISTOGRAM + 8L * LogHistogram.index(val);
+                memory.putLong(counter, memory.getLong(counter) + 1);
+            } else {
+                for (int i = 0; i < LogHistogram.BUCKETS; i++) {
+                    long n = histogram.countAt(i);
+                    if (0 != n) {
+                        long counter = slot + HISTOGRAM + 8L * i;
+                        memory.putLong(counter, memory.getLong(counter) + n);
+                    }
+                }
+            }
+            return Outcome.ACCEPTED;
+        } finally {
+            unlock(slot, sequence);
+        }
+    }
+
+    /**
+     * Reads a slot which is locked or whose sequence is checked afterwards.
+     */
+    static Statistics.Record read(SharedMemory memory, long slot, LogHistogram histogram) {
+        long count = memory.getLong(slot + COUNT);
+        if (0 == count) {
+            return null;
+        }
+        if (null != histogram) {
+            for (int i = 0; i < LogHistogram.BUCKETS; i++) {
+                long n = memory.getLong(slot + HISTOGRAM + 8L * i);
+                if (0 != n) {
+                    histogram.add(i, n);
+                }
+            }
+        }
+        return new Statistics.Record(memory.getLong(slot + MIN), memory.getLong(slot + MAX),
+                memory.getLong(slot + SUM), count);
+    }
+
+    private Statistics.Record read(long slot, LogHistogram histogram) {
+        return read(memory, slot, histogram);
+    }
+
+    private void reset(long slot, long timestamp) {
+        memory.putLong(slot + EPOCH, timestamp);
+        memory.putLong(slot + SEALED, 0);
+        memory.putLong(slot + MIN, Long.MAX_VALUE);
+        memory.putLong(slot + MAX, Long.MIN_VALUE);
+        memory.putLong(slot + SUM, 0);
+        memory.putLong(slot + COUNT, 0);
+        for (int i = 0; i < LogHistogram.BUCKETS; i++) {
+            memory.putLong(slot + HISTOGRAM + 8L * i, 0);
+        }
+    }
+
+    /**
+     * Makes the sequence of a slot odd, which excludes other writers and tells readers to retry.
+     *
+     * @return the odd sequence
+     */
+    private long lock(long slot) {
+        for (;;) {
+            long sequence = memory.getLongVolatile(slot + SEQUENCE);
+            if (0 == (sequence & 1) && memory.compareAndSetLong(slot + SEQUENCE, sequence, sequence + 1)) {
+                return sequence + 1;
+            }
+            contended.increment();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Makes the sequence of a changed slot even and different from the one before {@link #lock}.
+     */
+    private void unlock(long slot, long sequence) {
+        memory.putLongOrdered(slot + SEQUENCE, sequence + 1);
+    }
+
+    /**
+     * Restores the sequence of a slot which was locked, but not changed.
+     */
+    private void release(long slot, long sequence) {
+        memory.putLongOrdered(slot + SEQUENCE, sequence - 1);
+    }
+
+    private long slot(long timestamp) {
+        return HEADER_BYTES + Math.floorMod(timestamp, (long) capacity) * SLOT_BYTES;
+    }
+}
@@ -0,0 +1,160 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads statistics straight from the file of a {@link MappedBucketStore} of another process,
+ * without locks and without HTTP. The layout is described by {@link MappedBucketStore}.
+ * <p>
+ * Every second is read optimistically and read again if it was being written at the same time,
+ * so a snapshot of a second is always consistent. Seconds of a window are read one by one, so a
+ * window may combine seconds as they were at slightly different moments, exactly like a report of
+ * the server.
+ * <p>
+ * All operations are thread safe.
+ */
+public final class MappedStatisticsReader {
+    private final SharedMemory memory;
+    private final int capacity;
+
+    private MappedStatisticsReader(SharedMemory memory, int capacity) {
+        this.memory = memory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Maps a file of statistics for reading.
+     *
+     * @throws IOException if the file can't be read or its layout is not supported
+     */
+    public static MappedStatisticsReader open(Path file) throws IOException {
+        SharedMemory memory = SharedMemory.open(file);
+        if (memory.size() < MappedBucketStore.HEADER_BYTES) {
+            throw new IOException("Not a statistics file: " + file);
+        }
+        if (MappedBucketStore.MAGIC != memory.getInt(0)) {
+            throw new IOException("Statistics file is not initialized: " + file);
+        }
+        SharedMemory.loadFence();
+        int version = memory.getInt(4);
+        int capacity = memory.getInt(8);
+        if (MappedBucketStore.VERSION != version || LogHistogram.BUCKETS != memory.getInt(12)
+                || MappedBucketStore.SLOT_BYTES != memory.getInt(16)) {
+            throw new IOException("Unsupported layout of statistics file, version " + version + ": " + file);
+        }
+        if (capacity <= 0 || memory.size() < MappedBucketStore.HEADER_BYTES
+                + (long) capacity * MappedBucketStore.SLOT_BYTES) {
+            throw new IOException("Statistics file is truncated: " + file);
+        }
+        return new MappedStatisticsReader(memory, capacity);
+    }
+
+    /**
+     * Returns the number of seconds the file holds, the largest window is one less.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns statistics of a second or null if there is no data for it.
+     *
+     * @param timestamp epoch time in UTC
+     */
+    public Snapshot second(long timestamp) {
+        Snapshot snapshot = new Snapshot();
+        return readInto(timestamp, snapshot, new LogHistogram()) ? snapshot : null;
+    }
+
+    /**
+     * Returns statistics of a window the way the server reports it: {@code seconds} up to {@code now}
+     * and one second ahead of it.
+     *
+     * @param now     current epoch time in UTC
+     * @param seconds window in seconds, below {@link #capacity()}
+     */
+    public Snapshot window(long now, int seconds) {
+        if (seconds <= 0 || seconds >= capacity) {
+            throw new IllegalArgumentException("Window must be in range [1, " + (capacity - 1) + "]: " + seconds);
+        }
+        Snapshot snapshot = new Snapshot();
+        LogHistogram scratch = new LogHistogram();
+        for (long ts = now - seconds + 1; ts <= now + 1; ts++) {
+            readInto(ts, snapshot, scratch);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Adds a consistent snapshot of a second to an accumulated one.
+     *
+     * @param histogram - receives the distribution of the second while it's read
+     * @return true if there was data for the second
+     */
+    private boolean readInto(long timestamp, Snapshot snapshot, LogHistogram histogram) {
+        long slot = MappedBucketStore.HEADER_BYTES + Math.floorMod(timestamp, (long) capacity)
+                * MappedBucketStore.SLOT_BYTES;
+        for (;;) {
+            long before = memory.getLongVolatile(slot + MappedBucketStore.SEQUENCE);
+            if (0 != (before & 1)) {
+                // being written
+                Thread.yield();
+                continue;
+            }
+            histogram.reset();
+            Statistics.Record record = timestamp == memory.getLong(slot + MappedBucketStore.EPOCH)
+                    ? MappedBucketStore.read(memory, slot, histogram)
+                    : null;
+            SharedMemory.loadFence();
+            if (before != memory.getLongVolatile(slot + MappedBucketStore.SEQUENCE)) {
+                continue;
+            }
+            if (null == record) {
+                return false;
+            }
+            snapshot.add(record, histogram);
+            return true;
+        }
+    }
+
+    /**
+     * Statistics of a second or a window.
+     */
+    public static final class Snapshot {
+        private Statistics.Record record;
+        private final LogHistogram histogram = new LogHistogram();
+
+        private void add(Statistics.Record r, LogHistogram h) {
+            record = Statistics.Record.merge(record, r);
+            histogram.add(h);
+        }
+
+        public long getMin() {
+            return null == record ? 0 : record.min;
+        }
+
+        public long getMax() {
+            return null == record ? 0 : record.max;
+        }
+
+        public long getSum() {
+            return null == record ? 0 : record.sum;
+        }
+
+        public long getCount() {
+            return null == record ? 0 : record.count;
+        }
+
+        public double getAvg() {
+            return 0 == getCount() ? 0 : (double) getSum() / getCount();
+        }
+
+        /**
+         * Returns the uploaded value at a quantile, see {@link LogHistogram#valueAt(double)}.
+         */
+        public long valueAt(double quantile) {
+            return histogram.valueAt(quantile);
+        }
+    }
+}
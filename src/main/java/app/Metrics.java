@@ -0,0 +1,130 @@
+package app;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Built-in instrumentation of the server.
+ * <p>
+ * Latencies go to {@link LatencyRecorder}s and counters are {@link LongAdder}s, so recording
+ * neither allocates nor makes threads fight for a counter. Gauges of the storage are read from
+ * {@link WindowedStatistics} when a snapshot is taken.
+ * <p>
+ * All operations are thread safe.
+ */
+class Metrics {
+    enum Endpoint {
+        UPLOAD("/upload"),
+        UPLOAD_BATCH("/upload/batch"),
+        STATISTICS("/statistics");
+
+        final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns the endpoint of a request path or null if it isn't measured.
+         */
+        static Endpoint of(String path) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.path.equals(path)) {
+                    return endpoint;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final WindowedStatistics statistics;
+    private final LatencyRecorder[] latencies = new LatencyRecorder[Endpoint.values().length];
+    private final LongAdder tooOld = new LongAdder();
+    private final LongAdder fromFuture = new LongAdder();
+    private final LongAdder empty = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    Metrics(WindowedStatistics statistics) {
+        this.statistics = statistics;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyRecorder();
+        }
+    }
+
+    void record(Endpoint endpoint, long nanos) {
+        latencies[endpoint.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts an upload which was not accepted.
+     */
+    void rejected(UploadValidator.Verdict verdict) {
+        switch (verdict) {
+            case TOO_OLD:
+                tooOld.increment();
+                break;
+            case FROM_FUTURE:
+                fromFuture.increment();
+                break;
+            case EMPTY:
+                empty.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Counts an accepted upload which was lost because statistics would overflow.
+     */
+    void overflowed() {
+        overflows.increment();
+    }
+
+    /**
+     * Returns latencies of an endpoint in nanoseconds.
+     */
+    LogHistogram latencies(Endpoint endpoint) {
+        LogHistogram histogram = new LogHistogram();
+        latencies[endpoint.ordinal()].addTo(histogram);
+        return histogram;
+    }
+
+    long tooOld() {
+        return tooOld.sum();
+    }
+
+    long fromFuture() {
+        return fromFuture.sum();
+    }
+
+    long empty() {
+        return empty.sum();
+    }
+
+    long overflows() {
+        return overflows.sum();
+    }
+
+    /**
+     * Returns the number of times bumps found their storage cells busy and retried.
+     */
+    long contended() {
+        return statistics.contended();
+    }
+
+    /**
+     * Returns the number of seconds of the default window which have data.
+     */
+    int size() {
+        return statistics.size();
+    }
+
+    /**
+     * Returns durations of sealing seconds and expiring old ones in nanoseconds.
+     */
+    LogHistogram sealing() {
+        LogHistogram histogram = new LogHistogram();
+        statistics.addSealDurationsTo(histogram);
+        return histogram;
+    }
+}
@@ -0,0 +1,38 @@
+package app;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Measures latency of measured endpoints, from the request to the written response,
+ * so reading and writing JSON are included.
+ */
+class MetricsFilter extends OncePerRequestFilter {
+    private final Metrics metrics;
+
+    MetricsFilter(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String uri = request.getRequestURI();
+        Metrics.Endpoint endpoint = Metrics.Endpoint.of(uri.substring(request.getContextPath().length()));
+        if (null == endpoint) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            metrics.record(endpoint, System.nanoTime() - started);
+        }
+    }
+}
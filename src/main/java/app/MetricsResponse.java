@@ -0,0 +1,83 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsResponse {
+    @JsonProperty
+    final Map<String, Latency> endpoints = new LinkedHashMap<>();
+
+    @JsonProperty
+    final Rejections rejections;
+
+    @JsonProperty
+    final long overflows;
+
+    @JsonProperty
+    final long contended;
+
+    @JsonProperty
+    final long size;
+
+    @JsonProperty
+    final Latency sealing;
+
+    public MetricsResponse(Metrics metrics) {
+        for (Metrics.Endpoint endpoint : Metrics.Endpoint.values()) {
+            endpoints.put(endpoint.path, new Latency(metrics.latencies(endpoint)));
+        }
+        this.rejections = new Rejections(metrics);
+        this.overflows = metrics.overflows();
+        this.contended = metrics.contended();
+        this.size = metrics.size();
+        this.sealing = new Latency(metrics.sealing());
+    }
+
+    /**
+     * Distribution of durations in microseconds.
+     */
+    public static class Latency {
+        @JsonProperty
+        final long count;
+
+        @JsonProperty
+        final double p50;
+
+        @JsonProperty
+        final double p99;
+
+        @JsonProperty
+        final double p999;
+
+        Latency(LogHistogram nanos) {
+            this.count = nanos.total();
+            this.p50 = micros(nanos.valueAt(0.5));
+            this.p99 = micros(nanos.valueAt(0.99));
+            this.p999 = micros(nanos.valueAt(0.999));
+        }
+
+        private static double micros(long nanos) {
+            return (double) nanos / TimeUnit.MICROSECONDS.toNanos(1);
+        }
+    }
+
+    public static class Rejections {
+        @JsonProperty
+        final long tooOld;
+
+        @JsonProperty
+        final long fromFuture;
+
+        @JsonProperty
+        final long empty;
+
+        Rejections(Metrics metrics) {
+            this.tooOld = metrics.tooOld();
+            this.fromFuture = metrics.fromFuture();
+            this.empty = metrics.empty();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package app;
+
+/**
+ * Per-second statistics of a single node of the cluster as it was exported.
+ */
+class NodeBuckets {
+    final String node;
+    // epoch second on the node when the buckets were exported
+    final long exportedAt;
+    final Series series;
+
+    NodeBuckets(String node, long exportedAt, Series series) {
+        this.node = node;
+        this.exportedAt = exportedAt;
+        this.series = series;
+    }
+}
@@ -0,0 +1,95 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree of min/max/sum/count over the slots of a ring of seconds.
+ * <p>
+ * Leaves are the slots and every inner node aggregates its two children, so setting a slot
+ * and aggregating any contiguous range of slots cost O(log n). A range of seconds which wraps
+ * around the end of the ring is two ranges of slots. Empty slots hold the neutral aggregate.
+ * Sums and counts wrap around on overflow like the ones of {@link SlidingWindow}.
+ * <p>
+ * Not thread safe.
+ */
+class RangeTree {
+    private final int size;
+    private final long[] min;
+    private final long[] max;
+    private final long[] sum;
+    private final long[] count;
+
+    /**
+     * @param capacity - number of slots
+     */
+    RangeTree(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.size = capacity;
+        this.min = new long[2 * capacity];
+        this.max = new long[2 * capacity];
+        this.sum = new long[2 * capacity];
+        this.count = new long[2 * capacity];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+    }
+
+    void set(int slot, long min, long max, long sum, long count) {
+        int node = slot + size;
+        this.min[node] = min;
+        this.max[node] = max;
+        this.sum[node] = sum;
+        this.count[node] = count;
+        for (node >>= 1; node > 0; node >>= 1) {
+            int left = 2 * node;
+            int right = left + 1;
+            this.min[node] = Math.min(this.min[left], this.min[right]);
+            this.max[node] = Math.max(this.max[left], this.max[right]);
+            this.sum[node] = this.sum[left] + this.sum[right];
+            this.count[node] = this.count[left] + this.count[right];
+        }
+    }
+
+    void clear(int slot) {
+        set(slot, Long.MAX_VALUE, Long.MIN_VALUE, 0, 0);
+    }
+
+    /**
+     * Adds slots in range [from, to] to an aggregate.
+     */
+    void addTo(int from, int to, Aggregate acc) {
+        // bottom-up walk of the tree which works for any number of leaves
+        for (int lo = from + size, hi = to + size + 1; lo < hi; lo >>= 1, hi >>= 1) {
+            if (0 != (lo & 1)) {
+                acc.add(min[lo], max[lo], sum[lo], count[lo]);
+                lo++;
+            }
+            if (0 != (hi & 1)) {
+                hi--;
+                acc.add(min[hi], max[hi], sum[hi], count[hi]);
+            }
+        }
+    }
+
+    static final class Aggregate {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum;
+        long count;
+
+        void add(long min, long max, long sum, long count) {
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum += sum;
+            this.count += count;
+        }
+
+        /**
+         * Returns the aggregate as a record or null if there is no data.
+         */
+        Statistics.Record toRecord() {
+            return 0 == count ? null : new Statistics.Record(min, max, sum, count);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package app;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exponentially weighted moving averages of uploads and panoramas per second over
+ * {@link #WINDOWS} of 1, 10 and 60 seconds.
+ * <p>
+ * There is no background thread: writers add to counters of the current second and the
+ * first caller which sees a newer second folds the counters into the averages. Every
+ * finished second updates an average as {@code rate += (1 - e^(-1/window)) * (count - rate)},
+ * seconds without uploads decay it by {@code e^(-1/window)} each, so a gap of any length is
+ * applied at once. So marking is two counter increments and reading is O(1), both don't
+ * allocate. Averages start from 0.
+ * <p>
+ * Averages cover finished seconds only. A write which races with folding may be counted
+ * in a neighbouring second, nothing is lost.
+ * <p>
+ * All operations are thread safe.
+ */
+class Rates {
+    static final int[] WINDOWS = {1, 10, 60};
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder panoramas = new LongAdder();
+    // e^(-1/window), the weight of the previous average after a second
+    private final double[] decays = new double[WINDOWS.length];
+
+    // guarded by this
+    private final double[] uploadRates = new double[WINDOWS.length];
+    private final double[] panoramaRates = new double[WINDOWS.length];
+    // the second counters are collected for, written under this
+    private volatile long current;
+
+    /**
+     * @param now - current epoch second
+     */
+    Rates(long now) {
+        for (int i = 0; i < WINDOWS.length; i++) {
+            decays[i] = Math.exp(-1.0 / WINDOWS[i]);
+        }
+        this.current = now;
+    }
+
+    /**
+     * Counts uploads with panoramas in total at a second.
+     */
+    void mark(long uploads, long panoramas, long now) {
+        if (now > current) {
+            tick(now);
+        }
+        this.uploads.add(uploads);
+        this.panoramas.add(panoramas);
+    }
+
+    /**
+     * Returns uploads per second averaged over {@code WINDOWS[window]} seconds.
+     */
+    synchronized double uploads(int window, long now) {
+        tick(now);
+        return uploadRates[window];
+    }
+
+    /**
+     * Returns panoramas per second averaged over {@code WINDOWS[window]} seconds.
+     */
+    synchronized double panoramas(int window, long now) {
+        tick(now);
+        return panoramaRates[window];
+    }
+
+    private synchronized void tick(long now) {
+        long elapsed = now - current;
+        if (elapsed <= 0) {
+            return;
+        }
+        // counters hold the second which is just finished, the rest had no uploads
+        long u = uploads.sumThenReset();
+        long p = panoramas.sumThenReset();
+        for (int i = 0; i < WINDOWS.length; i++) {
+            double idle = 1 == elapsed ? 1 : Math.pow(decays[i], elapsed - 1);
+            uploadRates[i] = (uploadRates[i] + (1 - decays[i]) * (u - uploadRates[i])) * idle;
+            panoramaRates[i] = (panoramaRates[i] + (1 - decays[i]) * (p - panoramaRates[i])) * idle;
+        }
+        current = now;
+    }
+}
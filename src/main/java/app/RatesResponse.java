@@ -0,0 +1,23 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RatesResponse {
+    // per second, keyed by the averaging window, e.g. "10s"
+    @JsonProperty
+    final Map<String, Double> uploads = new LinkedHashMap<>();
+
+    @JsonProperty
+    final Map<String, Double> panoramas = new LinkedHashMap<>();
+
+    public RatesResponse(WindowedStatistics statistics) {
+        for (int i = 0; i < Rates.WINDOWS.length; i++) {
+            String window = Rates.WINDOWS[i] + "s";
+            uploads.put(window, statistics.uploadRate(i));
+            panoramas.put(window, statistics.panoramaRate(i));
+        }
+    }
+}
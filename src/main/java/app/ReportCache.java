@@ -0,0 +1,100 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serialized statistics reports with default quantiles, one per window.
+ * <p>
+ * A report is built at most once per {@link WindowedStatistics#version()}, all other
+ * requests for the same version get the same bytes. Concurrent misses may build
+ * the same report twice, the newest version wins.
+ * <p>
+ * All operations are thread safe.
+ */
+class ReportCache {
+    /**
+     * Serializer of reports, e.g. {@code ObjectMapper::writeValueAsBytes}.
+     */
+    interface Encoder {
+        byte[] encode(StatResponse response) throws IOException;
+    }
+
+    private final WindowedStatistics statistics;
+    // nullable
+    private final UploaderStatistics uploaders;
+    private final Encoder encoder;
+    private final double[] quantiles;
+    // keys are supported windows only, so the map is bounded
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    ReportCache(WindowedStatistics statistics, Encoder encoder, double[] quantiles) {
+        this(statistics, null, encoder, quantiles);
+    }
+
+    /**
+     * @param uploaders - distinct uploaders are reported for its window, nullable
+     */
+    ReportCache(WindowedStatistics statistics, UploaderStatistics uploaders, Encoder encoder, double[] quantiles) {
+        this.statistics = statistics;
+        this.uploaders = uploaders;
+        this.encoder = encoder;
+        this.quantiles = quantiles.clone();
+    }
+
+    /**
+     * Parses comma separated quantiles.
+     *
+     * @throws IllegalArgumentException if a quantile is not a number in range [0, 1]
+     */
+    static double[] parseQuantiles(String quantiles) {
+        double[] result = Arrays.stream(quantiles.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .mapToDouble(Double::parseDouble).toArray();
+        for (double q : result) {
+            if (!(q >= 0 && q <= 1)) {
+                throw new IllegalArgumentException("Quantile is out of range: " + q);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns serialized report of a window with default quantiles.
+     *
+     * @param window  - supported window in seconds
+     * @param version - version of statistics read before the call
+     * @return report which is not older than the version
+     */
+    byte[] report(long window, long version) throws IOException {
+        Entry entry = entries.get(window);
+        if (null != entry && entry.version >= version) {
+            return entry.body;
+        }
+
+        byte[] body = render(window, quantiles);
+        entries.merge(window, new Entry(version, body), (old, e) -> old.version >= e.version ? old : e);
+        return body;
+    }
+
+    /**
+     * Builds and serializes report of a window bypassing the cache.
+     */
+    byte[] render(long window, double[] quantiles) throws IOException {
+        LogHistogram histogram = new LogHistogram();
+        Statistics.Record record = statistics.report(window, histogram);
+        Long distinct = null != uploaders && uploaders.ttl() == window ? uploaders.distinct() : null;
+        StatResponse response = new StatResponse(record, histogram, quantiles, distinct);
+        return encoder.encode(response);
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
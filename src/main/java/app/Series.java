@@ -0,0 +1,76 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of consecutive per-second records ordered by timestamp.
+ * Seconds without data are skipped.
+ */
+class Series {
+    private long[] timestamps;
+    private long[] min;
+    private long[] max;
+    private long[] sum;
+    private long[] count;
+    private int size;
+
+    /**
+     * @param capacity - expected number of seconds in the series, it grows if more are added
+     */
+    Series(int capacity) {
+        this.timestamps = new long[capacity];
+        this.min = new long[capacity];
+        this.max = new long[capacity];
+        this.sum = new long[capacity];
+        this.count = new long[capacity];
+    }
+
+    void add(long timestamp, Statistics.Record record) {
+        if (0 < size && timestamps[size - 1] >= timestamp) {
+            throw new IllegalArgumentException(
+                    String.format("Second %d doesn't follow %d", timestamp, timestamps[size - 1]));
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+        timestamps[size] = timestamp;
+        min[size] = record.min;
+        max[size] = record.max;
+        sum[size] = record.sum;
+        count[size] = record.count;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+        sum = Arrays.copyOf(sum, capacity);
+        count = Arrays.copyOf(count, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    long min(int i) {
+        return min[i];
+    }
+
+    long max(int i) {
+        return max[i];
+    }
+
+    long sum(int i) {
+        return sum[i];
+    }
+
+    long count(int i) {
+        return count[i];
+    }
+}
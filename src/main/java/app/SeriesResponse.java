@@ -0,0 +1,42 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * Per-second statistics. It's serialized straight from {@link Series} into the response
+ * as an array of objects, no intermediate object per second is built.
+ */
+public class SeriesResponse extends JsonSerializable.Base {
+    private final Series series;
+
+    public SeriesResponse(Series series) {
+        this.series = series;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0; i < series.size(); i++) {
+            gen.writeStartObject();
+            gen.writeNumberField("timestamp", series.timestamp(i));
+            gen.writeNumberField("min", series.min(i));
+            gen.writeNumberField("max", series.max(i));
+            gen.writeNumberField("sum", series.sum(i));
+            gen.writeNumberField("count", series.count(i));
+            gen.writeNumberField("avg", (double) series.sum(i) / series.count(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+                                  TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+}
@@ -0,0 +1,127 @@
+package app;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory of a file mapped by several processes.
+ * <p>
+ * {@link MappedByteBuffer} doesn't have atomic or ordered accesses, so memory is accessed by
+ * address with {@link Unsafe}, the way shared memory libraries do it on Java 8. Java 8 has no
+ * public API for a CAS or a fence on memory outside the heap, VarHandles appeared in Java 9.
+ * This is the only class which uses {@code Unsafe}, so moving to a newer Java means replacing
+ * it alone. Values are in the native byte order.
+ * <p>
+ * The mapping lives as long as the object is reachable, Java 8 can't unmap a buffer explicitly.
+ */
+final class SharedMemory {
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+            ADDRESS = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // keeps the mapping alive
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private final long size;
+
+    private SharedMemory(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.address = UNSAFE.getLong(buffer, ADDRESS);
+        this.size = buffer.capacity();
+    }
+
+    /**
+     * Maps a file for writing, the file is created or grown and the mapping is zeroed.
+     * The file is never truncated: processes which still map its tail would crash on access.
+     */
+    static SharedMemory create(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            SharedMemory memory = new SharedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            UNSAFE.setMemory(memory.address, size, (byte) 0);
+            return memory;
+        }
+    }
+
+    /**
+     * Maps a whole file for reading.
+     */
+    static SharedMemory open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new SharedMemory(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long getLong(long offset) {
+        return UNSAFE.getLong(address(offset, 8));
+    }
+
+    void putLong(long offset, long value) {
+        UNSAFE.putLong(address(offset, 8), value);
+    }
+
+    int getInt(long offset) {
+        return UNSAFE.getInt(address(offset, 4));
+    }
+
+    void putInt(long offset, int value) {
+        UNSAFE.putInt(address(offset, 4), value);
+    }
+
+    long getLongVolatile(long offset) {
+        return UNSAFE.getLongVolatile(null, address(offset, 8));
+    }
+
+    /**
+     * Writes a value after all preceding writes.
+     */
+    void putLongOrdered(long offset, long value) {
+        UNSAFE.putOrderedLong(null, address(offset, 8), value);
+    }
+
+    boolean compareAndSetLong(long offset, long expected, long value) {
+        return UNSAFE.compareAndSwapLong(null, address(offset, 8), expected, value);
+    }
+
+    /**
+     * Keeps preceding reads before following reads and writes.
+     */
+    static void loadFence() {
+        UNSAFE.loadFence();
+    }
+
+    /**
+     * Keeps preceding writes before following writes.
+     */
+    static void storeFence() {
+        UNSAFE.storeFence();
+    }
+
+    private long address(long offset, int length) {
+        if (offset < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException("Offset is out of mapping of " + size + " bytes: " + offset);
+        }
+        return address + offset;
+    }
+}
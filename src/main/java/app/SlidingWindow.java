@@ -0,0 +1,339 @@
+package app;
+
+/**
+ * Aggregate of consecutive seconds which slides forward in time.
+ * <p>
+ * Seconds are pushed at the newest end and expired from the oldest end. Sum and count
+ * are maintained with add/subtract. Min and max are maintained with a two-stack queue:
+ * newer seconds form the back stack with a running aggregate, older seconds form the
+ * front stack where every second keeps the aggregate of itself and all newer front
+ * seconds. When the front stack runs out, the back stack is flipped into it. So push,
+ * expire and read cost O(1) amortized.
+ * <p>
+ * A second which is already in the window can be updated later. For the back stack it's
+ * a single comparison. For the front stack the stored aggregates are lowered (raised)
+ * towards the oldest second until one of them already covers the value, since front
+ * aggregates are monotonic.
+ * <p>
+ * Every second also keeps its {@link LogHistogram}, the histogram of the window is maintained
+ * by adding and subtracting them like sum and count.
+ * <p>
+ * Per-second values are also kept in a {@link RangeTree}, so any range of seconds of the window
+ * is aggregated in O(log n).
+ * <p>
+ * Sum and count keep the number of times they wrapped around, so they stay exact while seconds
+ * come and go, and reading them fails with {@link ArithmeticException} while they don't fit into long.
+ * <p>
+ * Not thread safe.
+ */
+class SlidingWindow {
+    private final int capacity;
+
+    // per-second values
+    private final long[] min;
+    private final long[] max;
+    private final long[] sums;
+    private final long[] counts;
+
+    private final LogHistogram[] histograms;
+    // aggregates of ranges of per-second values
+    private final RangeTree tree;
+
+    // aggregates of the front stack
+    private final long[] frontMin;
+    private final long[] frontMax;
+
+    private long head;  // oldest second in the window
+    private long split; // oldest second of the back stack
+    private long next;  // second after the newest one
+
+    private long backMin = Long.MAX_VALUE;
+    private long backMax = Long.MIN_VALUE;
+    private long sum;
+    private long count;
+    // how many times sum and count wrapped around long, up or down
+    private long sumCarry;
+    private long countCarry;
+    private final LogHistogram histogram = new LogHistogram();
+
+    /**
+     * Creates new empty window.
+     *
+     * @param capacity - max number of seconds in the window
+     */
+    SlidingWindow(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.min = new long[capacity];
+        this.max = new long[capacity];
+        this.sums = new long[capacity];
+        this.counts = new long[capacity];
+        this.frontMin = new long[capacity];
+        this.frontMax = new long[capacity];
+        this.tree = new RangeTree(capacity);
+        this.histograms = new LogHistogram[capacity];
+        for (int i = 0; i < capacity; i++) {
+            histograms[i] = new LogHistogram();
+        }
+    }
+
+    /**
+     * Appends the newest second. Seconds without data should be pushed with
+     * {@code count == 0} so the window stays consecutive.
+     *
+     * @param histogram - distribution of the second, nullable for a second without data
+     * @throws IllegalArgumentException if the second doesn't follow the newest one in non-empty window
+     * @throws IllegalStateException    if the window is full
+     */
+    void push(long timestamp, long min, long max, long sum, long count, LogHistogram histogram) {
+        if (head == next) {
+            head = split = next = timestamp;
+            backMin = Long.MAX_VALUE;
+            backMax = Long.MIN_VALUE;
+        }
+        if (timestamp != next) {
+            throw new IllegalArgumentException(
+                    String.format("Second %d doesn't follow the newest one %d", timestamp, next - 1));
+        }
+        if (next - head == capacity) {
+            throw new IllegalStateException("Window is full");
+        }
+
+        int i = idx(timestamp);
+        this.min[i] = 0 == count ? Long.MAX_VALUE : min;
+        this.max[i] = 0 == count ? Long.MIN_VALUE : max;
+        this.sums[i] = sum;
+        this.counts[i] = count;
+        tree.set(i, this.min[i], this.max[i], sum, count);
+        next++;
+
+        backMin = Math.min(backMin, this.min[i]);
+        backMax = Math.max(backMax, this.max[i]);
+        addToTotals(sum, count);
+
+        if (null == histogram) {
+            histograms[i].reset();
+        } else {
+            histograms[i].copyFrom(histogram);
+            this.histogram.add(histogram);
+        }
+    }
+
+    /**
+     * Expires all seconds which are older than the given one.
+     */
+    void expireBefore(long timestamp) {
+        expireBefore(timestamp, null);
+    }
+
+    /**
+     * Expires all seconds which are older than the given one and hands them over, oldest first.
+     *
+     * @param expiry - receives expired seconds, nullable
+     */
+    void expireBefore(long timestamp, Expiry expiry) {
+        while (head < next && head < timestamp) {
+            if (head == split) {
+                flip();
+            }
+            int i = idx(head);
+            if (null != expiry) {
+                expiry.expired(head, min[i], max[i], sums[i], counts[i]);
+            }
+            subtractFromTotals(sums[i], counts[i]);
+            histogram.subtract(histograms[i]);
+            tree.clear(i);
+            head++;
+        }
+    }
+
+    /**
+     * Adds a value to the second which is already in the window.
+     *
+     * @return false if the window doesn't contain the second
+     */
+    boolean update(long timestamp, long val) {
+        if (!contains(timestamp)) {
+            return false;
+        }
+        histograms[idx(timestamp)].record(val);
+        histogram.record(val);
+        update(timestamp, val, val, val, 1);
+        return true;
+    }
+
+    /**
+     * Merges pre-aggregated values into the second which is already in the window.
+     *
+     * @param histogram - distribution of the values the record was built from
+     * @return false if the window doesn't contain the second
+     */
+    boolean update(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        if (!contains(timestamp)) {
+            return false;
+        }
+        histograms[idx(timestamp)].add(histogram);
+        this.histogram.add(histogram);
+        update(timestamp, record.min, record.max, record.sum, record.count);
+        return true;
+    }
+
+    private void update(long timestamp, long min, long max, long sum, long count) {
+        int i = idx(timestamp);
+        this.min[i] = Math.min(this.min[i], min);
+        this.max[i] = Math.max(this.max[i], max);
+        this.sums[i] += sum;
+        this.counts[i] += count;
+        tree.set(i, this.min[i], this.max[i], this.sums[i], this.counts[i]);
+        addToTotals(sum, count);
+
+        if (timestamp >= split) {
+            backMin = Math.min(backMin, min);
+            backMax = Math.max(backMax, max);
+            return;
+        }
+        for (long ts = timestamp; ts >= head && frontMin[idx(ts)] > min; ts--) {
+            frontMin[idx(ts)] = min;
+        }
+        for (long ts = timestamp; ts >= head && frontMax[idx(ts)] < max; ts--) {
+            frontMax[idx(ts)] = max;
+        }
+    }
+
+    boolean contains(long timestamp) {
+        return head <= timestamp && timestamp < next;
+    }
+
+    boolean isEmpty() {
+        return head == next;
+    }
+
+    /**
+     * Returns the newest second in the window. Makes sense only for non-empty window.
+     */
+    long newest() {
+        return next - 1;
+    }
+
+    long min() {
+        return head < split ? Math.min(frontMin[idx(head)], backMin) : backMin;
+    }
+
+    long max() {
+        return head < split ? Math.max(frontMax[idx(head)], backMax) : backMax;
+    }
+
+    /**
+     * @throws ArithmeticException if the sum doesn't fit into long
+     */
+    long sum() {
+        if (0 != sumCarry) {
+            throw new ArithmeticException("Sum of the window overflows long");
+        }
+        return sum;
+    }
+
+    /**
+     * @throws ArithmeticException if the count doesn't fit into long
+     */
+    long count() {
+        if (0 != countCarry) {
+            throw new ArithmeticException("Count of the window overflows long");
+        }
+        return count;
+    }
+
+    /**
+     * Adds seconds of the window in range [from, to] to an aggregate in O(log n).
+     */
+    void addRangeTo(long from, long to, RangeTree.Aggregate acc) {
+        long first = Math.max(from, head);
+        long last = Math.min(to, next - 1);
+        if (first > last) {
+            return;
+        }
+        int i = idx(first);
+        int j = idx(last);
+        if (i <= j) {
+            tree.addTo(i, j, acc);
+        } else {
+            // the range wraps around the end of the ring
+            tree.addTo(i, capacity - 1, acc);
+            tree.addTo(0, j, acc);
+        }
+    }
+
+    /**
+     * Adds the distribution of the whole window to a histogram.
+     */
+    void addHistogramTo(LogHistogram histogram) {
+        histogram.add(this.histogram);
+    }
+
+    private void addToTotals(long sum, long count) {
+        long newSum = this.sum + sum;
+        long newCount = this.count + count;
+        sumCarry += carry(this.sum, sum, newSum);
+        countCarry += carry(this.count, count, newCount);
+        this.sum = newSum;
+        this.count = newCount;
+    }
+
+    private void subtractFromTotals(long sum, long count) {
+        long newSum = this.sum - sum;
+        long newCount = this.count - count;
+        sumCarry -= borrow(this.sum, sum, newSum);
+        countCarry -= borrow(this.count, count, newCount);
+        this.sum = newSum;
+        this.count = newCount;
+    }
+
+    /**
+     * Returns 1 if {@code a + b} wrapped around up, -1 if down and 0 if it fits into long.
+     */
+    private static long carry(long a, long b, long result) {
+        // the same checks as Math.addExact and Math.subtractExact
+        if (((a ^ result) & (b ^ result)) >= 0) {
+            return 0;
+        }
+        return b < 0 ? -1 : 1;
+    }
+
+    /**
+     * Returns 1 if {@code a - b} wrapped around down, -1 if up and 0 if it fits into long.
+     */
+    private static long borrow(long a, long b, long result) {
+        if (((a ^ b) & (a ^ result)) >= 0) {
+            return 0;
+        }
+        return b < 0 ? -1 : 1;
+    }
+
+    private void flip() {
+        long accMin = Long.MAX_VALUE;
+        long accMax = Long.MIN_VALUE;
+        for (long ts = next - 1; ts >= head; ts--) {
+            int i = idx(ts);
+            accMin = Math.min(accMin, min[i]);
+            accMax = Math.max(accMax, max[i]);
+            frontMin[i] = accMin;
+            frontMax[i] = accMax;
+        }
+        split = next;
+        backMin = Long.MAX_VALUE;
+        backMax = Long.MIN_VALUE;
+    }
+
+    private int idx(long timestamp) {
+        return (int) Math.floorMod(timestamp, (long) capacity);
+    }
+
+    /**
+     * Receiver of expired seconds, seconds without data have {@code count == 0}.
+     */
+    interface Expiry {
+        void expired(long timestamp, long min, long max, long sum, long count);
+    }
+}
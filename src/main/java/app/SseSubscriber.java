@@ -0,0 +1,32 @@
+package app;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+/**
+ * Subscriber which sends frames as Server-Sent Events, one event per frame.
+ */
+class SseSubscriber implements StatisticsBroadcaster.Subscriber {
+    private final SseEmitter emitter;
+
+    SseSubscriber(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        // the frame is JSON already, text/plain makes it written as is
+        emitter.send(SseEmitter.event().name("statistics").data(frame, MediaType.TEXT_PLAIN));
+    }
+
+    @Override
+    public void close() {
+        try {
+            emitter.complete();
+        } catch (RuntimeException ex) {
+            // the connection is already gone
+        }
+    }
+}
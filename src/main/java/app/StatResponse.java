@@ -1,7 +1,12 @@
 package app;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class StatResponse {
     @JsonProperty
     final long min;
@@ -15,11 +20,53 @@ public class StatResponse {
     @JsonProperty
     final long count;
 
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    final Map<String, Long> percentiles;
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    final Long distinctUploaders;
+
     public StatResponse(Statistics.Record record) {
+        this(record, null, new double[0]);
+    }
+
+    /**
+     * @param record    - statistics
+     * @param histogram - distribution of the same statistics, nullable
+     * @param quantiles - quantiles to report, e.g. 0.99 is reported as "p99"
+     */
+    public StatResponse(Statistics.Record record, LogHistogram histogram, double[] quantiles) {
+        this(record, histogram, quantiles, null);
+    }
+
+    /**
+     * @param record            - statistics
+     * @param histogram         - distribution of the same statistics, nullable
+     * @param quantiles         - quantiles to report, e.g. 0.99 is reported as "p99"
+     * @param distinctUploaders - estimated number of distinct uploaders, nullable
+     */
+    public StatResponse(Statistics.Record record, LogHistogram histogram, double[] quantiles,
+                        Long distinctUploaders) {
         this.min = record.min;
         this.max = record.max;
         this.sum = record.sum;
         this.count = record.count;
+        this.distinctUploaders = distinctUploaders;
+
+        if (null == histogram || 0 == quantiles.length) {
+            this.percentiles = null;
+            return;
+        }
+
+        this.percentiles = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            String name = "p" + BigDecimal.valueOf(q).movePointRight(2).stripTrailingZeros().toPlainString();
+            // histogram is approximate, but min and max are exact
+            long value = Math.max(min, Math.min(max, histogram.valueAt(q)));
+            percentiles.put(name, value);
+        }
     }
 
     @JsonProperty
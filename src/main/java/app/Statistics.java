@@ -1,32 +1,69 @@
 package app;
 
-import java.time.Instant;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BiFunction;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiPredicate;
 
 /**
  * Storage to store and aggregate statistical data.
  * <p>
- * Storage expires old values passively. There are several cases when storage
- * tries to clean up garbage:
- * <ul>
- * <li>Storage discovers that user requested an expired key. This key will be removed from storage</li>
- * <li>Expired keys are discovered when full report is generated. All expired keys will be removed from storage</li>
- * <li>New timestamp is added to the storage. Storage scans for all expired values</li>
- * </ul>
+ * Data is kept in a fixed ring of per-second buckets (see {@link BucketStore}). A bucket
+ * is reused when its second falls out of the window, so storage never has to scan for
+ * expired values and bump doesn't allocate. Expired seconds are simply not visible
+ * for {@link #get(long)} and {@link #fullReport()}.
+ * <p>
+ * The aggregate of the whole window is maintained incrementally (see {@link SlidingWindow}),
+ * so full report costs the same for any window size. When time goes by, every second
+ * older than {@link #OPEN_SECONDS} is sealed in the ring and pushed into the window
+ * aggregate. Only open seconds are merged on read. Uploads for a sealed second are rare,
+ * they are applied to both the ring and the window aggregate under the window lock.
+ * <p>
+ * Besides min/max/sum/count every second keeps a {@link LogHistogram} of bumped values,
+ * so the distribution of the window is available as well.
+ * <p>
+ * Accepted uploads also feed {@link Rates}, moving averages of uploads and panoramas per tick
+ * of the clock, which are updated on the write path without a background thread. Roll-ups into
+ * coarser buckets see the same uploads, so they don't keep rates.
+ * <p>
+ * Storage has a {@link #version()} which grows when data is changed or the window moves,
+ * so readers can tell that nothing is changed without building a report. Writers only
+ * raise a dirty flag, the version itself is advanced by the reader.
  * <p>
  * The number of elements in storage <= ttl all the time.
  * <p>
  * All operations are thread safe.
  */
 public class Statistics {
-    final ConcurrentMap<Long, AtomicReference<Record>> storage;
-    final BiPredicate<Long, Long> expiredPred;
+    // seconds which are merged from the ring on every read: now + 1, now and now - 1
+    static final int OPEN_SECONDS = 3;
+    // the longest a custom expiration predicate can keep a second
+    static final int LEGACY_TTL = 3600;
+
+    final BucketStore storage;
+    final int ttl;
+    private final EpochClock clock;
+
+    // guarded by itself
+    private final SlidingWindow window;
+    // the newest second pushed into the window, guarded by window
+    private long sealedTo = Long.MIN_VALUE;
+    // receives seconds which leave the window, nullable
+    private final SlidingWindow.Expiry expiry;
+    // distribution of the second which is being sealed, guarded by window
+    private final LogHistogram sealing = new LogHistogram();
+    // durations of sealing seconds into the window, recorded under the window lock
+    private final LatencyRecorder sealDurations = new LatencyRecorder(1);
+
+    // moving averages of uploads and panoramas per tick of the clock, null for roll-ups
+    private final Rates rates;
+
+    // expiration predicate of the deprecated constructor, nullable
+    private final BiPredicate<Long, Long> expiredPred;
+
+    // raised by writers after a change, cleared by version()
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // guarded by dirty's monitor
+    private long version;
+    private long versionEpoch = Long.MIN_VALUE;
 
     /**
      * Creates new storage for statistics with fixed time window.
@@ -34,7 +71,7 @@ public class Statistics {
      * @param ttl - window time
      */
     public Statistics(int ttl) {
-        this((ts, now) -> (ttl <= now - ts));
+        this(ttl, EpochClock.system());
     }
 
     /**
@@ -44,10 +81,79 @@ public class Statistics {
      * argument respectively. It returns true if record is expired.
      *
      * @param pred - expiration predicate
+     * @deprecated the predicate can expire any second, so reports merge the seconds one by one
+     * instead of keeping the window aggregate, and seconds older than {@link #LEGACY_TTL} are
+     * expired anyway. Use {@link #Statistics(int)} instead.
      */
+    @Deprecated
     public Statistics(BiPredicate<Long, Long> pred) {
-        this.expiredPred = pred;
-        this.storage = new ConcurrentHashMap<>();
+        // a single cell per second, like a single record per second it used to be
+        this(LEGACY_TTL, new BucketRing(LEGACY_TTL + 1, 1), null, EpochClock.system(), true, pred);
+    }
+
+    /**
+     * Creates new storage for statistics with fixed time window and custom clock.
+     *
+     * @param ttl   - window time
+     * @param clock - source of current epoch time in seconds
+     */
+    Statistics(int ttl, EpochClock clock) {
+        // one extra slot for timestamps which are one second ahead of server time
+        this(ttl, new BucketRing(Math.max(1, ttl + 1)), clock);
+    }
+
+    /**
+     * Creates new storage for statistics with fixed time window in a custom store.
+     *
+     * @param ttl     - window time
+     * @param storage - store of at least ttl + 1 buckets
+     * @param clock   - source of current epoch time in seconds
+     */
+    Statistics(int ttl, BucketStore storage, EpochClock clock) {
+        this(ttl, storage, null, clock);
+    }
+
+    /**
+     * Creates new storage for statistics with fixed time window in a custom store,
+     * seconds which leave the window are appended to a history.
+     *
+     * @param ttl     - window time
+     * @param storage - store of at least ttl + 1 buckets
+     * @param history - receives expired seconds, nullable
+     * @param clock   - source of current epoch time in seconds
+     */
+    Statistics(int ttl, BucketStore storage, History history, EpochClock clock) {
+        this(ttl, storage, history, clock, true, null);
+    }
+
+    private Statistics(int ttl, BucketStore storage, History history, EpochClock clock, boolean rated,
+                       BiPredicate<Long, Long> expiredPred) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + ttl);
+        }
+        if (storage.capacity() <= ttl) {
+            throw new IllegalArgumentException("Store must hold at least " + (ttl + 1) + " buckets: "
+                    + storage.capacity());
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+        this.storage = storage;
+        // with a predicate seconds are merged on read, the window only serves as the lock
+        this.window = new SlidingWindow(null == expiredPred ? ttl : 1);
+        this.expiry = null == history ? null : history::append;
+        this.rates = rated ? new Rates(clock.epochSecond()) : null;
+        this.expiredPred = expiredPred;
+    }
+
+    /**
+     * Creates storage for a roll-up of statistics into coarser buckets, e.g. minutes.
+     * Roll-ups see the same uploads as the finest level, so they don't keep rates.
+     *
+     * @param ttl   - window in buckets
+     * @param clock - source of the current bucket
+     */
+    static Statistics rollup(int ttl, EpochClock clock) {
+        return new Statistics(ttl, new BucketRing(ttl + 1), null, clock, false, null);
     }
 
     /**
@@ -65,20 +171,59 @@ public class Statistics {
                     String.format("Bump for a timestamp from future %d (now: %d)", timestamp, now));
         }
 
+        // late uploads are still traffic, so rates count them even if the window doesn't
+        if (null != rates) {
+            rates.mark(1, count, now);
+        }
         if (isExpired(timestamp, now)) {
             return;
         }
 
+        if (BucketStore.Outcome.SEALED == storage.bump(timestamp, count)) {
+            synchronized (window) {
+                // the second could expire while we were waiting for the lock
+                if (window.contains(timestamp)
+                        && BucketStore.Outcome.ACCEPTED == storage.bumpSealed(timestamp, count)) {
+                    window.update(timestamp, count);
+                }
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Merges pre-aggregated statistics into a specified timestamp.
+     * It's equivalent to bumping every value the record was built from.
+     *
+     * @param timestamp epoch time in UTC
+     * @param record    statistics to merge
+     * @param histogram distribution of the values the record was built from
+     * @throws ArithmeticException if the result overflows long
+     */
+    public void merge(long timestamp, Record record, LogHistogram histogram) {
+        long now = epoch();
+
+        if (now + 1 < timestamp) {
+            throw new IllegalArgumentException(
+                    String.format("Merge for a timestamp from future %d (now: %d)", timestamp, now));
+        }
 
-        AtomicReference<Record> newRecord = new AtomicReference<>(new Record(count));
-        AtomicReference<Record> record = storage.putIfAbsent(timestamp, newRecord);
+        if (null != rates) {
+            rates.mark(record.count, record.sum, now);
+        }
+        if (isExpired(timestamp, now) || 0 == record.count) {
+            return;
+        }
 
-        if (record != null) {
-            record.updateAndGet((x) -> x.bump(count));
-        } else {
-            // new record is added to storage. try to clean up garbage
-            removeOldValue(now);
+        if (BucketStore.Outcome.SEALED == storage.merge(timestamp, record, histogram)) {
+            synchronized (window) {
+                if (window.contains(timestamp)
+                        && BucketStore.Outcome.ACCEPTED == storage.mergeSealed(timestamp, record, histogram)) {
+                    window.update(timestamp, record, histogram);
+                }
+            }
         }
+        changed();
     }
 
     /**
@@ -90,16 +235,22 @@ public class Statistics {
      * @return statistics for a specified timestamp.
      */
     public Record get(long timestamp) {
-        if (isExpired(timestamp, epoch())) {
-            storage.remove(timestamp);
-            return null;
-        }
+        return get(timestamp, null);
+    }
 
-        AtomicReference<Record> ref = storage.get(timestamp);
-        if (null == ref) {
+    /**
+     * Returns the statistics for a specified timestamp together with
+     * the distribution of bumped values.
+     *
+     * @param timestamp epoch time in UTC
+     * @param histogram receives the distribution of the same record, nullable
+     * @return statistics for a specified timestamp.
+     */
+    public Record get(long timestamp, LogHistogram histogram) {
+        if (isExpired(timestamp, epoch())) {
             return null;
         }
-        return ref.get();
+        return storage.get(timestamp, histogram);
     }
 
     /**
@@ -108,45 +259,258 @@ public class Statistics {
      * @return statistics
      */
     public Record fullReport() {
-        Record record = reduce(Record::merge);
-        if (null == record) {
-            return Record.empty();
-        }
-        return record;
+        return fullReport(null);
     }
 
-    private Record reduce(BiFunction<Record, Record, Record> reducer) {
+    /**
+     * Returns the full statistics for all not expired records together with
+     * the distribution of bumped values.
+     *
+     * @param histogram receives the distribution of the same records, nullable
+     * @return statistics
+     */
+    public Record fullReport(LogHistogram histogram) {
         long now = epoch();
+        if (null != expiredPred) {
+            return merged(now - ttl + 1, now + 1, histogram);
+        }
         Record acc = null;
-        for (Map.Entry<Long, AtomicReference<Record>> entry : storage.entrySet()) {
-            if (!isExpired(entry.getKey(), now)) {
-                Record r = entry.getValue().get();
-                acc = reducer.apply(acc, r);
-            } else {
-                storage.remove(entry.getKey());
+
+        synchronized (window) {
+            advance(now);
+            if (0 != window.count()) {
+                acc = new Record(window.min(), window.max(), window.sum(), window.count());
+            }
+            if (null != histogram) {
+                window.addHistogramTo(histogram);
+            }
+
+            long from = Math.max(now - ttl, sealedTo) + 1;
+            for (long ts = from; ts <= now + 1; ts++) {
+                Record r = storage.get(ts, histogram);
+                if (null != r) {
+                    acc = Record.merge(acc, r);
+                }
             }
         }
 
+        if (null == acc) {
+            return Record.empty();
+        }
         return acc;
     }
 
-    private boolean isExpired(long ts, long now) {
-       return expiredPred.test(ts, now);
+    /**
+     * Seals finished seconds and expires old ones without building a report,
+     * so expired seconds reach the history even if nobody reads statistics.
+     */
+    void sweep() {
+        if (null != expiredPred) {
+            return;
+        }
+        long now = epoch();
+        synchronized (window) {
+            advance(now);
+        }
     }
 
-    private long epoch() {
-        return Instant.now().getEpochSecond();
+    /**
+     * Returns all not expired seconds in range [from, to] which have data.
+     * <p>
+     * The series is copied under the window lock, so sealed seconds don't change
+     * while it's taken. Only open seconds can be bumped meanwhile.
+     *
+     * @param from epoch time in UTC, inclusive
+     * @param to   epoch time in UTC, inclusive
+     * @return per-second records ordered by timestamp
+     */
+    public Series series(long from, long to) {
+        long now = epoch();
+        long first = Math.max(from, now - ttl + 1);
+        long last = Math.min(to, now + 1);
+
+        Series series = new Series((int) Math.max(0, last - first + 1));
+        synchronized (window) {
+            for (long ts = first; ts <= last; ts++) {
+                Record r = get(ts);
+                if (null != r) {
+                    series.add(ts, r);
+                }
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Returns the statistics for all not expired seconds in range [from, to].
+     * <p>
+     * Sealed seconds are aggregated by the range tree of the window in O(log n),
+     * only open seconds of the range are read one by one.
+     *
+     * @param from epoch time in UTC, inclusive
+     * @param to   epoch time in UTC, inclusive
+     * @return statistics
+     */
+    public Record range(long from, long to) {
+        long now = epoch();
+        long first = Math.max(from, now - ttl + 1);
+        long last = Math.min(to, now + 1);
+        if (null != expiredPred) {
+            return merged(first, last, null);
+        }
+        RangeTree.Aggregate acc = new RangeTree.Aggregate();
+
+        synchronized (window) {
+            advance(now);
+            if (first <= last) {
+                window.addRangeTo(first, last, acc);
+                for (long ts = Math.max(first, Math.max(now - ttl, sealedTo) + 1); ts <= last; ts++) {
+                    Record r = storage.get(ts);
+                    if (null != r) {
+                        acc.add(r.min, r.max, r.sum, r.count);
+                    }
+                }
+            }
+        }
+
+        Record record = acc.toRecord();
+        return null == record ? Record.empty() : record;
     }
 
-    private void removeOldValue(long now) {
-        Set<Long> set = storage.keySet();
-        for (long ts : set) {
-            if (isExpired(ts, now)) {
-                set.remove(ts);
+    /**
+     * Returns the version of data. It grows every time data is changed or the current
+     * second moves on, so reports built after reading the same version are equal.
+     * A report built after reading a version is never older than the version.
+     */
+    long version() {
+        long now = epoch();
+        synchronized (dirty) {
+            if (dirty.getAndSet(false)) {
+                version++;
             }
+            if (now != versionEpoch) {
+                versionEpoch = now;
+                version++;
+            }
+            return version;
         }
     }
 
+    /**
+     * Returns current time of the storage clock.
+     */
+    long now() {
+        return epoch();
+    }
+
+    /**
+     * Returns the number of not expired seconds which have data.
+     */
+    int size() {
+        long now = epoch();
+        if (null != expiredPred) {
+            int size = 0;
+            for (long ts = now - ttl + 1; ts <= now + 1; ts++) {
+                if (null != get(ts)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+        return storage.size(now - ttl + 1, now + 1);
+    }
+
+    /**
+     * Returns uploads per tick of the clock averaged over {@code Rates.WINDOWS[window]} ticks.
+     */
+    double uploadRate(int window) {
+        return rates().uploads(window, epoch());
+    }
+
+    /**
+     * Returns panoramas per tick of the clock averaged over {@code Rates.WINDOWS[window]} ticks.
+     */
+    double panoramaRate(int window) {
+        return rates().panoramas(window, epoch());
+    }
+
+    private Rates rates() {
+        if (null == rates) {
+            throw new IllegalStateException("Roll-ups don't keep rates");
+        }
+        return rates;
+    }
+
+    /**
+     * Returns the number of times a bump found its storage cell busy.
+     */
+    long contended() {
+        return storage.contended();
+    }
+
+    /**
+     * Adds durations of sealing seconds into the window aggregate in nanoseconds to a histogram.
+     */
+    void addSealDurationsTo(LogHistogram histogram) {
+        sealDurations.addTo(histogram);
+    }
+
+    /**
+     * Expires old seconds from the window aggregate and seals seconds
+     * which are not open anymore. Must be called under the window lock.
+     */
+    private void advance(long now) {
+        long to = now + 1 - OPEN_SECONDS;
+        long from = Math.max(now - ttl, sealedTo) + 1;
+        if (from > to) {
+            window.expireBefore(now - ttl + 1, expiry);
+            return;
+        }
+
+        long started = System.nanoTime();
+        window.expireBefore(now - ttl + 1, expiry);
+        for (long ts = from; ts <= to; ts++) {
+            sealing.reset();
+            Record r = storage.seal(ts, sealing);
+            if (null == r) {
+                window.push(ts, 0, 0, 0, 0, null);
+            } else {
+                window.push(ts, r.min, r.max, r.sum, r.count, sealing);
+            }
+            sealedTo = ts;
+        }
+        sealDurations.record(System.nanoTime() - started);
+    }
+
+    /**
+     * Merges not expired seconds in range [from, to] one by one.
+     */
+    private Record merged(long from, long to, LogHistogram histogram) {
+        Record acc = null;
+        for (long ts = from; ts <= to; ts++) {
+            Record r = get(ts, histogram);
+            if (null != r) {
+                acc = Record.merge(acc, r);
+            }
+        }
+        return null == acc ? Record.empty() : acc;
+    }
+
+    private void changed() {
+        // plain read first, so the flag isn't written by every bump
+        if (!dirty.get()) {
+            dirty.set(true);
+        }
+    }
+
+    private boolean isExpired(long ts, long now) {
+        return ttl <= now - ts || (null != expiredPred && expiredPred.test(ts, now));
+    }
+
+    private long epoch() {
+        return clock.epochSecond();
+    }
+
     public static class Record {
         final long min;
         final long max;
@@ -188,4 +552,3 @@ public class Statistics {
         }
     }
 }
-
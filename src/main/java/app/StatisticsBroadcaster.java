@@ -0,0 +1,262 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes statistics of a window to many subscribers at once.
+ * <p>
+ * A single thread checks {@link WindowedStatistics#version()} every tick. When it's changed,
+ * the report is built and serialized once by {@link ReportCache} and the same frame is handed
+ * to every subscriber. So the cost of building reports doesn't depend on the number of subscribers.
+ * <p>
+ * Frames are written by a small pool of writers. Every subscriber has a single slot for the
+ * latest frame which is not written yet. A subscriber which doesn't take frames as fast as they
+ * come has the pending frame replaced instead of buffered, and it's dropped when it misses
+ * too many frames in a row. A write which is stuck holds its writer until the connection
+ * times out, so the pool should be larger than the number of stuck clients expected at once.
+ */
+class StatisticsBroadcaster {
+    private static Logger LOG = LoggerFactory.getLogger(StatisticsBroadcaster.class);
+
+    /**
+     * Receiver of frames, e.g. an SSE connection. Sends are never concurrent for the same subscriber.
+     */
+    interface Subscriber {
+        void send(String frame) throws IOException;
+
+        /**
+         * Called once the subscriber is dropped.
+         */
+        void close();
+    }
+
+    private final WindowedStatistics statistics;
+    private final ReportCache reports;
+    private final long window;
+    private final long tickNanos;
+    private final int maxMissed;
+    private final int writerThreads;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // written by the broadcaster thread only
+    private volatile String lastFrame;
+    private long lastVersion = Long.MIN_VALUE;
+
+    private volatile boolean running;
+    private Thread broadcaster;
+    private volatile ExecutorService writers;
+
+    /**
+     * @param statistics    - statistics to broadcast
+     * @param reports       - cache of serialized reports
+     * @param window        - window in seconds, one of the supported ones
+     * @param tickMillis    - how often statistics are checked for changes
+     * @param maxMissed     - number of frames in a row a subscriber can miss before it's dropped
+     * @param writerThreads - number of threads which write frames to subscribers
+     */
+    StatisticsBroadcaster(WindowedStatistics statistics, ReportCache reports, long window,
+                          long tickMillis, int maxMissed, int writerThreads) {
+        if (tickMillis <= 0 || maxMissed <= 0 || writerThreads <= 0) {
+            throw new IllegalArgumentException("Tick, missed frames and writers must be positive");
+        }
+        this.statistics = statistics;
+        this.reports = reports;
+        this.window = window;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.maxMissed = maxMissed;
+        this.writerThreads = writerThreads;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        AtomicInteger n = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "statistics-writer-" + n.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        broadcaster = new Thread(this::run, "statistics-broadcaster");
+        broadcaster.setDaemon(true);
+        broadcaster.start();
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(broadcaster);
+        broadcaster.join();
+        writers.shutdown();
+        for (Subscription s : subscriptions) {
+            s.drop();
+        }
+    }
+
+    /**
+     * Adds a subscriber. It gets the latest frame right away if there is one.
+     */
+    Subscription subscribe(Subscriber subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriptions.add(subscription);
+        String frame = lastFrame;
+        if (null != frame) {
+            subscription.offer(frame);
+        }
+        return subscription;
+    }
+
+    int subscribers() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Returns the number of frames built since start.
+     */
+    long frames() {
+        return frames.sum();
+    }
+
+    /**
+     * Returns the number of subscribers which were dropped because they were too slow or failed.
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Builds a new frame if statistics are changed and hands it to all subscribers.
+     * Called by the broadcaster thread.
+     */
+    void tick() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        long version = statistics.version();
+        if (version == lastVersion) {
+            return;
+        }
+
+        String frame;
+        try {
+            frame = new String(reports.report(window, version), StandardCharsets.UTF_8);
+        } catch (Exception ex) {
+            LOG.error("Failed to build statistics frame", ex);
+            return;
+        }
+        lastVersion = version;
+        lastFrame = frame;
+        frames.increment();
+
+        for (Subscription s : subscriptions) {
+            s.offer(frame);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            tick();
+            LockSupport.parkNanos(tickNanos);
+        }
+    }
+
+    final class Subscription {
+        private final Subscriber subscriber;
+        // the latest frame which is not written yet
+        private final AtomicReference<String> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // frames replaced before they were written, in a row
+        private final AtomicInteger missed = new AtomicInteger();
+
+        private Subscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Removes the subscription, the subscriber is closed.
+         */
+        void cancel() {
+            drop();
+        }
+
+        private void offer(String frame) {
+            if (null != pending.getAndSet(frame) && missed.incrementAndGet() >= maxMissed) {
+                LOG.debug("Dropping slow subscriber");
+                dropped.increment();
+                drop();
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                ExecutorService writers = StatisticsBroadcaster.this.writers;
+                if (null == writers) {
+                    // not started, the frame is written by the caller
+                    write();
+                } else {
+                    writers.execute(this::write);
+                }
+            }
+        }
+
+        private void write() {
+            for (; ; ) {
+                String frame = pending.getAndSet(null);
+                if (null == frame || closed.get()) {
+                    scheduled.set(false);
+                    // a frame could come after the slot was checked, but before the flag was cleared
+                    if (null == pending.get() || closed.get() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    subscriber.send(frame);
+                    missed.set(0);
+                } catch (Exception ex) {
+                    LOG.debug("Failed to send statistics frame", ex);
+                    dropped.increment();
+                    drop();
+                }
+            }
+        }
+
+        private void drop() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                pending.set(null);
+                // closing can wait for a write which is stuck, the broadcaster must not wait for it
+                ExecutorService writers = StatisticsBroadcaster.this.writers;
+                try {
+                    if (null != writers && running) {
+                        writers.execute(subscriber::close);
+                        return;
+                    }
+                } catch (RejectedExecutionException ex) {
+                    // writers are shut down
+                }
+                subscriber.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package app;
+
+import java.time.Instant;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coarse clock which is updated by a background ticker.
+ * <p>
+ * Readers get a volatile long instead of asking the system every time. The time lags behind
+ * the system one by at most a tick. It never goes backwards, so a timestamp which is valid
+ * for one reading stays not from the future for all following readings.
+ */
+class TickingClock implements EpochClock {
+    private final long tickNanos;
+    private volatile long now;
+
+    private volatile boolean running;
+    private Thread ticker;
+
+    /**
+     * Creates new clock. It shows the time of creation until {@link #start()} is called.
+     *
+     * @param tickMillis - how often the system time is read
+     */
+    TickingClock(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.now = Instant.now().getEpochSecond();
+    }
+
+    @Override
+    public long epochSecond() {
+        return now;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        ticker = new Thread(this::run, "clock-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(ticker);
+        ticker.join();
+    }
+
+    private void run() {
+        while (running) {
+            tick();
+            LockSupport.parkNanos(tickNanos);
+        }
+    }
+
+    private void tick() {
+        long epoch = Instant.now().getEpochSecond();
+        // the only writer, write only when the second changes to keep the cache line shared
+        if (epoch > now) {
+            now = epoch;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package app;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timer wheel of integer ids with deadlines in epoch seconds.
+ * <p>
+ * There are {@link #LEVELS} wheels of {@link #SLOTS} slots. A slot of level {@code k} covers
+ * {@code SLOTS^k} seconds. An id is put into the lowest level which can hold its deadline, and
+ * when a slot of a higher level comes up its ids are moved to lower levels. So scheduling,
+ * cancelling and expiring an id are O(1), and advancing by a second touches a single slot
+ * of the lowest level. Slots are intrusive doubly linked lists over arrays indexed by id,
+ * the wheel doesn't allocate after it's created.
+ * <p>
+ * Deadlines further than {@code SLOTS^LEVELS} seconds are parked in the farthest slot
+ * and scheduled again when it comes up.
+ * <p>
+ * Not thread safe.
+ */
+class TimerWheel {
+    static final int SLOTS = 64;
+    static final int LEVELS = 3;
+    private static final int BITS = 6;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[SLOTS * LEVELS];
+    private final int[] next;
+    private final int[] prev;
+    // slot of the id or NONE if it's not scheduled
+    private final int[] slots;
+    private final long[] deadlines;
+    // the latest second which is processed
+    private long current;
+
+    /**
+     * @param capacity - ids are in range [0, capacity)
+     * @param now      - current epoch second
+     */
+    TimerWheel(int capacity, long now) {
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.slots = new int[capacity];
+        this.deadlines = new long[capacity];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(slots, NONE);
+        this.current = now;
+    }
+
+    /**
+     * Schedules an id, an id which is already scheduled is moved to the new deadline.
+     * A deadline which has passed expires on the next {@link #advance}.
+     */
+    void schedule(int id, long deadline) {
+        cancel(id);
+        deadlines[id] = deadline;
+        link(id, slot(Math.max(deadline, current + 1)));
+    }
+
+    void cancel(int id) {
+        int slot = slots[id];
+        if (NONE == slot) {
+            return;
+        }
+        if (NONE == prev[id]) {
+            heads[slot] = next[id];
+        } else {
+            next[prev[id]] = next[id];
+        }
+        if (NONE != next[id]) {
+            prev[next[id]] = prev[id];
+        }
+        slots[id] = NONE;
+    }
+
+    boolean isScheduled(int id) {
+        return NONE != slots[id];
+    }
+
+    /**
+     * Moves time forward and expires every id with deadline not after now.
+     * Expired ids are not scheduled anymore when the consumer is called.
+     */
+    void advance(long now, IntConsumer expired) {
+        if (now - current >= SPAN) {
+            // everything has gone around, reschedule all at once
+            current = now - 1;
+            for (int slot = 0; slot < heads.length; slot++) {
+                reschedule(slot, now);
+            }
+        }
+        while (current < now) {
+            current++;
+            // cascade higher levels first, so ids due now get into the lowest level
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if (0 == (current & ((1L << (BITS * level)) - 1))) {
+                    reschedule(level * SLOTS + (int) ((current >>> (BITS * level)) & (SLOTS - 1)), current);
+                }
+            }
+            for (int id = detach((int) (current & (SLOTS - 1))), following; NONE != id; id = following) {
+                following = next[id];
+                slots[id] = NONE;
+                if (deadlines[id] <= current) {
+                    expired.accept(id);
+                } else {
+                    // parked because it was too far
+                    link(id, slot(deadlines[id]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves ids of a slot to the slots of their deadlines, but not earlier than a second.
+     */
+    private void reschedule(int slot, long earliest) {
+        for (int id = detach(slot), following; NONE != id; id = following) {
+            following = next[id];
+            link(id, slot(Math.max(deadlines[id], earliest)));
+        }
+    }
+
+    /**
+     * Empties a slot, ids are relinked by the caller so none of them is visited twice.
+     *
+     * @return the first id of the slot
+     */
+    private int detach(int slot) {
+        int head = heads[slot];
+        heads[slot] = NONE;
+        return head;
+    }
+
+    private int slot(long deadline) {
+        long delta = deadline - current;
+        if (delta >= SPAN) {
+            deadline = current + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        return level * SLOTS + (int) ((deadline >>> (BITS * level)) & (SLOTS - 1));
+    }
+
+    private void link(int id, int slot) {
+        int head = heads[slot];
+        next[id] = head;
+        prev[id] = NONE;
+        if (NONE != head) {
+            prev[head] = id;
+        }
+        heads[slot] = id;
+        slots[id] = slot;
+    }
+}
@@ -0,0 +1,121 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets of clients in a bounded table.
+ * <p>
+ * A client gets {@code rate} tokens per second up to {@code burst} and every request takes one.
+ * The table is open-addressed over primitive arrays: a slot holds a 64-bit hash of the client key
+ * and the state of its bucket packed into a long, the time of the last refill in milliseconds and
+ * tokens in thousandths, so taking a token is a single CAS. A client earns exactly {@code rate}
+ * thousandths per millisecond, so refilling at any call rate loses nothing. A client is looked up within
+ * {@link #PROBES} slots of its hash. When they are all taken by others, the one refilled least
+ * recently is given to the new client with a full bucket, so memory doesn't depend on the number
+ * of clients.
+ * <p>
+ * A bucket can be taken over by another client while it's used, then a request gets a token of
+ * the fresh bucket. It doesn't affect correctness of statistics, only precision of throttling.
+ * <p>
+ * All operations are thread safe and lock free.
+ */
+class TokenBuckets {
+    private static final int PROBES = 4;
+    // tokens are counted in 1/1000, so a millisecond earns a whole number of them
+    private static final long ONE = 1000;
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    static final long MAX_BURST = TOKEN_MASK / ONE;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray states;
+    private final int mask;
+    private final long rate;
+    private final long burst;
+    // refilling longer than this fills any bucket
+    private final long fillMillis;
+    // the state of a fresh bucket, refilled at time 0 so it's full whenever it's used
+    private final long full;
+
+    /**
+     * @param clients - max number of tracked clients, rounded up to a power of two
+     * @param rate    - tokens per second
+     * @param burst   - max number of tokens
+     */
+    TokenBuckets(int clients, long rate, long burst) {
+        if (clients <= 0) {
+            throw new IllegalArgumentException("Number of clients must be positive: " + clients);
+        }
+        if (rate <= 0 || rate > MAX_BURST * 1000) {
+            throw new IllegalArgumentException("Rate must be positive and fit the table: " + rate);
+        }
+        if (burst <= 0 || burst > MAX_BURST) {
+            throw new IllegalArgumentException("Burst must be in range [1, " + MAX_BURST + "]: " + burst);
+        }
+        int size = Math.max(PROBES, 1 == clients ? 1 : Integer.highestOneBit(clients - 1) << 1);
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.rate = rate;
+        this.burst = burst * ONE;
+        this.fillMillis = this.burst / rate + 1;
+        this.full = pack(0, this.burst);
+        for (int i = 0; i < size; i++) {
+            states.set(i, full);
+        }
+    }
+
+    /**
+     * Takes a token of a client.
+     *
+     * @param key - hash of the client key
+     * @param now - monotonic non-negative time in milliseconds, below 2^40
+     * @return true if the client had a token
+     */
+    boolean tryAcquire(long key, long now) {
+        int slot = slot(0 == key ? 1 : key);
+        for (;;) {
+            long state = states.get(slot);
+            long time = state >>> TOKEN_BITS;
+            long tokens = state & TOKEN_MASK;
+            // rate tokens per second is rate thousandths per millisecond
+            long earned = Math.min(fillMillis, Math.max(0, now - time)) * rate;
+            if (earned > 0) {
+                tokens = Math.min(burst, tokens + earned);
+                time = now;
+            }
+            if (tokens < ONE) {
+                return false;
+            }
+            if (states.compareAndSet(slot, state, pack(time, tokens - ONE))) {
+                return true;
+            }
+        }
+    }
+
+    private int slot(long key) {
+        int home = (int) (key ^ (key >>> 32));
+        int victim = home & mask;
+        for (int p = 0; p < PROBES; p++) {
+            int i = (home + p) & mask;
+            long k = keys.get(i);
+            if (k == key) {
+                return i;
+            }
+            if (0 == k && keys.compareAndSet(i, 0, key)) {
+                return i;
+            }
+            if (states.get(i) >>> TOKEN_BITS < states.get(victim) >>> TOKEN_BITS) {
+                victim = i;
+            }
+        }
+        // the state goes first, so the new client never sees tokens spent by the old one
+        states.set(victim, full);
+        keys.set(victim, key);
+        return victim;
+    }
+
+    private static long pack(long time, long tokens) {
+        return time << TOKEN_BITS | tokens;
+    }
+}
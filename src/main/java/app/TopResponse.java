@@ -0,0 +1,39 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TopResponse {
+    @JsonProperty
+    final List<Uploader> uploaders;
+
+    @JsonProperty
+    final long distinctUploaders;
+
+    @JsonProperty
+    final long errorBound;
+
+    public TopResponse(UploaderStatistics.Top top) {
+        this.uploaders = new ArrayList<>(top.uploaders.size());
+        for (UploaderStatistics.Uploader uploader : top.uploaders) {
+            this.uploaders.add(new Uploader(uploader));
+        }
+        this.distinctUploaders = top.distinct;
+        this.errorBound = top.errorBound;
+    }
+
+    public static class Uploader {
+        @JsonProperty
+        final String uploader;
+
+        @JsonProperty
+        final long count;
+
+        Uploader(UploaderStatistics.Uploader uploader) {
+            this.uploader = uploader.uploader;
+            this.count = uploader.count;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Fire-and-forget ingestion of uploads over UDP.
+ * <p>
+ * A datagram carries one or more statsd-style lines separated by {@code \n}:
+ * <pre>
+ * upload:&lt;count&gt;|&lt;timestamp&gt;
+ * </pre>
+ * A single thread receives datagrams into a reused direct buffer and parses lines straight
+ * from its bytes, nothing is allocated per datagram. Uploads are validated the same way as
+ * {@code /upload} and bumped into statistics. Clients don't get any reply, the outcome is only
+ * visible in the counters.
+ */
+class UdpListener {
+    private static Logger LOG = LoggerFactory.getLogger(UdpListener.class);
+    // the largest payload of a UDP datagram
+    static final int MAX_DATAGRAM = 65507;
+    private static final byte[] PREFIX = "upload:".getBytes();
+    private static final byte SEPARATOR = '|';
+    private static final long MAX_NUMBER = Long.MAX_VALUE / 10;
+
+    private final WindowedStatistics statistics;
+    private final UploadValidator validator;
+    private final EpochClock clock;
+    private final UploadLog log;
+    private final SocketAddress address;
+    private final int receiveBufferBytes;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+
+    // written only by the listener thread
+    private volatile long received;
+    private volatile long parsed;
+    private volatile long rejected;
+    private volatile long malformed;
+
+    private volatile boolean running;
+    private DatagramChannel channel;
+    private Thread listener;
+
+    /**
+     * Creates new listener. The socket is bound when {@link #start()} is called.
+     *
+     * @param statistics         - storage to apply uploads to
+     * @param validator          - rules which decide whether an upload is accepted
+     * @param clock              - source of current epoch time in seconds
+     * @param log                - log to append accepted uploads to, nullable
+     * @param address            - address to listen at, port 0 picks a free one
+     * @param receiveBufferBytes - size of the socket receive buffer, 0 keeps the OS default
+     */
+    UdpListener(WindowedStatistics statistics, UploadValidator validator, EpochClock clock, UploadLog log,
+                SocketAddress address, int receiveBufferBytes) {
+        if (receiveBufferBytes < 0) {
+            throw new IllegalArgumentException("Receive buffer must not be negative: " + receiveBufferBytes);
+        }
+        this.statistics = statistics;
+        this.validator = validator;
+        this.clock = clock;
+        this.log = log;
+        this.address = address;
+        this.receiveBufferBytes = receiveBufferBytes;
+    }
+
+    synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        channel = DatagramChannel.open();
+        if (0 < receiveBufferBytes) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+        }
+        channel.bind(address);
+        running = true;
+        listener = new Thread(this::run, "udp-listener");
+        listener.setDaemon(true);
+        listener.start();
+        LOG.info("Listening for uploads at udp:{}", channel.getLocalAddress());
+    }
+
+    synchronized void stop() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // wakes up the listener blocked in receive
+        channel.close();
+        listener.join();
+    }
+
+    /**
+     * Returns the port the listener is bound to.
+     */
+    synchronized int port() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Returns the number of received datagrams.
+     */
+    long received() {
+        return received;
+    }
+
+    /**
+     * Returns the number of well-formed uploads, accepted or rejected.
+     */
+    long parsed() {
+        return parsed;
+    }
+
+    /**
+     * Returns the number of well-formed uploads which didn't pass validation.
+     */
+    long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of lines which are not uploads.
+     */
+    long malformed() {
+        return malformed;
+    }
+
+    private void run() {
+        while (running) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (ClosedChannelException ex) {
+                // stopped
+                return;
+            } catch (IOException ex) {
+                LOG.warn("Failed to receive a datagram", ex);
+                continue;
+            }
+            buffer.flip();
+            handle(buffer);
+        }
+    }
+
+    /**
+     * Applies all lines of a datagram between position and limit of the buffer.
+     * Must not be called concurrently.
+     */
+    void handle(ByteBuffer datagram) {
+        received++;
+        long now = clock.epochSecond();
+        int end = datagram.limit();
+        int from = datagram.position();
+        while (from < end) {
+            int eol = from;
+            while (eol < end && '\n' != datagram.get(eol)) {
+                eol++;
+            }
+            int to = eol;
+            if (to > from && '\r' == datagram.get(to - 1)) {
+                to--;
+            }
+            // trailing and empty lines are fine
+            if (to > from) {
+                line(datagram, from, to, now);
+            }
+            from = eol + 1;
+        }
+    }
+
+    private void line(ByteBuffer datagram, int from, int to, long now) {
+        if (to - from < PREFIX.length) {
+            malformed++;
+            return;
+        }
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (PREFIX[i] != datagram.get(from + i)) {
+                malformed++;
+                return;
+            }
+        }
+
+        int i = from + PREFIX.length;
+        int countFrom = i;
+        long count = 0;
+        for (; i < to && SEPARATOR != datagram.get(i); i++) {
+            count = digit(count, datagram.get(i));
+            if (count < 0) {
+                malformed++;
+                return;
+            }
+        }
+        if (i == countFrom || i == to) {
+            malformed++;
+            return;
+        }
+
+        int timestampFrom = ++i;
+        long timestamp = 0;
+        for (; i < to; i++) {
+            timestamp = digit(timestamp, datagram.get(i));
+            if (timestamp < 0) {
+                malformed++;
+                return;
+            }
+        }
+        if (i == timestampFrom) {
+            malformed++;
+            return;
+        }
+
+        parsed++;
+        if (UploadValidator.Verdict.ACCEPTED != validator.check(timestamp, count, now)) {
+            rejected++;
+            return;
+        }
+        // the same as for /upload: only what statistics took is logged, a failed append doesn't undo it
+        try {
+            statistics.bump(timestamp, count);
+        } catch (Exception ex) {
+            LOG.error("Failed to report statistics", ex);
+            return;
+        }
+        if (null != log) {
+            try {
+                log.append(timestamp, count);
+            } catch (RuntimeException ex) {
+                LOG.error("Failed to append upload to the log", ex);
+            }
+        }
+    }
+
+    /**
+     * Appends a decimal digit to a non-negative number.
+     *
+     * @return the new number or -1 if the byte is not a digit or the number overflows
+     */
+    private static long digit(long number, byte b) {
+        if (b < '0' || b > '9' || number > MAX_NUMBER) {
+            return -1;
+        }
+        long next = number * 10 + (b - '0');
+        return next < 0 ? -1 : next;
+    }
+}
@@ -0,0 +1,24 @@
+package app;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class UdpResponse {
+    @JsonProperty
+    final long received;
+
+    @JsonProperty
+    final long parsed;
+
+    @JsonProperty
+    final long rejected;
+
+    @JsonProperty
+    final long malformed;
+
+    public UdpResponse(UdpListener listener) {
+        this.received = listener.received();
+        this.parsed = listener.parsed();
+        this.rejected = listener.rejected();
+        this.malformed = listener.malformed();
+    }
+}
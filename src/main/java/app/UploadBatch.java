@@ -0,0 +1,259 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Uploads of a single batch request grouped by second.
+ * <p>
+ * Almost every upload falls into a short range of recent seconds, so the batch keeps
+ * per-second aggregates in primitive arrays indexed by the offset from the oldest grouped
+ * second. Statistics is bumped once per grouped second of the batch. Accepted uploads
+ * which are older than the grouped range are kept aside and bumped one by one.
+ * <p>
+ * Uploads are appended to the log only when they are applied, after the whole body is read,
+ * and only the ones which statistics took. So a batch which turns out to be malformed halfway
+ * leaves nothing in the log to be replayed after a restart.
+ * <p>
+ * Not thread safe.
+ */
+class UploadBatch {
+    private final UploadValidator validator;
+    // nullable
+    private final UploadLog log;
+    private long now;
+    private long oldest;
+
+    // uploads older than the grouped range, allocated on demand
+    private long[] lateTimestamps = new long[0];
+    private long[] lateCounts = new long[0];
+    private int lateSize;
+
+    // grouped uploads waiting to be logged when applied, allocated on demand
+    private long[] loggedTimestamps = new long[0];
+    private long[] loggedCounts = new long[0];
+    private int loggedSize;
+
+    private final long[] min;
+    private final long[] max;
+    private final long[] sum;
+    private final long[] count;
+    // allocated on demand, a batch usually touches only a couple of seconds
+    private final LogHistogram[] histograms;
+
+    private long accepted;
+    private long rejected;
+
+    /**
+     * @param validator - rules for uploads
+     * @param seconds   - number of recent seconds (including one second ahead) to group uploads for
+     * @param now       - server epoch time in UTC
+     */
+    UploadBatch(UploadValidator validator, int seconds, long now) {
+        this(validator, seconds, now, null);
+    }
+
+    /**
+     * @param validator - rules for uploads
+     * @param seconds   - number of recent seconds (including one second ahead) to group uploads for
+     * @param now       - server epoch time in UTC
+     * @param log       - log to append accepted uploads to, nullable
+     */
+    UploadBatch(UploadValidator validator, int seconds, long now, UploadLog log) {
+        this.validator = validator;
+        this.log = log;
+
+        this.min = new long[seconds];
+        this.max = new long[seconds];
+        this.sum = new long[seconds];
+        this.count = new long[seconds];
+        this.histograms = new LogHistogram[seconds];
+
+        reset(now);
+    }
+
+    /**
+     * Empties the batch so it can be reused for another server time.
+     */
+    void reset(long now) {
+        this.now = now;
+        this.oldest = now + 2 - count.length;
+        this.lateSize = 0;
+        this.loggedSize = 0;
+        Arrays.fill(sum, 0);
+        Arrays.fill(count, 0);
+        accepted = 0;
+        rejected = 0;
+    }
+
+    /**
+     * Reads uploads from either JSON array or a stream of JSON objects (NDJSON).
+     * Fields other than timestamp and count are ignored.
+     *
+     * @throws IOException if the content is not valid JSON or an upload is not an object
+     */
+    void read(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        boolean isArray = JsonToken.START_ARRAY == token;
+        if (isArray) {
+            token = parser.nextToken();
+        }
+
+        while (null != token && JsonToken.END_ARRAY != token) {
+            if (JsonToken.START_OBJECT != token) {
+                throw new JsonParseException(parser, "Upload should be an object, got " + token);
+            }
+            readUpload(parser);
+            token = parser.nextToken();
+        }
+
+        if (isArray && JsonToken.END_ARRAY != token) {
+            throw new JsonParseException(parser, "Unexpected end of array");
+        }
+    }
+
+    private void readUpload(JsonParser parser) throws IOException {
+        long timestamp = 0;
+        long count = 0;
+        while (JsonToken.FIELD_NAME == parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (("timestamp".equals(field) || "count".equals(field)) && JsonToken.VALUE_NUMBER_INT != value) {
+                // a count of 1.5 is malformed, not 1, the same as for a single upload
+                throw new JsonParseException(parser, "Expected an integer " + field);
+            }
+            if ("timestamp".equals(field)) {
+                timestamp = parser.getLongValue();
+            } else if ("count".equals(field)) {
+                count = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        add(timestamp, count);
+    }
+
+    /**
+     * Adds an upload to the batch if it passes validation.
+     *
+     * @return true if upload is accepted
+     */
+    boolean add(long timestamp, long count) {
+        if (UploadValidator.Verdict.ACCEPTED != validator.check(timestamp, count, now)) {
+            rejected++;
+            return false;
+        }
+
+        if (timestamp < oldest) {
+            addLate(timestamp, count);
+            return true;
+        }
+
+        int i = (int) (timestamp - oldest);
+        long newSum;
+        try {
+            newSum = Math.addExact(sum[i], count);
+        } catch (ArithmeticException ex) {
+            rejected++;
+            return false;
+        }
+
+        if (0 == this.count[i]) {
+            min[i] = count;
+            max[i] = count;
+        } else {
+            min[i] = Math.min(min[i], count);
+            max[i] = Math.max(max[i], count);
+        }
+        if (null == histograms[i]) {
+            histograms[i] = new LogHistogram();
+        } else if (0 == this.count[i]) {
+            histograms[i].reset();
+        }
+        histograms[i].record(count);
+        sum[i] = newSum;
+        this.count[i]++;
+        accepted++;
+        if (null != log) {
+            addLogged(timestamp, count);
+        }
+        return true;
+    }
+
+    private void addLogged(long timestamp, long count) {
+        if (loggedSize == loggedTimestamps.length) {
+            int size = Math.max(16, loggedSize * 2);
+            loggedTimestamps = Arrays.copyOf(loggedTimestamps, size);
+            loggedCounts = Arrays.copyOf(loggedCounts, size);
+        }
+        loggedTimestamps[loggedSize] = timestamp;
+        loggedCounts[loggedSize] = count;
+        loggedSize++;
+    }
+
+    private void addLate(long timestamp, long count) {
+        if (lateSize == lateTimestamps.length) {
+            int size = Math.max(16, lateSize * 2);
+            lateTimestamps = Arrays.copyOf(lateTimestamps, size);
+            lateCounts = Arrays.copyOf(lateCounts, size);
+        }
+        lateTimestamps[lateSize] = timestamp;
+        lateCounts[lateSize] = count;
+        lateSize++;
+        accepted++;
+    }
+
+    /**
+     * Merges all accepted uploads into statistics, once per grouped second, and appends
+     * the merged ones to the log. If a merge fails, the rest of the batch is neither merged
+     * nor logged.
+     *
+     * @throws ArithmeticException if the result overflows long
+     */
+    void applyTo(WindowedStatistics statistics) {
+        // seconds below it are merged
+        int mergedTo = 0;
+        int lateMerged = 0;
+        try {
+            for (; mergedTo < count.length; mergedTo++) {
+                if (0 != count[mergedTo]) {
+                    statistics.merge(oldest + mergedTo, new Statistics.Record(min[mergedTo], max[mergedTo],
+                            sum[mergedTo], count[mergedTo]), histograms[mergedTo]);
+                }
+            }
+            for (; lateMerged < lateSize; lateMerged++) {
+                statistics.bump(lateTimestamps[lateMerged], lateCounts[lateMerged]);
+            }
+        } finally {
+            if (null != log) {
+                logMerged(oldest + mergedTo, lateMerged);
+            }
+        }
+    }
+
+    /**
+     * Appends grouped uploads older than a second and the first late uploads to the log.
+     */
+    private void logMerged(long before, int late) {
+        for (int i = 0; i < loggedSize; i++) {
+            if (loggedTimestamps[i] < before) {
+                log.append(loggedTimestamps[i], loggedCounts[i]);
+            }
+        }
+        for (int i = 0; i < late; i++) {
+            log.append(lateTimestamps[i], lateCounts[i]);
+        }
+    }
+
+    long accepted() {
+        return accepted;
+    }
+
+    long rejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,312 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-ahead log of accepted uploads, so statistics survive restarts.
+ * <p>
+ * Uploads are appended to memory-mapped segment files as fixed-size records of
+ * {@link #RECORD_BYTES}: timestamp and count. A writer reserves its record with an atomic add
+ * and writes it straight into the mapping, appends don't take locks or do system calls.
+ * A new segment is created when the current one is full. Space which is reserved but not
+ * written yet is zeros, such records have count 0 and are skipped on replay, so a crash loses
+ * only the uploads which were being written.
+ * <p>
+ * Appended uploads are in the page cache right away and survive a crash of the process.
+ * To survive a crash of the machine, a background thread forces segments to disk every
+ * fsync interval, all uploads of the interval are committed by one fsync. Segments which
+ * were closed before the retention are deleted.
+ * <p>
+ * On start every segment is read and uploads which are still inside the retention are bumped
+ * into statistics. Segments without such uploads are deleted, new uploads go to a new segment.
+ * <p>
+ * All operations are thread safe.
+ */
+class UploadLog {
+    private static Logger LOG = LoggerFactory.getLogger(UploadLog.class);
+    static final int RECORD_BYTES = 16;
+    private static final String PREFIX = "uploads-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long fsyncMillis;
+    private final WindowedStatistics statistics;
+    private final UploadValidator validator;
+    private final EpochClock clock;
+
+    private volatile Segment current;
+    // segments which are not written anymore, oldest first, guarded by this
+    private final ArrayDeque<Segment> closed = new ArrayDeque<>();
+    // closed segments which are not forced to disk yet, guarded by this
+    private final List<Segment> unforced = new ArrayList<>();
+    // guarded by this
+    private long nextSequence;
+    private long replayed;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * Creates new log. Uploads can't be appended until {@link #start()} is called.
+     *
+     * @param dir            - directory of segment files, created if it doesn't exist
+     * @param segmentRecords - number of uploads in a segment
+     * @param fsyncMillis    - how often segments are forced to disk, 0 leaves it to the OS
+     * @param statistics     - storage to replay uploads into
+     * @param validator      - rules which decide whether a logged upload is still in the window
+     * @param clock          - source of current epoch time in seconds
+     */
+    UploadLog(Path dir, int segmentRecords, long fsyncMillis, WindowedStatistics statistics,
+              UploadValidator validator, EpochClock clock) {
+        if (segmentRecords <= 0 || segmentRecords > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size is out of range: " + segmentRecords);
+        }
+        if (fsyncMillis < 0) {
+            throw new IllegalArgumentException("Fsync interval must not be negative: " + fsyncMillis);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentRecords * RECORD_BYTES;
+        this.fsyncMillis = fsyncMillis;
+        this.statistics = statistics;
+        this.validator = validator;
+        this.clock = clock;
+    }
+
+    /**
+     * Replays existing segments into statistics and opens a new segment for appends.
+     */
+    synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        Files.createDirectories(dir);
+        replay();
+        current = create();
+        running = true;
+
+        if (0 < fsyncMillis) {
+            flusher = new Thread(this::run, "upload-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Forces everything to disk and stops the flusher.
+     */
+    void stop() throws InterruptedException {
+        Thread flusher;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            flusher = this.flusher;
+        }
+        if (null != flusher) {
+            LockSupport.unpark(flusher);
+            flusher.join();
+        }
+        flush();
+    }
+
+    /**
+     * Appends an upload. The upload should be validated already.
+     *
+     * @throws UncheckedIOException if a new segment can't be created
+     */
+    void append(long timestamp, long count) {
+        for (; ; ) {
+            Segment segment = current;
+            long position = segment.position.getAndAdd(RECORD_BYTES);
+            if (position + RECORD_BYTES <= segmentBytes) {
+                segment.buffer.putLong((int) position, timestamp);
+                segment.buffer.putLong((int) position + 8, count);
+                return;
+            }
+            roll(segment);
+        }
+    }
+
+    /**
+     * Forces appended uploads to disk.
+     */
+    void flush() {
+        List<Segment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(unforced);
+            unforced.clear();
+            expire();
+        }
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        Segment segment = current;
+        if (null != segment) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Returns the number of uploads which were replayed on start.
+     */
+    synchronized long replayed() {
+        return replayed;
+    }
+
+    /**
+     * Returns the number of segment files, including the current one.
+     */
+    synchronized int segments() {
+        return closed.size() + (null == current ? 0 : 1);
+    }
+
+    private synchronized void roll(Segment full) {
+        if (current != full) {
+            // somebody else has already rolled it
+            return;
+        }
+        Segment next;
+        try {
+            next = create();
+        } catch (IOException ex) {
+            // the full segment stays current, so the next append tries again
+            throw new UncheckedIOException("Failed to create a segment in " + dir, ex);
+        }
+        full.closedAt = clock.epochSecond();
+        closed.addLast(full);
+        unforced.add(full);
+        current = next;
+        expire();
+    }
+
+    /**
+     * Deletes closed segments which can't have uploads inside the window.
+     * Uploads are at most a second ahead of the time their segment is closed.
+     */
+    private void expire() {
+        long now = clock.epochSecond();
+        while (!closed.isEmpty()
+                && UploadValidator.Verdict.TOO_OLD == validator.check(closed.peekFirst().closedAt + 1, 1, now)) {
+            Segment segment = closed.pollFirst();
+            unforced.remove(segment);
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException ex) {
+                LOG.warn("Failed to delete segment {}", segment.path, ex);
+            }
+        }
+    }
+
+    private void run() {
+        long nanos = fsyncMillis * 1_000_000L;
+        while (running) {
+            LockSupport.parkNanos(nanos);
+            try {
+                flush();
+            } catch (Exception ex) {
+                LOG.error("Failed to flush upload log", ex);
+            }
+        }
+    }
+
+    private Segment create() throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", PREFIX, nextSequence++, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    private void replay() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // names are zero-padded sequence numbers
+        Collections.sort(paths);
+
+        long now = clock.epochSecond();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            nextSequence = Math.max(nextSequence, sequence + 1);
+
+            long newest = replay(path, now);
+            if (Long.MIN_VALUE == newest) {
+                Files.delete(path);
+                continue;
+            }
+            // the segment is not written anymore, it expires with its newest upload
+            Segment segment = new Segment(path, null);
+            segment.closedAt = newest - 1;
+            closed.addLast(segment);
+        }
+        LOG.info("Replayed {} uploads from {} segments", replayed, closed.size());
+    }
+
+    /**
+     * Bumps uploads of a segment into statistics.
+     *
+     * @return the newest replayed timestamp or Long.MIN_VALUE if nothing is replayed
+     */
+    private long replay(Path path, long now) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        long newest = Long.MIN_VALUE;
+        int end = buffer.limit() - buffer.limit() % RECORD_BYTES;
+        for (int position = 0; position < end; position += RECORD_BYTES) {
+            long timestamp = buffer.getLong(position);
+            long count = buffer.getLong(position + 8);
+            if (UploadValidator.Verdict.ACCEPTED != validator.check(timestamp, count, now)) {
+                continue;
+            }
+            try {
+                statistics.bump(timestamp, count);
+            } catch (ArithmeticException ex) {
+                // the upload failed the same way when it was logged
+                continue;
+            }
+            newest = Math.max(newest, timestamp);
+            replayed++;
+        }
+        return newest;
+    }
+
+    private static final class Segment {
+        final Path path;
+        // null for segments which are left from the previous run
+        final MappedByteBuffer buffer;
+        final AtomicLong position = new AtomicLong();
+        // epoch second when the segment got full, guarded by the log
+        long closedAt = Long.MAX_VALUE;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
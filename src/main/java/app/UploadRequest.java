@@ -3,6 +3,10 @@ package app;
 public class UploadRequest {
     private long timestamp;
     private long count;
+    // optional, e.g. user, device or region
+    private String dimension;
+    // optional id of the uploader
+    private String uploader;
 
     public UploadRequest() {
     }
@@ -12,6 +16,16 @@ public class UploadRequest {
         this.count = count;
     }
 
+    public UploadRequest(long timestamp, long count, String dimension) {
+        this(timestamp, count);
+        this.dimension = dimension;
+    }
+
+    public UploadRequest(long timestamp, long count, String dimension, String uploader) {
+        this(timestamp, count, dimension);
+        this.uploader = uploader;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -19,4 +33,12 @@ public class UploadRequest {
     public long getCount() {
         return count;
     }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public String getUploader() {
+        return uploader;
+    }
 }
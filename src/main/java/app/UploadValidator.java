@@ -0,0 +1,59 @@
+package app;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Rules which decide whether an upload should be taken into account.
+ */
+class UploadValidator {
+    enum Verdict {
+        ACCEPTED,
+        EMPTY,
+        TOO_OLD,
+        FROM_FUTURE
+    }
+
+    private final LongUnaryOperator oldest;
+
+    /**
+     * @param window - the oldest acceptable upload in seconds
+     */
+    UploadValidator(long window) {
+        this(now -> now - window);
+    }
+
+    /**
+     * @param oldest - the oldest acceptable timestamp for current server time
+     */
+    UploadValidator(LongUnaryOperator oldest) {
+        this.oldest = oldest;
+    }
+
+    /**
+     * Checks an upload against current server time.
+     *
+     * @param timestamp epoch time of upload in UTC
+     * @param count     number of uploaded panoramas
+     * @param now       server epoch time in UTC
+     * @return verdict for the upload
+     */
+    Verdict check(long timestamp, long count, long now) {
+        // if upload doesn't upload anything then ignore it
+        if (count <= 0) {
+            return Verdict.EMPTY;
+        }
+
+        if (timestamp < oldest.applyAsLong(now)) {
+            return Verdict.TOO_OLD;
+        }
+
+        // client time could be ahead of server time. In general,
+        // it's a normal case when we get request from the future
+        // but we limit the difference by 1 seconds
+        if (1 < timestamp - now) {
+            return Verdict.FROM_FUTURE;
+        }
+
+        return Verdict.ACCEPTED;
+    }
+}
@@ -0,0 +1,237 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Who uploads: heavy uploaders and the number of distinct uploaders of the recent window.
+ * <p>
+ * Tracking every uploader exactly is not affordable, so every second of the window is a bucket of
+ * fixed size: a {@link CountMinSketch} of panoramas per uploader, a {@link HyperLogLog} of uploaders
+ * and up to {@link #CANDIDATES} heavy-hitter candidates, the uploaders with the largest estimates
+ * seen in the second. Buckets are kept in a ring like {@link BucketRing} and reset when reused for
+ * a newer second, so memory doesn't depend on the number of uploaders or uploads.
+ * <p>
+ * Buckets of the window are merged the way {@link Statistics.Record#merge} merges records: sketches
+ * are added, registers are maxed and candidates are united and estimated by the merged sketch.
+ * <p>
+ * Error bounds of the window with {@code N} panoramas in total:
+ * <ul>
+ * <li>panoramas of an uploader are never underestimated and overestimated by at most
+ * {@code e / WIDTH * N} (~0.27% of N) with probability {@code 1 - e^-DEPTH} (~98%)</li>
+ * <li>the number of distinct uploaders has relative standard error {@code 1.04 / sqrt(2^PRECISION)}
+ * (~2.3%)</li>
+ * <li>an uploader is a candidate of a second unless at least {@link #CANDIDATES} others had larger
+ * estimates in it, so every uploader with more than 1/CANDIDATES of panoramas of some second is
+ * reported</li>
+ * </ul>
+ * <p>
+ * All operations are thread safe.
+ */
+class UploaderStatistics {
+    // uploader ids are names, not documents
+    static final int MAX_LENGTH = 128;
+    static final int DEPTH = 4;
+    static final int WIDTH = 1024;
+    static final int PRECISION = 11;
+    static final int CANDIDATES = 64;
+
+    private final int ttl;
+    private final EpochClock clock;
+    private final Bucket[] buckets;
+
+    /**
+     * @param ttl   - window time
+     * @param clock - source of current epoch time in seconds
+     */
+    UploaderStatistics(int ttl, EpochClock clock) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + ttl);
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+        // one extra bucket for timestamps which are one second ahead of server time
+        this.buckets = new Bucket[ttl + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    int ttl() {
+        return ttl;
+    }
+
+    /**
+     * Adds panoramas of an uploader. Timestamps outside of the window are ignored.
+     */
+    void bump(String uploader, long timestamp, long count) {
+        long now = clock.epochSecond();
+        if (isExpired(timestamp, now) || now + 1 < timestamp) {
+            return;
+        }
+        bucket(timestamp).add(timestamp, uploader, hash(uploader), count);
+    }
+
+    /**
+     * Returns the number of distinct uploaders of the window.
+     */
+    long distinct() {
+        long now = clock.epochSecond();
+        HyperLogLog merged = new HyperLogLog(PRECISION);
+        for (long ts = now - ttl + 1; ts <= now + 1; ts++) {
+            bucket(ts).addTo(ts, null, merged, null);
+        }
+        return merged.estimate();
+    }
+
+    /**
+     * Returns up to k uploaders with the most panoramas in the window, the heaviest first.
+     */
+    Top top(int k) {
+        long now = clock.epochSecond();
+        CountMinSketch sketch = new CountMinSketch(DEPTH, WIDTH);
+        HyperLogLog distinct = new HyperLogLog(PRECISION);
+        Map<String, Long> candidates = new HashMap<>();
+        for (long ts = now - ttl + 1; ts <= now + 1; ts++) {
+            bucket(ts).addTo(ts, sketch, distinct, candidates);
+        }
+
+        List<Uploader> uploaders = new ArrayList<>(candidates.size());
+        for (Map.Entry<String, Long> e : candidates.entrySet()) {
+            uploaders.add(new Uploader(e.getKey(), sketch.estimate(e.getValue())));
+        }
+        uploaders.sort((a, b) -> 0 != Long.compare(b.count, a.count)
+                ? Long.compare(b.count, a.count)
+                : a.uploader.compareTo(b.uploader));
+        return new Top(new ArrayList<>(uploaders.subList(0, Math.min(k, uploaders.size()))),
+                distinct.estimate(), (long) Math.ceil(sketch.errorBound()));
+    }
+
+    /**
+     * 64-bit hash of an uploader id: FNV-1a of chars followed by the MurmurHash3 finalizer.
+     */
+    static long hash(String uploader) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < uploader.length(); i++) {
+            h ^= uploader.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Bucket bucket(long timestamp) {
+        return buckets[(int) Math.floorMod(timestamp, (long) buckets.length)];
+    }
+
+    private boolean isExpired(long ts, long now) {
+        return ttl <= now - ts;
+    }
+
+    static final class Uploader {
+        final String uploader;
+        // estimated number of panoramas
+        final long count;
+
+        Uploader(String uploader, long count) {
+            this.uploader = uploader;
+            this.count = count;
+        }
+    }
+
+    static final class Top {
+        final List<Uploader> uploaders;
+        final long distinct;
+        // max overestimate of a count with ~98% probability
+        final long errorBound;
+
+        Top(List<Uploader> uploaders, long distinct, long errorBound) {
+            this.uploaders = uploaders;
+            this.distinct = distinct;
+            this.errorBound = errorBound;
+        }
+    }
+
+    private static final class Bucket {
+        private final CountMinSketch sketch = new CountMinSketch(DEPTH, WIDTH);
+        private final HyperLogLog distinct = new HyperLogLog(PRECISION);
+        private final String[] candidates = new String[CANDIDATES];
+        private final long[] hashes = new long[CANDIDATES];
+        private final long[] estimates = new long[CANDIDATES];
+        private int size;
+        private long epoch = Long.MIN_VALUE;
+
+        synchronized void add(long timestamp, String uploader, long hash, long count) {
+            if (epoch > timestamp) {
+                // the bucket is already taken by a newer second
+                return;
+            }
+            if (epoch < timestamp) {
+                reset(timestamp);
+            }
+            sketch.add(hash, count);
+            distinct.add(hash);
+            offer(uploader, hash, sketch.estimate(hash));
+        }
+
+        /**
+         * Merges the bucket into the window if it holds the second.
+         *
+         * @param sketch     - receives the sketch, nullable
+         * @param distinct   - receives the registers
+         * @param candidates - receives candidates with their hashes, nullable
+         */
+        synchronized void addTo(long timestamp, CountMinSketch sketch, HyperLogLog distinct,
+                                Map<String, Long> candidates) {
+            if (epoch != timestamp) {
+                return;
+            }
+            if (null != sketch) {
+                sketch.add(this.sketch);
+            }
+            distinct.add(this.distinct);
+            if (null != candidates) {
+                for (int i = 0; i < size; i++) {
+                    candidates.put(this.candidates[i], hashes[i]);
+                }
+            }
+        }
+
+        private void offer(String uploader, long hash, long estimate) {
+            int min = 0;
+            for (int i = 0; i < size; i++) {
+                if (hashes[i] == hash && candidates[i].equals(uploader)) {
+                    estimates[i] = estimate;
+                    return;
+                }
+                if (estimates[i] < estimates[min]) {
+                    min = i;
+                }
+            }
+            if (size < CANDIDATES) {
+                min = size++;
+            } else if (estimate <= estimates[min]) {
+                return;
+            }
+            candidates[min] = uploader;
+            hashes[min] = hash;
+            estimates[min] = estimate;
+        }
+
+        private void reset(long timestamp) {
+            epoch = timestamp;
+            sketch.reset();
+            distinct.reset();
+            for (int i = 0; i < size; i++) {
+                candidates[i] = null;
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package app;
+
+/**
+ * Clock which is moved by hand, so tests can simulate hours of traffic without sleeping.
+ */
+class VirtualClock implements EpochClock {
+    private volatile long now;
+
+    VirtualClock(long now) {
+        this.now = now;
+    }
+
+    @Override
+    public long epochSecond() {
+        return now;
+    }
+
+    void set(long now) {
+        this.now = now;
+    }
+
+    /**
+     * Moves the clock by a number of seconds, negative values move it back.
+     *
+     * @return new time
+     */
+    synchronized long advance(long seconds) {
+        now += seconds;
+        return now;
+    }
+}
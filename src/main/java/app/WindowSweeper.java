@@ -0,0 +1,64 @@
+package app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background ticker which sweeps {@link Statistics} periodically.
+ * <p>
+ * Seconds are sealed and expired lazily by reports. A second which is not sealed before it leaves
+ * the window is simply dropped, which is fine for reports but not for {@link History}. Sweeping
+ * more often than the window slides guarantees every second goes through the window.
+ */
+class WindowSweeper {
+    private static Logger LOG = LoggerFactory.getLogger(WindowSweeper.class);
+
+    private final Statistics statistics;
+    private final long periodNanos;
+
+    private volatile boolean running;
+    private Thread sweeper;
+
+    /**
+     * @param periodMillis - how often statistics are swept
+     */
+    WindowSweeper(Statistics statistics, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        this.statistics = statistics;
+        this.periodNanos = periodMillis * 1_000_000L;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        sweeper = new Thread(this::run, "window-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(sweeper);
+        sweeper.join();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                statistics.sweep();
+            } catch (RuntimeException ex) {
+                LOG.error("Failed to sweep statistics", ex);
+            }
+            LockSupport.parkNanos(periodNanos);
+        }
+    }
+}
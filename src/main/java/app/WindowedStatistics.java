@@ -0,0 +1,268 @@
+package app;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * Statistics for several windows at once, e.g. 1 minute, 5 minutes, 1 hour and 24 hours.
+ * <p>
+ * Data is stored hierarchically. Every level is a {@link Statistics} whose buckets are
+ * seconds, minutes or hours: the clock of a level ticks once per bucket and timestamps
+ * are divided by the bucket size. Every upload is bumped into all levels it's not expired for.
+ * So a day of statistics takes a few dozen buckets instead of 86,400 seconds.
+ * <p>
+ * A window is served by the finest level which covers it:
+ * <ul>
+ * <li>windows up to the seconds level ttl - by seconds</li>
+ * <li>windows up to 1 hour made of whole minutes - by minutes</li>
+ * <li>longer windows made of whole hours - by hours</li>
+ * </ul>
+ * Boundaries of minute and hour windows are aligned to the buckets, i.e. 5 minutes window
+ * includes the current minute and 4 previous ones. A window which spans the whole level is
+ * served by {@link Statistics#fullReport()}, otherwise its buckets are merged one by one.
+ * <p>
+ * All operations are thread safe.
+ */
+class WindowedStatistics {
+    static final int MINUTE = 60;
+    static final int HOUR = 60 * MINUTE;
+
+    private final Level[] levels;
+    private final long[] windows;
+
+    /**
+     * Creates statistics for the given windows.
+     *
+     * @param seconds - the finest level
+     * @param windows - supported windows in seconds, the ttl of the finest level is always supported
+     * @param clock   - source of current epoch time in seconds
+     * @throws IllegalArgumentException if some window can't be served by any level
+     */
+    WindowedStatistics(Statistics seconds, long[] windows, EpochClock clock) {
+        this.windows = LongStream.concat(Arrays.stream(windows), LongStream.of(seconds.ttl))
+                .distinct()
+                .sorted()
+                .toArray();
+        if (this.windows[0] <= 0) {
+            throw new IllegalArgumentException("Windows must be positive: " + Arrays.toString(windows));
+        }
+
+        long largest = this.windows[this.windows.length - 1];
+        Level sec = new Level(1, seconds);
+        Level min = largest > seconds.ttl
+                ? new Level(MINUTE, Statistics.rollup(HOUR / MINUTE, () -> Math.floorDiv(clock.epochSecond(), MINUTE)))
+                : null;
+        Level hour = largest > HOUR
+                ? new Level(HOUR, Statistics.rollup(ceilDiv(largest, HOUR),
+                        () -> Math.floorDiv(clock.epochSecond(), HOUR)))
+                : null;
+        this.levels = Arrays.stream(new Level[]{sec, min, hour})
+                .filter(l -> null != l)
+                .toArray(Level[]::new);
+
+        for (long window : this.windows) {
+            level(window);
+        }
+    }
+
+    /**
+     * Bumps the given value for a specified timestamp on all levels.
+     *
+     * @param timestamp epoch time in UTC
+     * @param count     the value to bump
+     * @throws ArithmeticException if the result overflows long
+     */
+    void bump(long timestamp, long count) {
+        for (Level level : levels) {
+            level.statistics.bump(level.bucket(timestamp), count);
+        }
+    }
+
+    /**
+     * Merges pre-aggregated statistics into a specified timestamp on all levels.
+     *
+     * @throws ArithmeticException if the result overflows long
+     */
+    void merge(long timestamp, Statistics.Record record, LogHistogram histogram) {
+        for (Level level : levels) {
+            level.statistics.merge(level.bucket(timestamp), record, histogram);
+        }
+    }
+
+    /**
+     * Returns statistics for a window.
+     *
+     * @param window    - window in seconds, one of the configured ones
+     * @param histogram - receives the distribution of the same statistics, nullable
+     * @throws IllegalArgumentException if window is not supported
+     */
+    Statistics.Record report(long window, LogHistogram histogram) {
+        if (!supports(window)) {
+            throw new IllegalArgumentException("Window is not supported: " + window);
+        }
+
+        Level level = level(window);
+        int buckets = (int) (window / level.size);
+        if (buckets == level.statistics.ttl) {
+            return level.statistics.fullReport(histogram);
+        }
+
+        long now = level.statistics.now();
+        Statistics.Record acc = null;
+        for (long bucket = now + 1; bucket > now - buckets; bucket--) {
+            Statistics.Record r = level.statistics.get(bucket, histogram);
+            if (null != r) {
+                acc = Statistics.Record.merge(acc, r);
+            }
+        }
+        return null == acc ? Statistics.Record.empty() : acc;
+    }
+
+    /**
+     * Returns statistics of the finest level in range [from, to].
+     *
+     * @see Statistics#range(long, long)
+     */
+    Statistics.Record range(long from, long to) {
+        return levels[0].statistics.range(from, to);
+    }
+
+    /**
+     * Returns per-second records of the finest level in range [from, to].
+     *
+     * @see Statistics#series(long, long)
+     */
+    Series series(long from, long to) {
+        return levels[0].statistics.series(from, to);
+    }
+
+    /**
+     * Returns the version of data of all levels, see {@link Statistics#version()}.
+     * Versions of levels only grow, so does their sum.
+     */
+    long version() {
+        long version = 0;
+        for (Level level : levels) {
+            version += level.statistics.version();
+        }
+        return version;
+    }
+
+    /**
+     * Returns uploads per second averaged over {@code Rates.WINDOWS[window]} seconds.
+     */
+    double uploadRate(int window) {
+        return levels[0].statistics.uploadRate(window);
+    }
+
+    /**
+     * Returns panoramas per second averaged over {@code Rates.WINDOWS[window]} seconds.
+     */
+    double panoramaRate(int window) {
+        return levels[0].statistics.panoramaRate(window);
+    }
+
+    /**
+     * Returns the number of seconds of the finest level which have data.
+     */
+    int size() {
+        return levels[0].statistics.size();
+    }
+
+    /**
+     * Returns the number of times bumps found their storage cells busy on all levels.
+     */
+    long contended() {
+        long contended = 0;
+        for (Level level : levels) {
+            contended += level.statistics.contended();
+        }
+        return contended;
+    }
+
+    /**
+     * Adds durations of sealing buckets of all levels in nanoseconds to a histogram.
+     */
+    void addSealDurationsTo(LogHistogram histogram) {
+        for (Level level : levels) {
+            level.statistics.addSealDurationsTo(histogram);
+        }
+    }
+
+    boolean supports(long window) {
+        return 0 <= Arrays.binarySearch(windows, window);
+    }
+
+    long largestWindow() {
+        return windows[windows.length - 1];
+    }
+
+    /**
+     * Returns the oldest timestamp which still gets into the largest window. Buckets of the coarsest
+     * level are aligned, so its oldest bucket may start later than the largest window does.
+     *
+     * @param now epoch time in UTC
+     */
+    long oldest(long now) {
+        Level coarsest = levels[levels.length - 1];
+        long stored = (coarsest.bucket(now) - coarsest.statistics.ttl + 1) * coarsest.size;
+        return Math.max(stored, now - largestWindow());
+    }
+
+    /**
+     * Parses a window like "90", "90s", "5m", "1h" or "1d" into seconds.
+     *
+     * @throws IllegalArgumentException if the window can't be parsed
+     */
+    static long parseWindow(String window) {
+        String w = window.trim();
+        if (w.isEmpty()) {
+            throw new IllegalArgumentException("Empty window");
+        }
+        long unit;
+        switch (w.charAt(w.length() - 1)) {
+            case 's':
+                unit = 1;
+                break;
+            case 'm':
+                unit = MINUTE;
+                break;
+            case 'h':
+                unit = HOUR;
+                break;
+            case 'd':
+                unit = 24 * HOUR;
+                break;
+            default:
+                return Long.parseLong(w);
+        }
+        return Math.multiplyExact(Long.parseLong(w.substring(0, w.length() - 1)), unit);
+    }
+
+    private Level level(long window) {
+        for (Level level : levels) {
+            if (0 == window % level.size && window / level.size <= level.statistics.ttl) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("No level can serve window: " + window);
+    }
+
+    private static int ceilDiv(long a, long b) {
+        return Math.toIntExact((a + b - 1) / b);
+    }
+
+    private static final class Level {
+        final long size;
+        final Statistics statistics;
+
+        Level(long size, Statistics statistics) {
+            this.size = size;
+            this.statistics = statistics;
+        }
+
+        long bucket(long timestamp) {
+            return Math.floorDiv(timestamp, size);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class AdmissionControlTest {
+    @Test
+    public void shedUploadDoesntCostToken() {
+        // a token per second, the test is over long before one is refilled
+        AdmissionControl control = new AdmissionControl(new TokenBuckets(16, 1, 2),
+                new ConcurrencyLimiter(1, 1, TimeUnit.SECONDS.toNanos(10)));
+
+        assertThat(control.admit("a"), equalTo(AdmissionControl.Decision.ADMITTED));
+        assertThat(control.admit("a"), equalTo(AdmissionControl.Decision.SHED));
+        control.complete(0);
+
+        // the second token is still there
+        assertThat(control.admit("a"), equalTo(AdmissionControl.Decision.ADMITTED));
+        control.complete(0);
+        assertThat(control.admit("a"), equalTo(AdmissionControl.Decision.THROTTLED));
+
+        // a throttled upload gives its place back
+        assertThat(control.inFlight(), equalTo(0));
+        assertThat(control.admit("b"), equalTo(AdmissionControl.Decision.ADMITTED));
+        assertThat(control.admitted(), equalTo(3L));
+        assertThat(control.shed(), equalTo(1L));
+        assertThat(control.throttled(), equalTo(1L));
+    }
+}
@@ -0,0 +1,94 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+// the first requests of a fresh context are slow, a high target keeps the limit where it starts
+@SpringBootTest(properties = {"admission.enabled=true", "admission.rate=1", "admission.burst=2",
+        "admission.api-keys=known", "admission.target-latency-millis=60000"})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class AdmissionEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    public MockHttpServletRequestBuilder endpoint(long ts, int count) {
+        return post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d}", ts, count));
+    }
+
+    private static RequestPostProcessor remoteAddr(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+    @Test
+    public void clientOverRateIsThrottled() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 1)).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 2)).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 3))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+
+        // other clients and reads are not affected
+        this.mockMvc.perform(endpoint(now, 4).with(remoteAddr("10.0.0.2"))).andExpect(status().isAccepted());
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(7)));
+
+        this.mockMvc.perform(get("/internal/admission").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.admitted", is(3)))
+                .andExpect(jsonPath("$.throttled", is(1)))
+                .andExpect(jsonPath("$.shed", is(0)))
+                .andExpect(jsonPath("$.limit", is(150)))
+                .andExpect(jsonPath("$.inFlight", is(0)));
+    }
+
+    @Test
+    public void unknownKeysDontBypassThrottling() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 1).header("X-Api-Key", "a")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 1).header("X-Api-Key", "b")).andExpect(status().isAccepted());
+        // a new key every time is still the same client
+        for (int i = 0; i < 10; i++) {
+            this.mockMvc.perform(endpoint(now, 1).header("X-Api-Key", "rotated-" + i))
+                    .andExpect(status().isTooManyRequests());
+        }
+
+        // a known key has its own bucket
+        this.mockMvc.perform(endpoint(now, 1).header("X-Api-Key", "known")).andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void malformedUploadIsThrottledBeforeParsing() throws Exception {
+        this.mockMvc.perform(endpoint(0, 1)).andExpect(status().isNoContent());
+        this.mockMvc.perform(endpoint(0, 1)).andExpect(status().isNoContent());
+        this.mockMvc.perform(post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8).content("{"))
+                .andExpect(status().isTooManyRequests());
+    }
+}
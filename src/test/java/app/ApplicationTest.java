@@ -0,0 +1,66 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The application starts with default properties and rejects invalid ones on start.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ApplicationTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void startsWithDefaultProperties() throws Exception {
+        this.mockMvc.perform(post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":3}", Instant.now().getEpochSecond())))
+                .andExpect(status().isAccepted());
+
+        // default quantiles
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)))
+                .andExpect(jsonPath("$.percentiles.p50", is(3)))
+                .andExpect(jsonPath("$.percentiles.p90", is(3)))
+                .andExpect(jsonPath("$.percentiles.p99", is(3)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileOutOfRangeFailsStart() throws Throwable {
+        try {
+            new SpringApplicationBuilder(Application.class).properties(
+                    "server.port=0",
+                    "spring.jmx.enabled=false",
+                    "statistics.quantiles=0.5,1.5").run().close();
+        } catch (RuntimeException ex) {
+            throw rootCause(ex);
+        }
+    }
+
+    static Throwable rootCause(Throwable ex) {
+        while (null != ex.getCause()) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+}
@@ -0,0 +1,87 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"ingestion.async=true", "ingestion.queue-capacity=1024",
+        "ingestion.overflow=too_many_requests"})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class AsyncUploadEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AsyncIngestion ingestion;
+
+    public MockHttpServletRequestBuilder endpoint(long ts, int count) {
+        return post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d}", ts, count));
+    }
+
+    @Test
+    public void uploadsAreAppliedAsynchronously() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 2)).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now - 3, 5)).andExpect(status().isAccepted());
+
+        while (ingestion.drained() < 2) {
+            Thread.sleep(10);
+        }
+
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.min", is(2)))
+                .andExpect(jsonPath("$.max", is(5)))
+                .andExpect(jsonPath("$.sum", is(7)))
+                .andExpect(jsonPath("$.count", is(2)));
+
+        this.mockMvc.perform(get("/internal/ingestion").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.drained", is(2)))
+                .andExpect(jsonPath("$.depth", is(0)))
+                .andExpect(jsonPath("$.capacity", is(1024)));
+    }
+
+    @Test
+    public void invalidUploadsAreNotQueued() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now - 100000, 2)).andExpect(status().is(204));
+        this.mockMvc.perform(endpoint(now, 0)).andExpect(status().is(204));
+
+        this.mockMvc.perform(get("/internal/ingestion").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.drained", is(0)))
+                .andExpect(jsonPath("$.depth", is(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOverflowFailsStart() throws Throwable {
+        try {
+            new SpringApplicationBuilder(Application.class).properties(
+                    "server.port=0",
+                    "spring.jmx.enabled=false",
+                    "ingestion.async=true",
+                    "ingestion.overflow=drop").run().close();
+        } catch (RuntimeException ex) {
+            throw ApplicationTest.rootCause(ex);
+        }
+    }
+}
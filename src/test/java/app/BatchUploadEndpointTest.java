@@ -0,0 +1,94 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class BatchUploadEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    public MockHttpServletRequestBuilder endpoint(MediaType type) {
+        return post("/upload/batch").contentType(type);
+    }
+
+    @Test
+    public void postJsonArray() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        MockHttpServletRequestBuilder req = endpoint(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("[{\"timestamp\":%d,\"count\":2},{\"timestamp\":%d,\"count\":4},"
+                        + "{\"timestamp\":%d,\"count\":1}]", now, now, now - 5));
+
+        this.mockMvc.perform(req)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted", is(3)))
+                .andExpect(jsonPath("$.rejected", is(0)));
+
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.min", is(1)))
+                .andExpect(jsonPath("$.max", is(4)))
+                .andExpect(jsonPath("$.sum", is(7)))
+                .andExpect(jsonPath("$.count", is(3)));
+    }
+
+    @Test
+    public void postNdjson() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        MockHttpServletRequestBuilder req = endpoint(MediaType.valueOf("application/x-ndjson"))
+                .content(String.format("{\"timestamp\":%d,\"count\":2}\n{\"count\":3,\"timestamp\":%d}\n", now, now - 1));
+
+        this.mockMvc.perform(req)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted", is(2)))
+                .andExpect(jsonPath("$.rejected", is(0)));
+
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.sum", is(5)))
+                .andExpect(jsonPath("$.count", is(2)));
+    }
+
+    @Test
+    public void rejectInvalidUploads() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        MockHttpServletRequestBuilder req = endpoint(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("[{\"timestamp\":%d,\"count\":2},{\"timestamp\":%d,\"count\":2},"
+                        + "{\"timestamp\":%d,\"count\":0},{\"timestamp\":%d,\"count\":1}]", now - 100000, now + 10, now, now));
+
+        this.mockMvc.perform(req)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted", is(1)))
+                .andExpect(jsonPath("$.rejected", is(3)));
+    }
+
+    @Test
+    public void postMalformedBatch() throws Exception {
+        MockHttpServletRequestBuilder req = endpoint(MediaType.APPLICATION_JSON_UTF8)
+                .content("[{\"timestamp\":1,\"count\":2}");
+
+        this.mockMvc.perform(req)
+                .andExpect(status().isBadRequest());
+
+        this.mockMvc.perform(endpoint(MediaType.APPLICATION_JSON_UTF8)
+                .content("[{\"timestamp\":1,\"count\":1.5}]"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,128 @@
+package app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs several nodes in one JVM, they exchange buckets over loopback.
+ */
+@RunWith(JUnit4.class)
+public class ClusterEndpointTest {
+    private static final int NODES = 3;
+
+    private final RestTemplate rest = new RestTemplate();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final int[] ports = new int[NODES];
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            StringBuilder peers = new StringBuilder();
+            for (int j = 0; j < NODES; j++) {
+                if (i != j) {
+                    peers.append(peers.length() == 0 ? "" : ",").append("http://127.0.0.1:").append(ports[j]);
+                }
+            }
+            nodes.add(new SpringApplicationBuilder(Application.class).properties(
+                    "server.port=" + ports[i],
+                    "spring.jmx.enabled=false",
+                    "cluster.enabled=true",
+                    "cluster.node-id=node-" + i,
+                    "cluster.peers=" + peers,
+                    "cluster.export-millis=100",
+                    "cluster.stale-secs=1").run());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (ConfigurableApplicationContext node : nodes) {
+            node.close();
+        }
+    }
+
+    private void upload(int node, long ts, long count) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        String body = String.format("{\"timestamp\":%d,\"count\":%d}", ts, count);
+        rest.postForEntity(url(node, "/upload"), new HttpEntity<>(body, headers), Void.class);
+    }
+
+    private String url(int node, String path) {
+        return "http://127.0.0.1:" + ports[node] + path;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> awaitCluster(int node, Predicate<Map<String, Object>> condition)
+            throws InterruptedException {
+        Map<String, Object> stats = null;
+        for (int attempt = 0; attempt < 100; attempt++) {
+            stats = rest.getForObject(url(node, "/statistics/cluster"), Map.class);
+            if (condition.test(stats)) {
+                return stats;
+            }
+            Thread.sleep(100);
+        }
+        return stats;
+    }
+
+    @Test
+    public void clusterStatisticsMergeAllNodes() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        upload(0, now, 1);
+        upload(1, now - 5, 10);
+        upload(2, now - 10, 4);
+        upload(2, now, 5);
+
+        Map<String, Object> stats = awaitCluster(0, s -> ((Number) s.get("count")).intValue() == 4);
+        assertThat(((Number) stats.get("count")).intValue(), equalTo(4));
+        assertThat(((Number) stats.get("sum")).intValue(), equalTo(20));
+        assertThat(((Number) stats.get("min")).intValue(), equalTo(1));
+        assertThat(((Number) stats.get("max")).intValue(), equalTo(10));
+        assertThat(((List<?>) stats.get("nodes")).size(), equalTo(3));
+
+        // the local statistics of a node stay local
+        Map<?, ?> local = rest.getForObject(url(0, "/statistics"), Map.class);
+        assertThat(((Number) local.get("count")).intValue(), equalTo(1));
+    }
+
+    @Test
+    public void nodeWhichDropsOutBecomesStale() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        upload(0, now, 1);
+        upload(2, now, 5);
+        awaitCluster(0, s -> ((Number) s.get("count")).intValue() == 2);
+
+        nodes.remove(2).close();
+
+        Map<String, Object> stats = awaitCluster(0, s -> ((List<?>) s.get("stale")).size() == 1);
+        assertThat(stats.get("stale"), equalTo((Object) Collections.singletonList("node-2")));
+        assertThat(((Number) stats.get("count")).intValue(), equalTo(1));
+    }
+}
@@ -0,0 +1,114 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class ClusterViewTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+
+    private static Series series(long... tsAndValues) {
+        Series series = new Series(tsAndValues.length / 2);
+        for (int i = 0; i < tsAndValues.length; i += 2) {
+            series.add(tsAndValues[i], new Statistics.Record(tsAndValues[i + 1]));
+        }
+        return series;
+    }
+
+    private static NodeBuckets roundTrip(String node, long exportedAt, Series series) throws IOException {
+        byte[] bytes = BucketCodec.encode(node, exportedAt, series);
+        return BucketCodec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void bucketsSurviveEncoding() throws IOException {
+        Statistics statistics = new Statistics(60, clock);
+        statistics.bump(now - 30, 5);
+        statistics.bump(now - 30, -3);
+        statistics.bump(now - 29, Long.MAX_VALUE / 2);
+        statistics.bump(now + 1, 1);
+
+        Series series = statistics.series(Long.MIN_VALUE, Long.MAX_VALUE);
+        NodeBuckets decoded = roundTrip("node-1", now, series);
+
+        assertThat(decoded.node, equalTo("node-1"));
+        assertThat(decoded.exportedAt, equalTo(now));
+        assertThat(decoded.series.size(), equalTo(3));
+        for (int i = 0; i < series.size(); i++) {
+            assertThat(decoded.series.timestamp(i), equalTo(series.timestamp(i)));
+            assertThat(decoded.series.min(i), equalTo(series.min(i)));
+            assertThat(decoded.series.max(i), equalTo(series.max(i)));
+            assertThat(decoded.series.sum(i), equalTo(series.sum(i)));
+            assertThat(decoded.series.count(i), equalTo(series.count(i)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedBucketsAreRejected() throws IOException {
+        byte[] bytes = BucketCodec.encode("node-1", now, series(now, 1, now + 1, 2));
+        BucketCodec.decode(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    public void decodedBucketsGrowPastInitialCapacity() throws IOException {
+        Series series = new Series(1000);
+        for (int i = 0; i < 1000; i++) {
+            series.add(now - 999 + i, new Statistics.Record(i));
+        }
+        NodeBuckets decoded = roundTrip("node-1", now, series);
+        assertThat(decoded.series.size(), equalTo(1000));
+        assertThat(decoded.series.timestamp(999), equalTo(now));
+        assertThat(decoded.series.sum(999), equalTo(999L));
+    }
+
+    @Test
+    public void mergesFreshPeersSecondBySecond() throws IOException {
+        ClusterView view = new ClusterView("a", 5, 60, clock);
+        view.accept(roundTrip("b", now, series(now - 10, 4, now, 100)));
+        view.accept(roundTrip("c", now, series(now, 2)));
+        // an older export doesn't replace a newer one
+        view.accept(roundTrip("c", now - 1, series(now, 1000)));
+        // own exports are ignored
+        view.accept(roundTrip("a", now, series(now, 1000)));
+
+        ClusterView.Report report = view.report(series(now - 70, 1000, now - 10, 1), now - 59, now + 1);
+        assertThat(report.record.count, equalTo(4L));
+        assertThat(report.record.sum, equalTo(107L));
+        assertThat(report.record.min, equalTo(1L));
+        assertThat(report.record.max, equalTo(100L));
+        assertThat(report.nodes, equalTo(Arrays.asList("a", "b", "c")));
+        assertThat(report.stale.isEmpty(), is(true));
+    }
+
+    @Test
+    public void stalePeersAreLeftOutAndForgotten() throws IOException {
+        ClusterView view = new ClusterView("a", 5, 60, clock);
+        view.accept(roundTrip("b", now, series(now, 4)));
+
+        clock.set(now + 3);
+        view.accept(roundTrip("c", now + 3, series(now + 3, 2)));
+
+        clock.set(now + 6);
+        ClusterView.Report report = view.report(series(), now - 53, now + 7);
+        assertThat(report.record.sum, equalTo(2L));
+        assertThat(report.nodes, equalTo(Arrays.asList("a", "c")));
+        assertThat(report.stale, equalTo(Collections.singletonList("b")));
+
+        clock.set(now + 61);
+        report = view.report(series(), now + 2, now + 62);
+        assertThat(report.record.count, equalTo(0L));
+        assertThat(report.nodes, equalTo(Collections.singletonList("a")));
+        assertThat(report.stale, equalTo(Collections.singletonList("c")));
+    }
+}
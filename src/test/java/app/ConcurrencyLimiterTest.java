@@ -0,0 +1,82 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class ConcurrencyLimiterTest {
+    private static final long TARGET = 10_000_000;
+    private long now = 0;
+
+    @Test
+    public void rejectsOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 2, TARGET);
+        assertThat(limiter.tryAcquire(), equalTo(true));
+        assertThat(limiter.tryAcquire(), equalTo(true));
+        assertThat(limiter.tryAcquire(), equalTo(false));
+        limiter.release(1, now);
+        assertThat(limiter.tryAcquire(), equalTo(true));
+        assertThat(limiter.inFlight(), equalTo(2));
+    }
+
+    @Test
+    public void slowRequestsDecreaseLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 100, TARGET);
+        acquire(limiter, 10);
+        limiter.release(2 * TARGET, now);
+        assertThat(limiter.limit(), equalTo(90));
+
+        // requests admitted together count once per target latency
+        limiter.release(2 * TARGET, now + 1);
+        assertThat(limiter.limit(), equalTo(90));
+        limiter.release(2 * TARGET, now + TARGET);
+        assertThat(limiter.limit(), equalTo(81));
+
+        for (int i = 0; i < 7; i++) {
+            limiter.release(1, now);
+        }
+        for (int i = 0; i < 100; i++) {
+            now += TARGET;
+            acquire(limiter, 1);
+            limiter.release(2 * TARGET, now);
+        }
+        assertThat(limiter.limit(), equalTo(4));
+    }
+
+    @Test
+    public void fastRequestsIncreaseLimitWhenItIsUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 100, TARGET);
+        acquire(limiter, 1);
+        limiter.release(2 * TARGET, now);
+        assertThat(limiter.limit(), equalTo(90));
+
+        // a single request at a time doesn't need more
+        for (int i = 0; i < 1000; i++) {
+            acquire(limiter, 1);
+            limiter.release(1, now);
+        }
+        assertThat(limiter.limit(), equalTo(90));
+
+        acquire(limiter, 89);
+        for (int i = 0; i < 90; i++) {
+            acquire(limiter, 1);
+            limiter.release(1, now);
+        }
+        assertThat(limiter.limit(), equalTo(91));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minMustNotExceedMax() {
+        new ConcurrencyLimiter(3, 2, TARGET);
+    }
+
+    private static void acquire(ConcurrencyLimiter limiter, int n) {
+        for (int i = 0; i < n; i++) {
+            assertThat(limiter.tryAcquire(), equalTo(true));
+        }
+    }
+}
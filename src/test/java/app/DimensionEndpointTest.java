@@ -0,0 +1,88 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"dimensions.enabled=true", "dimensions.max-tracked=16"})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DimensionEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    public MockHttpServletRequestBuilder endpoint(long ts, int count, String dimension) {
+        return post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d,\"dimension\":\"%s\"}", ts, count, dimension));
+    }
+
+    @Test
+    public void statisticsByDimension() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 2, "eu-west")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now - 3, 5, "eu-west")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 7, "us-east")).andExpect(status().isAccepted());
+
+        this.mockMvc.perform(get("/statistics/eu-west").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.min", is(2)))
+                .andExpect(jsonPath("$.max", is(5)))
+                .andExpect(jsonPath("$.sum", is(7)))
+                .andExpect(jsonPath("$.count", is(2)));
+
+        this.mockMvc.perform(get("/statistics/ap-south").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)));
+
+        // all dimensions together
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.sum", is(14)))
+                .andExpect(jsonPath("$.count", is(3)));
+    }
+
+    @Test
+    public void invalidDimension() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i <= DimensionStatistics.MAX_LENGTH; i++) {
+            tooLong.append('x');
+        }
+
+        this.mockMvc.perform(endpoint(now, 2, "")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(endpoint(now, 2, tooLong.toString())).andExpect(status().isBadRequest());
+        this.mockMvc.perform(endpoint(now, 2, "eu/west")).andExpect(status().isBadRequest());
+        for (String reserved : DimensionStatistics.RESERVED) {
+            this.mockMvc.perform(endpoint(now, 2, reserved)).andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    public void dottedDimension() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 2, "eu.west")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 7, "eu")).andExpect(status().isAccepted());
+
+        this.mockMvc.perform(get("/statistics/eu.west").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(2)))
+                .andExpect(jsonPath("$.count", is(1)));
+    }
+}
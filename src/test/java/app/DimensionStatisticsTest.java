@@ -0,0 +1,110 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class DimensionStatisticsTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+
+    @Test
+    public void statisticsOfEveryDimension() {
+        DimensionStatistics statistics = new DimensionStatistics(60, 100, clock);
+        statistics.bump("alice", now - 10, 3);
+        statistics.bump("alice", now, 10);
+        statistics.bump("bob", now + 1, 1);
+        // outside of the window
+        statistics.bump("bob", now - 60, 100);
+        statistics.bump("bob", now + 2, 100);
+
+        Statistics.Record alice = statistics.report("alice");
+        assertThat(alice.count, equalTo(2L));
+        assertThat(alice.sum, equalTo(13L));
+        assertThat(alice.min, equalTo(3L));
+        assertThat(alice.max, equalTo(10L));
+
+        Statistics.Record bob = statistics.report("bob");
+        assertThat(bob.count, equalTo(1L));
+        assertThat(bob.sum, equalTo(1L));
+        assertThat(statistics.report("carol"), nullValue());
+        assertThat(statistics.size(), equalTo(2));
+    }
+
+    @Test
+    public void secondsLeaveTheWindow() {
+        DimensionStatistics statistics = new DimensionStatistics(60, 100, clock);
+        statistics.bump("alice", now - 10, 3);
+        statistics.bump("alice", now, 10);
+
+        clock.set(now + 50);
+        assertThat(statistics.report("alice").sum, equalTo(10L));
+        // the bucket of now - 10 is reused
+        statistics.bump("alice", now + 51, 1);
+        assertThat(statistics.report("alice").sum, equalTo(11L));
+    }
+
+    @Test
+    public void idleDimensionsExpire() {
+        DimensionStatistics statistics = new DimensionStatistics(60, 100, clock);
+        for (int i = 0; i < 50; i++) {
+            statistics.bump("user-" + i, now - i, 1);
+        }
+        assertThat(statistics.size(), equalTo(50));
+
+        clock.set(now + 30);
+        // the newest second of user-i is now - i, it leaves the window at now - i + 60
+        assertThat(statistics.size(), equalTo(30));
+        assertThat(statistics.report("user-29").count, equalTo(1L));
+        assertThat(statistics.report("user-30"), nullValue());
+
+        clock.set(now + 1000);
+        assertThat(statistics.size(), equalTo(0));
+        assertThat(statistics.expired(), equalTo(50L));
+        assertThat(statistics.evicted(), equalTo(0L));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        DimensionStatistics statistics = new DimensionStatistics(60, 3, 1, clock);
+        statistics.bump("a", now, 1);
+        statistics.bump("b", now, 1);
+        statistics.bump("c", now, 1);
+        statistics.bump("a", now, 1);
+        statistics.bump("d", now, 1);
+
+        assertThat(statistics.size(), equalTo(3));
+        assertThat(statistics.evicted(), equalTo(1L));
+        assertThat(statistics.report("b"), nullValue());
+        assertThat(statistics.report("a").count, equalTo(2L));
+        // a new dimension starts from scratch
+        statistics.bump("b", now, 5);
+        assertThat(statistics.report("b").sum, equalTo(5L));
+        assertThat(statistics.report("c"), nullValue());
+    }
+
+    @Test
+    public void manyDimensionsUnderTheCap() {
+        DimensionStatistics statistics = new DimensionStatistics(60, 1024, clock);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5000; i++) {
+                statistics.bump("device-" + i, now, 1);
+            }
+        }
+        assertThat(statistics.size() <= 1024, equalTo(true));
+        assertThat(statistics.report("device-4999").count, equalTo(1L));
+        // everything which is tracked can be found after evictions shifted the table
+        int found = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (null != statistics.report("device-" + i)) {
+                found++;
+            }
+        }
+        assertThat(found, equalTo(statistics.size()));
+    }
+}
@@ -0,0 +1,207 @@
+package app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * The contract of {@code /upload} and {@code /statistics} from {@code swagger.yaml} checked over HTTP,
+ * so it holds for every way to run the server.
+ */
+public abstract class EndpointContractTest {
+    private int port;
+
+    /**
+     * Starts a new server with empty statistics.
+     *
+     * @return port of the server
+     */
+    protected abstract int start() throws Exception;
+
+    protected abstract void stop() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        port = start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stop();
+    }
+
+    @Test
+    public void uploadsAreCounted() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1}", now)), equalTo(202));
+        assertThat(upload(String.format("{\"count\":2, \"timestamp\":%d, \"comment\":[{}]}", now)), equalTo(202));
+
+        Response response = get("/statistics", null);
+        assertThat(response.status, equalTo(200));
+        assertThat(response.contentType.startsWith("application/json"), equalTo(true));
+        assertThat(number(response.body, "count"), equalTo("2"));
+        assertThat(number(response.body, "sum"), equalTo("3"));
+        assertThat(number(response.body, "min"), equalTo("1"));
+        assertThat(number(response.body, "max"), equalTo("2"));
+        assertThat(number(response.body, "avg"), equalTo("1.5"));
+        assertThat(number(response.body, "p50"), equalTo("1"));
+        assertThat(number(response.body, "p99"), equalTo("2"));
+    }
+
+    @Test
+    public void emptyStatistics() throws IOException {
+        Response response = get("/statistics?window=5m&quantiles=0.5", null);
+        assertThat(response.status, equalTo(200));
+        assertThat(number(response.body, "count"), equalTo("0"));
+        assertThat(number(response.body, "avg"), equalTo("0.0"));
+        assertThat(number(response.body, "p50"), equalTo("0"));
+    }
+
+    @Test
+    public void uploadsWhichAreNotCounted() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1}", now - 86401)), equalTo(204));
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1}", now + 10)), equalTo(204));
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":0}", now)), equalTo(204));
+        assertThat(upload("{\"timestamp\":"), equalTo(400));
+        assertThat(upload("[]"), equalTo(400));
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1.5}", now)), equalTo(400));
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1}", now), "text/plain"), equalTo(415));
+
+        assertThat(number(get("/statistics", null).body, "count"), equalTo("0"));
+    }
+
+    @Test
+    public void invalidStatisticsRequests() throws IOException {
+        assertThat(get("/statistics?window=7m", null).status, equalTo(400));
+        assertThat(get("/statistics?window=forever", null).status, equalTo(400));
+        assertThat(get("/statistics?quantiles=1.5", null).status, equalTo(400));
+        assertThat(get("/statistics?quantiles=median", null).status, equalTo(400));
+        assertThat(get("/statistics?from=10&to=5", null).status, equalTo(400));
+        assertThat(get("/statistics?from=yesterday", null).status, equalTo(400));
+        assertThat(get("/statistics?from=5&window=5m", null).status, equalTo(400));
+    }
+
+    @Test
+    public void statisticsOfRange() throws IOException {
+        long now = Instant.now().getEpochSecond();
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":1}", now - 10)), equalTo(202));
+        assertThat(upload(String.format("{\"timestamp\":%d,\"count\":4}", now - 2)), equalTo(202));
+
+        Response response = get(String.format("/statistics?from=%d&to=%d", now - 5, now), null);
+        assertThat(response.status, equalTo(200));
+        assertThat(number(response.body, "count"), equalTo("1"));
+        assertThat(number(response.body, "sum"), equalTo("4"));
+        assertThat(response.body.contains("percentiles"), equalTo(false));
+
+        assertThat(number(get(String.format("/statistics?to=%d", now - 5), null).body, "sum"), equalTo("1"));
+    }
+
+    @Test
+    public void notModifiedUntilStatisticsChange() throws IOException {
+        Response first = get("/statistics", null);
+        assertThat(first.etag, notNullValue());
+
+        Response second = get("/statistics", first.etag);
+        if (!first.etag.equals(second.etag)) {
+            // a second passed between requests
+            first = get("/statistics", null);
+            second = get("/statistics", first.etag);
+        }
+        assertThat(second.status, equalTo(304));
+        assertThat(second.etag, equalTo(first.etag));
+
+        upload(String.format("{\"timestamp\":%d,\"count\":1}", Instant.now().getEpochSecond()));
+        assertThat(get("/statistics", first.etag).status, equalTo(200));
+    }
+
+    private int upload(String body) throws IOException {
+        return upload(body, "application/json;charset=UTF-8");
+    }
+
+    private int upload(String body, String contentType) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url("/upload").openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            drain(connection);
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private Response get(String path, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        try {
+            if (null != ifNoneMatch) {
+                connection.setRequestProperty("If-None-Match", ifNoneMatch);
+            }
+            int status = connection.getResponseCode();
+            return new Response(status, connection.getHeaderField("ETag"), connection.getContentType(),
+                    drain(connection));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String drain(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (null == in) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String number(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + Pattern.quote(name) + "\"\\s*:\\s*(-?[0-9.eE+-]+)").matcher(json);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + port + path);
+    }
+
+    private static final class Response {
+        final int status;
+        final String etag;
+        final String contentType;
+        final String body;
+
+        Response(int status, String etag, String contentType, String body) {
+            this.status = status;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
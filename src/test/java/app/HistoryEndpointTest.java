@@ -0,0 +1,43 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"history.enabled=true"})
+@AutoConfigureMockMvc
+public class HistoryEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void recentSecondsAreNotInHistoryYet() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        this.mockMvc.perform(get("/statistics/history?from={from}&to={to}&step=1m", now - 3600, now)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(0)));
+    }
+
+    @Test
+    public void invalidRangesAreRejected() throws Exception {
+        this.mockMvc.perform(get("/statistics/history?from=10&to=5")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/history?from=0&to=10&step=0")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/history?from=0&to=10&step=x")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/history?from=0&to=1000000")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/history?from=0")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,128 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class HistoryTest {
+    private long now = 1508450400L;
+
+    @Test
+    public void secondsAreDecodedExactly() {
+        History history = new History(1 << 20, 100_000_000);
+        Random random = new Random(42);
+        int n = 20_000;
+        long[] timestamps = new long[n];
+        long[][] values = new long[n][];
+        long ts = now;
+        for (int i = 0; i < n; i++) {
+            ts += 1 + (0 == random.nextInt(10) ? random.nextInt(1000) : 0);
+            long min = 0 == i % 1000 ? Long.MIN_VALUE : random.nextInt(1000);
+            long max = 0 == i % 777 ? Long.MAX_VALUE : min + random.nextInt(100_000);
+            long count = 1 + random.nextInt(100);
+            long sum = 0 == i % 555 ? random.nextLong() : count * min;
+            timestamps[i] = ts;
+            values[i] = new long[]{min, max, sum, count};
+            history.append(ts, min, max, sum, count);
+        }
+
+        Series series = history.query(now, ts, 1);
+        assertThat(series.size(), equalTo(n));
+        for (int i = 0; i < n; i++) {
+            assertThat(series.timestamp(i), equalTo(timestamps[i]));
+            assertThat(series.min(i), equalTo(values[i][0]));
+            assertThat(series.max(i), equalTo(values[i][1]));
+            assertThat(series.sum(i), equalTo(values[i][2]));
+            assertThat(series.count(i), equalTo(values[i][3]));
+        }
+    }
+
+    @Test
+    public void steadyTrafficTakesFewBytesPerSecond() {
+        History history = new History(1 << 20, 1_000_000);
+        Random random = new Random(42);
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            long count = 100 + random.nextInt(10);
+            history.append(now + i, 1, 10, count * 5, count);
+        }
+        long bytesPerSecond = history.bytes() / n;
+        assertThat("bytes per second: " + bytesPerSecond, bytesPerSecond <= 8, equalTo(true));
+    }
+
+    @Test
+    public void stepsAreAggregated() {
+        History history = new History(1 << 20, 1_000_000);
+        for (int i = 0; i < 100; i++) {
+            history.append(now + i, i, i, i, 1);
+        }
+        // seconds without data are skipped
+        history.append(now + 200, 1000, 1000, 1000, 1);
+
+        Series series = history.query(now + 5, now + 1000, 10);
+        assertThat(series.size(), equalTo(11));
+        assertThat(series.timestamp(0), equalTo(now + 5));
+        assertThat(series.min(0), equalTo(5L));
+        assertThat(series.max(0), equalTo(14L));
+        assertThat(series.sum(0), equalTo(95L));
+        assertThat(series.count(0), equalTo(10L));
+        // seconds 95..99
+        assertThat(series.count(9), equalTo(5L));
+        assertThat(series.timestamp(10), equalTo(now + 195));
+        assertThat(series.sum(10), equalTo(1000L));
+
+        assertThat(history.query(now + 101, now + 199, 1).size(), equalTo(0));
+    }
+
+    @Test
+    public void oldBlocksAreDroppedByBudgetAndRetention() {
+        History history = new History(2 * History.BLOCK_BYTES, 1_000_000);
+        long ts = now;
+        while (history.dropped() < 3) {
+            history.append(ts++, 1, 1_000_000_000L, ts * 1_000_000_000L, ts);
+        }
+        assertThat(history.bytes(), equalTo(2L * History.BLOCK_BYTES));
+        assertThat(history.query(now, ts, 1).timestamp(0), equalTo(history.oldest()));
+
+        History retained = new History(1 << 20, 3600);
+        for (long t = now; t < now + 10_000; t++) {
+            retained.append(t, 1, 1_000_000_000L, t * 1_000_000_000L, t);
+        }
+        assertThat(retained.oldest() > now + 10_000 - 3600 - 1000, equalTo(true));
+        assertThat(retained.oldest() <= now + 10_000 - 3600, equalTo(true));
+    }
+
+    @Test
+    public void expiredSecondsOfStatisticsAreAppended() {
+        VirtualClock clock = new VirtualClock(now);
+        History history = new History(1 << 20, 1_000_000);
+        Statistics statistics = new Statistics(10, new BucketRing(11), history, clock);
+
+        for (int i = 0; i < 30; i++) {
+            statistics.bump(clock.epochSecond(), i);
+            statistics.bump(clock.epochSecond(), 2 * i);
+            clock.advance(1);
+            statistics.sweep();
+        }
+        // seconds which left the window
+        Series series = history.query(now, now + 30, 1);
+        assertThat(series.size(), equalTo(21));
+        assertThat(series.timestamp(20), equalTo(now + 20));
+        assertThat(series.min(20), equalTo(20L));
+        assertThat(series.max(20), equalTo(40L));
+        assertThat(series.count(20), equalTo(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void secondsMustBeAscending() {
+        History history = new History(1 << 20, 1_000_000);
+        history.append(now, 1, 1, 1, 1);
+        history.append(now, 1, 1, 1, 1);
+    }
+}
@@ -0,0 +1,88 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class IngestionQueueTest {
+    @Test
+    public void drainsInOrder() {
+        IngestionQueue queue = new IngestionQueue(4);
+        queue.offer(1, 10);
+        queue.offer(2, 20);
+        queue.offer(3, 30);
+        assertThat(queue.size(), equalTo(3));
+
+        AtomicLong expected = new AtomicLong(1);
+        int n = queue.drain((ts, count, enqueued) -> {
+            assertThat(ts, equalTo(expected.get()));
+            assertThat(count, equalTo(expected.getAndIncrement() * 10));
+        }, 2);
+
+        assertThat(n, equalTo(2));
+        assertThat(queue.size(), equalTo(1));
+        assertThat(queue.drain((ts, count, enqueued) -> assertThat(ts, equalTo(3L)), 10), equalTo(1));
+        assertThat(queue.size(), equalTo(0));
+    }
+
+    @Test
+    public void rejectsWhenFull() {
+        IngestionQueue queue = new IngestionQueue(2);
+        assertThat(queue.offer(1, 1), is(true));
+        assertThat(queue.offer(2, 1), is(true));
+        assertThat(queue.offer(3, 1), is(false));
+
+        queue.drain((ts, count, enqueued) -> {
+        }, 1);
+        assertThat(queue.offer(3, 1), is(true));
+        assertThat(queue.size(), equalTo(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityShouldBePowerOfTwo() {
+        new IngestionQueue(3);
+    }
+
+    @Test
+    public void multipleProducers() throws InterruptedException {
+        IngestionQueue queue = new IngestionQueue(1024);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        int producers = 4;
+        int uploads = 100000;
+
+        for (int p = 0; p < producers; p++) {
+            pool.submit(() -> {
+                for (int i = 0; i < uploads; i++) {
+                    while (!queue.offer(i, 1)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        while (count.get() < (long) producers * uploads) {
+            queue.drain((ts, c, enqueued) -> {
+                sum.addAndGet(ts);
+                count.addAndGet(c);
+            }, 256);
+        }
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(count.get(), equalTo((long) producers * uploads));
+        assertThat(sum.get(), equalTo((long) producers * uploads * (uploads - 1) / 2));
+        assertThat(queue.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,54 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class LatencyRecorderTest {
+    @Test
+    public void snapshotHasRecordedValues() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(i * 1000L);
+        }
+
+        LogHistogram histogram = new LogHistogram();
+        recorder.addTo(histogram);
+        assertThat(histogram.total(), equalTo(100L));
+        assertThat(histogram.valueAt(0.5), equalTo(LogHistogram.middle(LogHistogram.index(50_000))));
+        assertThat(histogram.valueAt(1), equalTo(LogHistogram.middle(LogHistogram.index(100_000))));
+    }
+
+    @Test
+    public void stripesAreSummed() throws InterruptedException {
+        LatencyRecorder recorder = new LatencyRecorder(3);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    recorder.record(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LogHistogram histogram = new LogHistogram();
+        recorder.addTo(histogram);
+        assertThat(histogram.total(), equalTo(80_000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stripesMustBePositive() {
+        new LatencyRecorder(0);
+    }
+}
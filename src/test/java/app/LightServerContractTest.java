@@ -0,0 +1,27 @@
+package app;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class LightServerContractTest extends EndpointContractTest {
+    private LightServer server;
+
+    @Override
+    protected int start() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("server.address", "127.0.0.1");
+        options.put("server.port", "0");
+        server = new LightServer(options);
+        server.start();
+        return server.port();
+    }
+
+    @Override
+    protected void stop() throws Exception {
+        server.stop();
+    }
+}
@@ -0,0 +1,101 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class LogHistogramTest {
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32;
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long v = 0; v < 32; v++) {
+            LogHistogram histogram = new LogHistogram();
+            histogram.record(v);
+            assertThat(histogram.valueAt(0.5), equalTo(v));
+        }
+    }
+
+    @Test
+    public void bucketsCoverAllValues() {
+        assertThat(LogHistogram.index(Long.MAX_VALUE), equalTo(LogHistogram.BUCKETS - 1));
+        assertThat(LogHistogram.index(-5), equalTo(0));
+        for (int i = 1; i < LogHistogram.BUCKETS; i++) {
+            long lowest = LogHistogram.lowest(i);
+            assertThat(LogHistogram.index(lowest), equalTo(i));
+            assertThat(LogHistogram.index(lowest - 1), equalTo(i - 1));
+        }
+    }
+
+    @Test
+    public void relativeErrorIsBounded() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100000; i++) {
+            long v = Math.max(1, random.nextLong(1, Long.MAX_VALUE) >>> random.nextInt(63));
+            long reported = LogHistogram.middle(LogHistogram.index(v));
+            double error = Math.abs((double) reported - v) / v;
+            assertThat("value " + v + " reported as " + reported, error <= MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void quantilesAreCloseToExactOnes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LogHistogram histogram = new LogHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong(1, 1000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.5, 0.9, 0.99, 1.0}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long approximate = histogram.valueAt(q);
+            assertThat(Math.abs((double) approximate - exact) / exact <= MAX_RELATIVE_ERROR, is(true));
+        }
+    }
+
+    @Test
+    public void mergeAndSubtract() {
+        LogHistogram a = new LogHistogram();
+        LogHistogram b = new LogHistogram();
+        a.record(1);
+        a.record(100);
+        b.record(1000);
+
+        a.add(b);
+        assertThat(a.total(), equalTo(3L));
+        assertThat(a.valueAt(1), equalTo(LogHistogram.middle(LogHistogram.index(1000))));
+
+        a.subtract(b);
+        assertThat(a.total(), equalTo(2L));
+        assertThat(a.valueAt(1), equalTo(LogHistogram.middle(LogHistogram.index(100))));
+
+        int[] compact = new int[LogHistogram.BUCKETS];
+        a.addTo(compact);
+        LogHistogram.recordTo(compact, 1);
+        b.reset();
+        b.add(compact);
+        assertThat(b.total(), equalTo(3L));
+        assertThat(b.valueAt(0.5), equalTo(1L));
+    }
+
+    @Test
+    public void emptyHistogramReturnsZero() {
+        assertThat(new LogHistogram().valueAt(0.99), equalTo(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileShouldBeInRange() {
+        new LogHistogram().valueAt(1.5);
+    }
+}
@@ -0,0 +1,241 @@
+package app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class MappedBucketStoreTest {
+    // every value written by the writer process, so any consistent second has sum == VALUE * count
+    private static final long VALUE = 7;
+    private static final int PER_SECOND = 1000;
+
+    private long now = 1508450400L;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("statistics", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void bucketsBehaveLikeRing() throws IOException {
+        MappedBucketStore store = new MappedBucketStore(file, 4);
+        assertThat(store.get(now), is(nullValue()));
+
+        assertThat(store.bump(now, 3), equalTo(BucketStore.Outcome.ACCEPTED));
+        assertThat(store.bump(now, 5), equalTo(BucketStore.Outcome.ACCEPTED));
+        Statistics.Record r = store.get(now);
+        assertThat(r.min, equalTo(3L));
+        assertThat(r.max, equalTo(5L));
+        assertThat(r.sum, equalTo(8L));
+        assertThat(r.count, equalTo(2L));
+
+        // the slot is taken by a newer second
+        assertThat(store.bump(now + 4, 1), equalTo(BucketStore.Outcome.ACCEPTED));
+        assertThat(store.get(now), is(nullValue()));
+        assertThat(store.bump(now, 1), equalTo(BucketStore.Outcome.EXPIRED));
+
+        LogHistogram histogram = new LogHistogram();
+        assertThat(store.seal(now + 4, histogram).count, equalTo(1L));
+        assertThat(histogram.total(), equalTo(1L));
+        assertThat(store.bump(now + 4, 2), equalTo(BucketStore.Outcome.SEALED));
+        assertThat(store.bumpSealed(now + 4, 2), equalTo(BucketStore.Outcome.ACCEPTED));
+        assertThat(store.get(now + 4).sum, equalTo(3L));
+    }
+
+    @Test
+    public void overflowKeepsBucketUntouched() throws IOException {
+        MappedBucketStore store = new MappedBucketStore(file, 4);
+        store.bump(now, Long.MAX_VALUE);
+        try {
+            store.bump(now, 1);
+            throw new AssertionError("overflow expected");
+        } catch (ArithmeticException ex) {
+            // expected
+        }
+        Statistics.Record r = store.get(now);
+        assertThat(r.sum, equalTo(Long.MAX_VALUE));
+        assertThat(r.count, equalTo(1L));
+        // the store is still usable
+        assertThat(store.bump(now + 1, 1), equalTo(BucketStore.Outcome.ACCEPTED));
+    }
+
+    @Test
+    public void histogramCountersDontWrapAround() throws IOException {
+        MappedBucketStore store = new MappedBucketStore(file, 4);
+        long many = Integer.MAX_VALUE + 10L;
+        LogHistogram merged = new LogHistogram();
+        merged.add(LogHistogram.index(5), many);
+        store.merge(now, new Statistics.Record(5, 5, 5 * many, many), merged);
+        store.bump(now, 5);
+
+        LogHistogram histogram = new LogHistogram();
+        assertThat(store.get(now, histogram).count, equalTo(many + 1));
+        assertThat(histogram.countAt(LogHistogram.index(5)), equalTo(many + 1));
+        assertThat(histogram.total(), equalTo(many + 1));
+    }
+
+    @Test
+    public void statisticsAreTheSameAsOnHeap() throws IOException {
+        VirtualClock clock = new VirtualClock(now);
+        Statistics heap = new Statistics(10, clock);
+        Statistics mapped = new Statistics(10, new MappedBucketStore(file, 11), clock);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 10_000; i++) {
+            if (0 == i % 100) {
+                clock.advance(1);
+            }
+            long ts = clock.epochSecond() - random.nextInt(-1, 12);
+            long value = random.nextLong(1, 1_000_000);
+            heap.bump(ts, value);
+            mapped.bump(ts, value);
+
+            if (0 == i % 500) {
+                LogHistogram expected = new LogHistogram();
+                LogHistogram actual = new LogHistogram();
+                assertRecord(mapped.fullReport(actual), heap.fullReport(expected));
+                assertThat(actual.valueAt(0.5), equalTo(expected.valueAt(0.5)));
+                assertThat(actual.total(), equalTo(expected.total()));
+            }
+        }
+    }
+
+    @Test
+    public void readerSeesWrittenSeconds() throws IOException {
+        MappedBucketStore store = new MappedBucketStore(file, 11);
+        store.bump(now - 9, 1);
+        store.bump(now, 2);
+        store.bump(now, 4);
+        store.bump(now + 1, 8);
+        // outside of the window
+        store.bump(now - 10, 100);
+
+        MappedStatisticsReader reader = MappedStatisticsReader.open(file);
+        assertThat(reader.capacity(), equalTo(11));
+        MappedStatisticsReader.Snapshot second = reader.second(now);
+        assertThat(second.getSum(), equalTo(6L));
+        assertThat(second.getCount(), equalTo(2L));
+        assertThat(reader.second(now - 1), is(nullValue()));
+
+        MappedStatisticsReader.Snapshot window = reader.window(now, 10);
+        assertThat(window.getMin(), equalTo(1L));
+        assertThat(window.getMax(), equalTo(8L));
+        assertThat(window.getSum(), equalTo(15L));
+        assertThat(window.getCount(), equalTo(4L));
+        assertThat(window.valueAt(1), equalTo(8L));
+    }
+
+    @Test(expected = IOException.class)
+    public void readerRejectsUnknownFiles() throws IOException {
+        Files.write(file, new byte[1024]);
+        MappedStatisticsReader.open(file);
+    }
+
+    /**
+     * A writer process bumps seconds over and over while this process reads them,
+     * every snapshot must be a consistent one.
+     */
+    @Test
+    public void otherProcessReadsConsistentSeconds() throws Exception {
+        int capacity = 16;
+        int seconds = 200;
+        new MappedBucketStore(file, capacity);
+        MappedStatisticsReader reader = MappedStatisticsReader.open(file);
+
+        String classpath = location(MappedBucketStore.class) + File.pathSeparator + location(WriterProcess.class);
+        Process writer = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classpath, WriterProcess.class.getName(),
+                file.toString(), Integer.toString(capacity), Long.toString(now), Integer.toString(seconds))
+                .inheritIO()
+                .start();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long snapshots = 0;
+        while (writer.isAlive()) {
+            MappedStatisticsReader.Snapshot s = reader.second(now + random.nextInt(seconds));
+            if (null != s) {
+                assertConsistent(s);
+                snapshots++;
+            }
+        }
+        assertThat(writer.waitFor(1, TimeUnit.MINUTES), is(true));
+        assertThat(writer.exitValue(), equalTo(0));
+        assertThat("snapshots read while written", snapshots > 0, is(true));
+
+        // the ring holds the last seconds in full
+        for (long ts = now + seconds - capacity; ts < now + seconds; ts++) {
+            MappedStatisticsReader.Snapshot s = reader.second(ts);
+            assertConsistent(s);
+            assertThat(s.getCount(), equalTo((long) PER_SECOND));
+        }
+    }
+
+    private static void assertConsistent(MappedStatisticsReader.Snapshot s) {
+        assertThat(s.getMin(), equalTo(VALUE));
+        assertThat(s.getMax(), equalTo(VALUE));
+        assertThat(s.getSum(), equalTo(VALUE * s.getCount()));
+        assertThat(s.valueAt(1), equalTo(VALUE));
+    }
+
+    private static void assertRecord(Statistics.Record actual, Statistics.Record expected) {
+        assertThat(actual.min, equalTo(expected.min));
+        assertThat(actual.max, equalTo(expected.max));
+        assertThat(actual.sum, equalTo(expected.sum));
+        assertThat(actual.count, equalTo(expected.count));
+    }
+
+    private static String location(Class<?> type) throws Exception {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    /**
+     * Writes {@link #PER_SECOND} values of every second to an existing file by bumps and merges.
+     */
+    public static class WriterProcess {
+        public static void main(String[] args) throws IOException {
+            Path file = Paths.get(args[0]);
+            int capacity = Integer.parseInt(args[1]);
+            long from = Long.parseLong(args[2]);
+            int seconds = Integer.parseInt(args[3]);
+
+            MappedBucketStore store = new MappedBucketStore(file, capacity);
+            LogHistogram five = new LogHistogram();
+            for (int i = 0; i < 5; i++) {
+                five.record(VALUE);
+            }
+            Statistics.Record merged = new Statistics.Record(VALUE, VALUE, 5 * VALUE, 5);
+            for (long ts = from; ts < from + seconds; ts++) {
+                for (int i = 0; i < PER_SECOND / 10; i++) {
+                    store.bump(ts, VALUE);
+                    store.bump(ts, VALUE);
+                    store.bump(ts, VALUE);
+                    store.bump(ts, VALUE);
+                    store.bump(ts, VALUE);
+                    store.merge(ts, merged, five);
+                }
+            }
+        }
+    }
+}
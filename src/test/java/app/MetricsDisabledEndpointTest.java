@@ -0,0 +1,25 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"metrics.enabled=false"})
+@AutoConfigureMockMvc
+public class MetricsDisabledEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void metricsAreNotFound() throws Exception {
+        this.mockMvc.perform(get("/internal/metrics")).andExpect(status().isNotFound());
+    }
+}
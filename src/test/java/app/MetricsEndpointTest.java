@@ -0,0 +1,68 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class MetricsEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    public MockHttpServletRequestBuilder endpoint(long ts, long count) {
+        return post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d}", ts, count));
+    }
+
+    @Test
+    public void countsRequestsAndRejections() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 2)).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now - 3600 * 48, 2)).andExpect(status().isNoContent());
+        this.mockMvc.perform(endpoint(now + 10, 2)).andExpect(status().isNoContent());
+        this.mockMvc.perform(endpoint(now + 20, 2)).andExpect(status().isNoContent());
+        this.mockMvc.perform(endpoint(now, 0)).andExpect(status().isNoContent());
+        this.mockMvc.perform(get("/statistics")).andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/internal/metrics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.endpoints['/upload'].count", is(5)))
+                .andExpect(jsonPath("$.endpoints['/statistics'].count", is(1)))
+                .andExpect(jsonPath("$.endpoints['/upload/batch'].count", is(0)))
+                .andExpect(jsonPath("$.rejections.tooOld", is(1)))
+                .andExpect(jsonPath("$.rejections.fromFuture", is(2)))
+                .andExpect(jsonPath("$.rejections.empty", is(1)))
+                .andExpect(jsonPath("$.overflows", is(0)));
+    }
+
+    @Test
+    public void countsOverflows() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, Long.MAX_VALUE)).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, Long.MAX_VALUE)).andExpect(status().isAccepted());
+
+        this.mockMvc.perform(get("/internal/metrics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.overflows", is(1)));
+    }
+}
@@ -0,0 +1,78 @@
+package app;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "persistence.enabled=true",
+        "persistence.dir=build/persistence-endpoint-test",
+        "persistence.segment-records=1",
+        "persistence.fsync-millis=0"})
+@AutoConfigureMockMvc
+public class PersistenceEndpointTest {
+    private static final Path DIR = Paths.get("build/persistence-endpoint-test");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WindowedStatistics statistics;
+
+    @After
+    public void tearDown() throws IOException {
+        if (Files.exists(DIR)) {
+            deleteSegments();
+            Files.delete(DIR);
+        }
+    }
+
+    @Test
+    public void uploadWhichCantBeLoggedIsStillCounted() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        // segments of the previous runs may be replayed
+        long before = statistics.report(60, null).count;
+
+        // fills the only record of the current segment
+        upload(now, 1);
+        // the next segment can't be created
+        tearDown();
+        upload(now, 2);
+
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.count").value(before + 2));
+    }
+
+    private void upload(long timestamp, long count) throws Exception {
+        this.mockMvc.perform(post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d}", timestamp, count)))
+                .andExpect(status().is(202));
+    }
+
+    private static void deleteSegments() throws IOException {
+        try (Stream<Path> files = Files.list(DIR)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
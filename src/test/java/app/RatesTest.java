@@ -0,0 +1,113 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class RatesTest {
+    private static final double EPSILON = 1e-9;
+    private final long start = 1_500_000_000L;
+
+    @Test
+    public void constantRateConvergesAsExpected() {
+        VirtualClock clock = new VirtualClock(start);
+        Statistics statistics = new Statistics(60, clock);
+
+        for (int second = 1; second <= 120; second++) {
+            for (int i = 0; i < 100; i++) {
+                statistics.bump(clock.epochSecond(), 3);
+            }
+            clock.advance(1);
+
+            for (int w = 0; w < Rates.WINDOWS.length; w++) {
+                double expected = 100 * (1 - Math.exp(-(double) second / Rates.WINDOWS[w]));
+                assertThat(Math.abs(statistics.uploadRate(w) - expected) < EPSILON, is(true));
+                assertThat(Math.abs(statistics.panoramaRate(w) - 3 * expected) < EPSILON, is(true));
+            }
+        }
+        assertThat(Math.abs(statistics.uploadRate(0) - 100) < EPSILON, is(true));
+        assertThat(Math.abs(statistics.uploadRate(1) - 100) < 1e-3, is(true));
+        assertThat(statistics.uploadRate(2) > 86 && statistics.uploadRate(2) < 87, is(true));
+    }
+
+    @Test
+    public void onlyFinestLevelKeepsRates() {
+        VirtualClock clock = new VirtualClock(start);
+        WindowedStatistics statistics = new WindowedStatistics(new Statistics(60, clock), new long[]{86400}, clock);
+        statistics.bump(start, 3);
+        clock.advance(1);
+        assertThat(Math.abs(statistics.uploadRate(0) - (1 - Math.exp(-1))) < EPSILON, is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rollupHasNoRates() {
+        Statistics.rollup(60, new VirtualClock(start)).uploadRate(0);
+    }
+
+    @Test
+    public void currentSecondIsNotCountedUntilItEnds() {
+        VirtualClock clock = new VirtualClock(start);
+        Rates rates = new Rates(start);
+
+        rates.mark(50, 500, start);
+        assertThat(rates.uploads(0, start), equalTo(0.0));
+
+        clock.advance(1);
+        assertThat(Math.abs(rates.uploads(0, clock.epochSecond()) - 50 * (1 - Math.exp(-1))) < EPSILON, is(true));
+        assertThat(Math.abs(rates.panoramas(1, clock.epochSecond()) - 500 * (1 - Math.exp(-0.1))) < EPSILON,
+                is(true));
+    }
+
+    @Test
+    public void gapDecaysLikeIdleSeconds() {
+        Rates stepped = new Rates(start);
+        Rates jumped = new Rates(start);
+        stepped.mark(1000, 1000, start);
+        jumped.mark(1000, 1000, start);
+
+        for (long now = start + 1; now <= start + 30; now++) {
+            stepped.uploads(0, now);
+        }
+        for (int w = 0; w < Rates.WINDOWS.length; w++) {
+            double expected = 1000 * (1 - Math.exp(-1.0 / Rates.WINDOWS[w])) * Math.exp(-29.0 / Rates.WINDOWS[w]);
+            assertThat(Math.abs(stepped.uploads(w, start + 30) - expected) < EPSILON, is(true));
+            assertThat(Math.abs(jumped.uploads(w, start + 30) - expected) < EPSILON, is(true));
+        }
+
+        // a gap longer than any window leaves nothing
+        assertThat(jumped.uploads(2, start + 1_000_000), equalTo(0.0));
+    }
+
+    @Test
+    public void concurrentMarksAreNotLost() throws InterruptedException {
+        Rates rates = new Rates(start);
+        int threads = 4;
+        int marks = 100_000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < marks; i++) {
+                    rates.mark(1, 2, start);
+                }
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            // readers of the same second don't fold anything
+            assertThat(rates.uploads(0, start), equalTo(0.0));
+        }
+
+        double alpha = 1 - Math.exp(-1);
+        assertThat(Math.abs(rates.uploads(0, start + 1) - alpha * threads * marks) < 1e-6, is(true));
+        assertThat(Math.abs(rates.panoramas(0, start + 1) - 2 * alpha * threads * marks) < 1e-6, is(true));
+    }
+}
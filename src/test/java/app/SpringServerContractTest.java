@@ -0,0 +1,25 @@
+package app;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+@RunWith(JUnit4.class)
+public class SpringServerContractTest extends EndpointContractTest {
+    private ConfigurableApplicationContext context;
+
+    @Override
+    protected int start() {
+        context = new SpringApplicationBuilder(Application.class).properties(
+                "server.address=127.0.0.1",
+                "server.port=0",
+                "spring.jmx.enabled=false").run();
+        return Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @Override
+    protected void stop() {
+        context.close();
+    }
+}
@@ -0,0 +1,103 @@
+package app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class StatisticsBroadcasterTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+    private WindowedStatistics statistics =
+            new WindowedStatistics(new Statistics(60, clock), new long[]{60}, clock);
+    private ReportCache reports = new ReportCache(statistics, new ObjectMapper()::writeValueAsBytes, new double[]{0.5});
+
+    private static class CountingSubscriber implements StatisticsBroadcaster.Subscriber {
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public void send(String frame) {
+            frames.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    public void frameIsBuiltOnceForAllSubscribers() {
+        // not started, so frames are written by the caller of tick
+        StatisticsBroadcaster broadcaster = new StatisticsBroadcaster(statistics, reports, 60, 1000, 3, 1);
+
+        List<CountingSubscriber> subscribers = new ArrayList<>();
+        for (int n : new int[]{1, 10, 100, 1000}) {
+            while (subscribers.size() < n) {
+                CountingSubscriber s = new CountingSubscriber();
+                subscribers.add(s);
+                broadcaster.subscribe(s);
+            }
+            long frames = broadcaster.frames();
+            for (int i = 0; i < 100; i++) {
+                statistics.bump(clock.epochSecond(), i);
+                broadcaster.tick();
+                // nothing is changed, nothing is built
+                broadcaster.tick();
+            }
+
+            // the number of built frames doesn't depend on the number of subscribers
+            assertThat(broadcaster.frames() - frames, equalTo(100L));
+        }
+        // the latest frame on subscribe and a frame per change
+        assertThat(subscribers.get(subscribers.size() - 1).frames.get(), equalTo(101));
+        assertThat(broadcaster.dropped(), equalTo(0L));
+    }
+
+    @Test
+    public void slowSubscriberIsDropped() throws InterruptedException {
+        StatisticsBroadcaster broadcaster = new StatisticsBroadcaster(statistics, reports, 60, 5, 3, 2);
+        broadcaster.start();
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountingSubscriber slow = new CountingSubscriber() {
+            @Override
+            public void send(String frame) {
+                super.send(frame);
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        CountingSubscriber fast = new CountingSubscriber();
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+
+        for (int i = 0; i < 1000 && 0 == broadcaster.dropped(); i++) {
+            // a new second is a new version
+            clock.advance(1);
+            Thread.sleep(10);
+        }
+        release.countDown();
+        broadcaster.stop();
+
+        assertThat(broadcaster.dropped(), equalTo(1L));
+        assertThat(slow.closed.get(), is(true));
+        assertThat(slow.frames.get(), equalTo(1));
+        assertThat(fast.frames.get() > 3, is(true));
+    }
+}
@@ -14,10 +14,17 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 
 import java.time.Instant;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -72,6 +79,168 @@ public class StatisticsEndpointTest {
                 .andExpect(jsonPath("$.avg", is(4.0)));
     }
 
+    @Test
+    public void percentilesForLastMin() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        upload(now - 5, 3);
+        upload(now - 10, 10);
+        upload(now - 7, 4);
+        upload(now, 1);
+
+        this.mockMvc.perform(endpoint())
+                .andExpect(jsonPath("$.percentiles.p50", is(3)))
+                .andExpect(jsonPath("$.percentiles.p90", is(10)))
+                .andExpect(jsonPath("$.percentiles.p99", is(10)));
+
+        this.mockMvc.perform(endpoint().param("quantiles", "0.25,0.75"))
+                .andExpect(jsonPath("$.percentiles.p25", is(1)))
+                .andExpect(jsonPath("$.percentiles.p75", is(4)));
+    }
+
+    @Test
+    public void statisticsForLongerWindow() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        upload(now, 1);
+        upload(now - 150, 5);
+
+        this.mockMvc.perform(endpoint())
+                .andExpect(jsonPath("$.sum", is(1)))
+                .andExpect(jsonPath("$.count", is(1)));
+
+        this.mockMvc.perform(endpoint().param("window", "1h"))
+                .andExpect(jsonPath("$.min", is(1)))
+                .andExpect(jsonPath("$.max", is(5)))
+                .andExpect(jsonPath("$.sum", is(6)))
+                .andExpect(jsonPath("$.count", is(2)));
+    }
+
+    @Test
+    public void unsupportedWindow() throws Exception {
+        this.mockMvc.perform(endpoint().param("window", "7m"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(endpoint().param("window", "week"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void invalidQuantile() throws Exception {
+        this.mockMvc.perform(endpoint().param("quantiles", "1.5"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void notModifiedUntilStatisticsChange() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        upload(now, 3);
+
+        String etag = this.mockMvc.perform(endpoint())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(3)))
+                .andReturn().getResponse().getHeader("ETag");
+        assertThat(etag, notNullValue());
+
+        MvcResult cached = this.mockMvc.perform(endpoint().header("If-None-Match", etag)).andReturn();
+        // the version also changes every second, so 200 is fine if the clock has just ticked
+        if (Instant.now().getEpochSecond() == now) {
+            assertThat(cached.getResponse().getStatus(), equalTo(304));
+            assertThat(cached.getResponse().getContentLength(), equalTo(0));
+        }
+
+        upload(now, 4);
+        this.mockMvc.perform(endpoint().header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$.sum", is(7)));
+    }
+
+    @Test
+    public void streamOfStatistics() throws Exception {
+        this.mockMvc.perform(get("/statistics/stream").accept("text/event-stream"))
+                .andExpect(request().asyncStarted());
+    }
+
+    @Test
+    public void seriesOfLiveSeconds() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        upload(now - 10, 10);
+        upload(now - 5, 3);
+        upload(now - 5, 5);
+
+        this.mockMvc.perform(get("/statistics/series").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$[0].timestamp").value(now - 10))
+                .andExpect(jsonPath("$[0].count", is(1)))
+                .andExpect(jsonPath("$[1].timestamp").value(now - 5))
+                .andExpect(jsonPath("$[1].min", is(3)))
+                .andExpect(jsonPath("$[1].max", is(5)))
+                .andExpect(jsonPath("$[1].sum", is(8)))
+                .andExpect(jsonPath("$[1].count", is(2)))
+                .andExpect(jsonPath("$[1].avg", is(4.0)));
+
+        this.mockMvc.perform(get("/statistics/series")
+                .param("from", String.valueOf(now - 7))
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].timestamp").value(now - 5));
+    }
+
+    @Test
+    public void seriesWithInvalidRange() throws Exception {
+        this.mockMvc.perform(get("/statistics/series").param("from", "10").param("to", "5"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void statisticsOfRange() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        upload(now - 10, 10);
+        upload(now - 5, 3);
+        upload(now - 5, 5);
+
+        this.mockMvc.perform(get("/statistics")
+                .param("from", String.valueOf(now - 7))
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.min", is(3)))
+                .andExpect(jsonPath("$.max", is(5)))
+                .andExpect(jsonPath("$.sum", is(8)))
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.percentiles").doesNotExist());
+
+        this.mockMvc.perform(get("/statistics")
+                .param("from", String.valueOf(now - 12))
+                .param("to", String.valueOf(now - 6))
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sum", is(10)))
+                .andExpect(jsonPath("$.count", is(1)));
+    }
+
+    @Test
+    public void statisticsWithInvalidRange() throws Exception {
+        this.mockMvc.perform(get("/statistics").param("from", "10").param("to", "5"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics").param("from", "10").param("window", "1m"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void ratesOfEveryWindow() throws Exception {
+        upload(Instant.now().getEpochSecond(), 3);
+
+        this.mockMvc.perform(get("/statistics/rates").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.uploads.length()", is(3)))
+                .andExpect(jsonPath("$.uploads['1s']").isNumber())
+                .andExpect(jsonPath("$.uploads['10s']").isNumber())
+                .andExpect(jsonPath("$.panoramas['60s']").isNumber());
+    }
+
     @Test
     public void statisticsWhenDataIsAbsent() throws Exception {
         this.mockMvc.perform(endpoint())
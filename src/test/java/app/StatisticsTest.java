@@ -61,6 +61,61 @@ public class StatisticsTest {
 
     @Test
     public void expiresOldWhenUserRequestFullStatistics() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(3, clock);
+        statistics.bump(now - 2, 1);
+        statistics.bump(now, 3);
+        statistics.bump(now - 1, 2);
+
+        Statistics.Record record = statistics.fullReport();
+        assertThat(record.min, equalTo(1L));
+        assertThat(record.max, equalTo(3L));
+        assertThat(record.sum, equalTo(6L));
+        assertThat(record.count, equalTo(3L));
+        assertThat(statistics.size(), equalTo(3));
+
+        clock.set(now + 1);
+        record = statistics.fullReport();
+
+        assertThat(statistics.size(), equalTo(2));
+        assertThat(record.min, equalTo(2L));
+        assertThat(record.max, equalTo(3L));
+        assertThat(record.sum, equalTo(5L));
+        assertThat(record.count, equalTo(2L));
+    }
+
+    @Test
+    public void expiresOldWhenUserAddNewValues() {
+        VirtualClock clock = new VirtualClock(now - 1);
+        statistics = new Statistics(3, clock);
+
+        statistics.bump(now - 3, 1);
+        statistics.bump(now - 2, 1);
+        statistics.bump(now - 1, 2);
+
+        assertThat(statistics.size(), equalTo(3));
+
+        // expired values disappear without any clean up
+        clock.set(now);
+        assertThat(statistics.size(), equalTo(2));
+        assertThat(statistics.get(now - 3), is(nullValue()));
+
+        // expired value is ignored
+        statistics.bump(now - 3, 2);
+        assertThat(statistics.size(), equalTo(2));
+
+        // slot of expired second is reused by a new one
+        clock.set(now + 1);
+        statistics.bump(now + 1, 5);
+        Statistics.Record record = statistics.get(now + 1);
+        assertThat(record.sum, equalTo(5L));
+        assertThat(record.count, equalTo(1L));
+        assertThat(statistics.size(), equalTo(2));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void predicateExpiresOldWhenUserRequestFullStatistics() {
         AtomicBoolean seeding = new AtomicBoolean(true);
         statistics = new Statistics((recordTs, currentTs) -> {
             if (seeding.get()) {
@@ -77,12 +132,12 @@ public class StatisticsTest {
         assertThat(record.max, equalTo(3L));
         assertThat(record.sum, equalTo(6L));
         assertThat(record.count, equalTo(3L));
-        assertThat(statistics.storage.size(), equalTo(3));
+        assertThat(statistics.size(), equalTo(3));
 
         seeding.set(false);
         record = statistics.fullReport();
 
-        assertThat(statistics.storage.size(), equalTo(2));
+        assertThat(statistics.size(), equalTo(2));
         assertThat(record.min, equalTo(2L));
         assertThat(record.max, equalTo(3L));
         assertThat(record.sum, equalTo(5L));
@@ -90,7 +145,8 @@ public class StatisticsTest {
     }
 
     @Test
-    public void expiresOldWhenUserAddNewValues() {
+    @SuppressWarnings("deprecation")
+    public void predicateExpiresOldWhenUserAddNewValues() {
         AtomicBoolean seeding = new AtomicBoolean(true);
         statistics = new Statistics((recordTs, currentTs) -> {
             if (seeding.get()) {
@@ -103,36 +159,176 @@ public class StatisticsTest {
         statistics.bump(now - 2, 1);
         statistics.bump(now - 1, 2);
 
-        assertThat(statistics.storage.size(), equalTo(3));
+        assertThat(statistics.size(), equalTo(3));
 
         seeding.set(false);
 
-        // do nothing if we just increase already existing value
+        // expired values are not counted even before a new value is added
         statistics.bump(now - 1, 2);
-        assertThat(statistics.storage.size(), equalTo(3));
+        assertThat(statistics.size(), equalTo(1));
+        assertThat(statistics.get(now - 1).sum, equalTo(4L));
 
-        // scan expired values when we add new one
         statistics.bump(now, 2);
-        assertThat(statistics.storage.size(), equalTo(2));
+        assertThat(statistics.size(), equalTo(2));
+        assertThat(statistics.range(now - 3, now).sum, equalTo(6L));
+    }
+
+    @Test
+    public void mergeIsEqualToBumpingEveryValue() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+
+        statistics.bump(now - 5, 4);
+        statistics.merge(now - 5, new Statistics.Record(1, 7, 12, 3), histogram(1, 4, 7));
+        statistics.merge(now - 20, new Statistics.Record(1, 1, 1, 1), histogram(1));
+
+        Statistics.Record record = statistics.get(now - 5);
+        assertThat(record.min, equalTo(1L));
+        assertThat(record.max, equalTo(7L));
+        assertThat(record.sum, equalTo(16L));
+        assertThat(record.count, equalTo(4L));
+
+        // the second is sealed now
+        statistics.fullReport();
+        statistics.merge(now - 5, new Statistics.Record(0, 9, 9, 2), histogram(0, 9));
+
+        LogHistogram distribution = new LogHistogram();
+        record = statistics.fullReport(distribution);
+        assertThat(record.min, equalTo(0L));
+        assertThat(record.max, equalTo(9L));
+        assertThat(record.sum, equalTo(25L));
+        assertThat(record.count, equalTo(6L));
+        assertThat(distribution.total(), equalTo(6L));
+        assertThat(distribution.valueAt(0.5), equalTo(4L));
+        assertThat(distribution.valueAt(1), equalTo(9L));
+    }
+
+    @Test
+    public void distributionFollowsTheWindow() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+
+        for (int i = 1; i <= 100; i++) {
+            statistics.bump(now - 5, i);
+        }
+        statistics.bump(now, 1000);
+
+        LogHistogram distribution = new LogHistogram();
+        statistics.fullReport(distribution);
+        assertThat(distribution.total(), equalTo(101L));
+        // 51 is reported with the precision of the histogram
+        assertThat(Math.abs(distribution.valueAt(0.5) - 51) <= 51 / 32, is(true));
+
+        clock.set(now + 5);
+        distribution.reset();
+        statistics.fullReport(distribution);
+        assertThat(distribution.total(), equalTo(1L));
+        assertThat(distribution.valueAt(0.5), equalTo(LogHistogram.middle(LogHistogram.index(1000))));
+    }
+
+    @Test
+    public void histogramsAreAllocatedForBumpedCellsOnly() {
+        VirtualClock clock = new VirtualClock(now);
+        BucketRing ring = new BucketRing(11, 64);
+        statistics = new Statistics(10, ring, clock);
+        assertThat(ring.histograms(), equalTo(0));
+
+        // a single thread sticks to one cell of every second
+        for (int i = 0; i < 1000; i++) {
+            statistics.bump(now - i % 3, 5 + i % 3);
+        }
+        assertThat(ring.histograms(), equalTo(3));
+
+        // the slot of now - 2 is reused without leftovers of the old second
+        clock.set(now + 9);
+        statistics.bump(now + 9, 1000);
+        assertThat(ring.histograms(), equalTo(3));
+        LogHistogram distribution = new LogHistogram();
+        Statistics.Record record = statistics.fullReport(distribution);
+        assertThat(distribution.total(), equalTo(record.count));
+        assertThat(distribution.valueAt(1), equalTo(LogHistogram.middle(LogHistogram.index(1000))));
+    }
+
+    @Test
+    public void seriesContainsLiveSecondsInOrder() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+
+        statistics.bump(now - 9, 7);
+        statistics.bump(now - 5, 3);
+        statistics.bump(now - 5, 1);
+        statistics.bump(now + 1, 2);
+
+        Series series = statistics.series(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(series.size(), equalTo(3));
+        assertThat(series.timestamp(0), equalTo(now - 9));
+        assertThat(series.timestamp(1), equalTo(now - 5));
+        assertThat(series.min(1), equalTo(1L));
+        assertThat(series.max(1), equalTo(3L));
+        assertThat(series.sum(1), equalTo(4L));
+        assertThat(series.count(1), equalTo(2L));
+        assertThat(series.timestamp(2), equalTo(now + 1));
+
+        series = statistics.series(now - 8, now);
+        assertThat(series.size(), equalTo(1));
+        assertThat(series.timestamp(0), equalTo(now - 5));
+
+        clock.set(now + 1);
+        series = statistics.series(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(series.size(), equalTo(2));
+        assertThat(series.timestamp(0), equalTo(now - 5));
+
+        assertThat(statistics.series(now, now - 1).size(), equalTo(0));
+    }
+
+    @Test
+    public void versionGrowsOnChangeAndRollover() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+
+        long version = statistics.version();
+        statistics.fullReport();
+        statistics.get(now);
+        assertThat(statistics.version(), equalTo(version));
+
+        statistics.bump(now, 1);
+        long bumped = statistics.version();
+        assertThat(bumped > version, is(true));
+        assertThat(statistics.version(), equalTo(bumped));
+
+        // expired values don't change anything
+        statistics.bump(now - 20, 1);
+        assertThat(statistics.version(), equalTo(bumped));
+
+        clock.advance(1);
+        assertThat(statistics.version() > bumped, is(true));
+    }
+
+    private static LogHistogram histogram(long... values) {
+        LogHistogram histogram = new LogHistogram();
+        for (long v : values) {
+            histogram.record(v);
+        }
+        return histogram;
     }
 
     @Test
     public void emptyStatsShouldReturnNull() {
         statistics = new Statistics(10);
-        assertThat(statistics.storage.size(), equalTo(0));
+        assertThat(statistics.size(), equalTo(0));
         assertThat(statistics.fullReport().count, is(0L));
     }
 
     @Test
     public void shouldTakeIntoAccountBoundaryValues() {
         statistics = new Statistics(2);
-        assertThat(statistics.storage.size(), equalTo(0));
+        assertThat(statistics.size(), equalTo(0));
 
         statistics.bump(now, 1);
         statistics.bump(now - 1, 2);
         statistics.bump(now - 2, 3);
 
-        assertThat(statistics.storage.size(), is(2));
+        assertThat(statistics.size(), is(2));
         Statistics.Record record = statistics.fullReport();
         assertThat(record.min, equalTo(1L));
         assertThat(record.max, equalTo(2L));
@@ -164,7 +360,193 @@ public class StatisticsTest {
         Statistics.Record record = statistics.fullReport();
         assertThat(record.count, equalTo(10000000L));
         assertThat(record.sum, equalTo(sum.get()));
-        assertThat(statistics.storage.size(), equalTo(10));
+        assertThat(statistics.size(), equalTo(10));
+    }
+
+    @Test
+    public void fullReportIsEqualToMergeOfAllSeconds() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int step = 0; step < 10000; step++) {
+            if (0 == random.nextInt(20)) {
+                clock.advance(random.nextInt(1, 4));
+            }
+            long ts = clock.epochSecond() + 1 - random.nextInt(12);
+            statistics.bump(ts, random.nextInt(1000));
+
+            if (0 == random.nextInt(5)) {
+                Statistics.Record expected = null;
+                for (long i = clock.epochSecond() + 1; i > clock.epochSecond() - 10; i--) {
+                    Statistics.Record r = statistics.get(i);
+                    if (null != r) {
+                        expected = Statistics.Record.merge(expected, r);
+                    }
+                }
+
+                Statistics.Record record = statistics.fullReport();
+                assertThat(record.count, equalTo(null == expected ? 0L : expected.count));
+                if (null != expected) {
+                    assertThat(record.min, equalTo(expected.min));
+                    assertThat(record.max, equalTo(expected.max));
+                    assertThat(record.sum, equalTo(expected.sum));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void windowStaysExactWhenItsSumWrapsAround() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+        statistics.bump(now - 5, Long.MAX_VALUE);
+        statistics.bump(now - 4, Long.MAX_VALUE);
+        statistics.bump(now - 3, -Long.MAX_VALUE);
+
+        Statistics.Record record = statistics.fullReport();
+        assertThat(record.sum, equalTo(Long.MAX_VALUE));
+        assertThat(record.count, equalTo(3L));
+
+        // now - 5 leaves the window
+        clock.advance(5);
+        record = statistics.fullReport();
+        assertThat(record.sum, equalTo(0L));
+        assertThat(record.count, equalTo(2L));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void windowSumOverflowFailsReport() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+        statistics.bump(now - 5, Long.MAX_VALUE);
+        statistics.bump(now - 4, Long.MAX_VALUE);
+        statistics.fullReport();
+    }
+
+    @Test
+    public void windowSumOverflowFailsReportUntilItExpires() {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(10, clock);
+        statistics.bump(now - 5, Long.MAX_VALUE);
+        statistics.bump(now - 4, Long.MAX_VALUE);
+        try {
+            statistics.fullReport();
+        } catch (ArithmeticException ex) {
+            // expected while both seconds are in the window
+        }
+
+        // now - 5 leaves the window
+        clock.advance(5);
+        Statistics.Record record = statistics.fullReport();
+        assertThat(record.sum, equalTo(Long.MAX_VALUE));
+        assertThat(record.count, equalTo(1L));
+    }
+
+    @Test
+    public void rangeIsEqualToMergeOfItsSeconds() {
+        VirtualClock clock = new VirtualClock(now);
+        // a window longer than a power of two, so ranges wrap around the ring at odd places
+        statistics = new Statistics(37, clock);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int step = 0; step < 20000; step++) {
+            if (0 == random.nextInt(50)) {
+                clock.advance(random.nextInt(1, 6));
+            }
+            long ts = clock.epochSecond() + 1 - random.nextInt(40);
+            statistics.bump(ts, random.nextInt(1000));
+
+            if (0 == random.nextInt(5)) {
+                long from = clock.epochSecond() - random.nextInt(-2, 45);
+                long to = from + random.nextInt(45);
+                Statistics.Record expected = null;
+                for (long i = from; i <= to; i++) {
+                    Statistics.Record r = statistics.get(i);
+                    if (null != r) {
+                        expected = Statistics.Record.merge(expected, r);
+                    }
+                }
+
+                Statistics.Record record = statistics.range(from, to);
+                assertThat(record.count, equalTo(null == expected ? 0L : expected.count));
+                if (null != expected) {
+                    assertThat(record.min, equalTo(expected.min));
+                    assertThat(record.max, equalTo(expected.max));
+                    assertThat(record.sum, equalTo(expected.sum));
+                }
+            }
+        }
+
+        Statistics.Record all = statistics.range(Long.MIN_VALUE, Long.MAX_VALUE);
+        Statistics.Record full = statistics.fullReport();
+        assertThat(all.count, equalTo(full.count));
+        assertThat(all.sum, equalTo(full.sum));
+    }
+
+    @Test
+    public void rangeSeesEveryConcurrentBump() throws InterruptedException {
+        VirtualClock clock = new VirtualClock(now);
+        statistics = new Statistics(20, clock);
+        // seal older seconds, so bumps go to both the range tree and open seconds
+        statistics.fullReport();
+        int threads = 4;
+        int bumps = 20000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < bumps; i++) {
+                    statistics.bump(now + 1 - random.nextInt(20), 1);
+                }
+            });
+        }
+        pool.shutdown();
+        long seen = 0;
+        while (!pool.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            long count = statistics.range(now - 19, now + 1).count;
+            assertThat(count >= seen, is(true));
+            seen = count;
+        }
+
+        Statistics.Record record = statistics.range(now - 19, now + 1);
+        assertThat(record.count, equalTo((long) threads * bumps));
+        assertThat(record.sum, equalTo((long) threads * bumps));
+        assertThat(statistics.range(now - 9, now).count, equalTo(sumOfCounts(now - 9, now)));
+    }
+
+    private long sumOfCounts(long from, long to) {
+        long count = 0;
+        for (long ts = from; ts <= to; ts++) {
+            Statistics.Record r = statistics.get(ts);
+            count += null == r ? 0 : r.count;
+        }
+        return count;
+    }
+
+    @Test
+    public void hotSecondCountsEveryConcurrentBump() throws InterruptedException {
+        int threads = 4;
+        int bumpsPerThread = 100000;
+        statistics = new Statistics(60);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                        for (int i = 0; i < bumpsPerThread; i++) {
+                            statistics.bump(now, 1 + i % 3);
+                        }
+                    }
+            );
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(60, TimeUnit.SECONDS), is(true));
+
+        Statistics.Record record = statistics.get(now);
+        assertThat(record.count, equalTo((long) threads * bumpsPerThread));
+        assertThat(record.min, equalTo(1L));
+        assertThat(record.max, equalTo(3L));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -0,0 +1,86 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class TimerWheelTest {
+    private long now = 1508450400L;
+
+    @Test
+    public void idsExpireAtTheirDeadlines() {
+        TimerWheel wheel = new TimerWheel(4, now);
+        wheel.schedule(0, now + 1);
+        wheel.schedule(1, now + 100);
+        wheel.schedule(2, now + 5000);
+        wheel.schedule(3, now + 10);
+        // moved to a later deadline
+        wheel.schedule(3, now + 20);
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(now + 1, expired::add);
+        assertThat(expired, equalTo(Collections.singletonList(0)));
+
+        wheel.advance(now + 19, expired::add);
+        assertThat(expired, equalTo(Collections.singletonList(0)));
+        wheel.advance(now + 20, expired::add);
+        assertThat(expired, equalTo(Arrays.asList(0, 3)));
+
+        wheel.cancel(1);
+        wheel.advance(now + 4999, expired::add);
+        assertThat(expired, equalTo(Arrays.asList(0, 3)));
+        wheel.advance(now + 5000, expired::add);
+        assertThat(expired, equalTo(Arrays.asList(0, 3, 2)));
+        assertThat(wheel.isScheduled(1), equalTo(false));
+    }
+
+    @Test
+    public void farDeadlinesAndLongJumps() {
+        TimerWheel wheel = new TimerWheel(2, now);
+        wheel.schedule(0, now + 1_000_000);
+        wheel.schedule(1, now + 300_000);
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(now + 299_999, expired::add);
+        assertThat(expired, equalTo(Collections.<Integer>emptyList()));
+        wheel.advance(now + 300_000, expired::add);
+        assertThat(expired, equalTo(Collections.singletonList(1)));
+        wheel.advance(now + 999_999, expired::add);
+        assertThat(expired, equalTo(Collections.singletonList(1)));
+        wheel.advance(now + 1_000_000, expired::add);
+        assertThat(expired, equalTo(Arrays.asList(1, 0)));
+    }
+
+    @Test
+    public void randomDeadlinesExpireOnTime() {
+        int n = 1000;
+        Random random = new Random(42);
+        TimerWheel wheel = new TimerWheel(n, now);
+        long[] deadlines = new long[n];
+        for (int id = 0; id < n; id++) {
+            deadlines[id] = now + 1 + random.nextInt(20_000);
+            wheel.schedule(id, deadlines[id]);
+        }
+
+        long[] expiredAt = new long[n];
+        for (long t = now + 1; t <= now + 20_000; t += 1 + random.nextInt(3)) {
+            long at = t;
+            wheel.advance(t, id -> expiredAt[id] = at);
+        }
+        wheel.advance(now + 20_000, id -> expiredAt[id] = now + 20_000);
+        for (int id = 0; id < n; id++) {
+            // time moves by up to 3 seconds at once
+            assertThat(expiredAt[id] >= deadlines[id] && expiredAt[id] < deadlines[id] + 3, equalTo(true));
+        }
+    }
+}
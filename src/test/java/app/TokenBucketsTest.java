@@ -0,0 +1,94 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class TokenBucketsTest {
+    private long now = 1000;
+
+    @Test
+    public void burstThenRate() {
+        TokenBuckets buckets = new TokenBuckets(16, 10, 3);
+        assertThat(acquired(buckets, 1, 10), equalTo(3));
+
+        // 10 per second is a token per 100 ms
+        now += 50;
+        assertThat(buckets.tryAcquire(1, now), equalTo(false));
+        now += 50;
+        assertThat(buckets.tryAcquire(1, now), equalTo(true));
+        assertThat(buckets.tryAcquire(1, now), equalTo(false));
+
+        // never more than the burst
+        now += 60_000;
+        assertThat(acquired(buckets, 1, 10), equalTo(3));
+    }
+
+    @Test
+    public void slowRefillIsNotLost() {
+        TokenBuckets buckets = new TokenBuckets(16, 1, 1);
+        assertThat(buckets.tryAcquire(1, now), equalTo(true));
+        int acquired = 0;
+        for (int i = 0; i < 1000; i++) {
+            now += 10;
+            acquired += acquired(buckets, 1, 1);
+        }
+        // 10 seconds at 1 per second
+        assertThat(acquired >= 9 && acquired <= 10, equalTo(true));
+    }
+
+    @Test
+    public void frequentCallsEarnTheFullRate() {
+        for (int rate : new int[]{100, 7, 333}) {
+            // a burst above one token, so a full bucket doesn't drop what is earned between calls
+            TokenBuckets buckets = new TokenBuckets(16, rate, 2);
+            long key = rate;
+            assertThat(acquired(buckets, key, 2), equalTo(2));
+            int acquired = 0;
+            // a call every millisecond for 10 seconds
+            for (int i = 0; i < 10_000; i++) {
+                now++;
+                acquired += acquired(buckets, key, 1);
+            }
+            assertThat(acquired, equalTo(10 * rate));
+        }
+    }
+
+    @Test
+    public void clientsHaveOwnBuckets() {
+        TokenBuckets buckets = new TokenBuckets(16, 1, 2);
+        assertThat(acquired(buckets, 1, 5), equalTo(2));
+        assertThat(acquired(buckets, 2, 5), equalTo(2));
+        assertThat(acquired(buckets, 3, 5), equalTo(2));
+    }
+
+    @Test
+    public void tableIsBounded() {
+        TokenBuckets buckets = new TokenBuckets(4, 1, 1);
+        for (long key = 1; key <= 1000; key++) {
+            now++;
+            assertThat(buckets.tryAcquire(key * 0x9E3779B97F4A7C15L, now), equalTo(true));
+        }
+        // the most recent client keeps its bucket
+        assertThat(buckets.tryAcquire(1000 * 0x9E3779B97F4A7C15L, now), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void burstMustFit() {
+        new TokenBuckets(16, 1, TokenBuckets.MAX_BURST + 1);
+    }
+
+    private int acquired(TokenBuckets buckets, long key, int attempts) {
+        int acquired = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (buckets.tryAcquire(key, now)) {
+                acquired++;
+            }
+        }
+        return acquired;
+    }
+}
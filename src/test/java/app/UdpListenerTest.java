@@ -0,0 +1,127 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class UdpListenerTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+    private WindowedStatistics statistics = new WindowedStatistics(new Statistics(60, clock), new long[]{60}, clock);
+    private UdpListener listener = new UdpListener(statistics, new UploadValidator(60), clock, null,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+    private void handle(String datagram) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(UdpListener.MAX_DATAGRAM);
+        buffer.put(datagram.getBytes(StandardCharsets.UTF_8)).flip();
+        listener.handle(buffer);
+    }
+
+    @Test
+    public void severalUploadsInDatagram() {
+        handle(String.format("upload:3|%d\nupload:10|%d\r\nupload:1|%d\n\n", now - 10, now - 5, now));
+
+        assertThat(listener.received(), equalTo(1L));
+        assertThat(listener.parsed(), equalTo(3L));
+        assertThat(listener.rejected(), equalTo(0L));
+        assertThat(listener.malformed(), equalTo(0L));
+
+        Statistics.Record record = statistics.report(60, null);
+        assertThat(record.count, equalTo(3L));
+        assertThat(record.sum, equalTo(14L));
+        assertThat(record.min, equalTo(1L));
+        assertThat(record.max, equalTo(10L));
+    }
+
+    @Test
+    public void uploadsAreValidated() {
+        handle(String.format("upload:0|%d\nupload:1|%d\nupload:1|%d\nupload:2|%d",
+                now, now - 61, now + 2, now + 1));
+
+        assertThat(listener.parsed(), equalTo(4L));
+        assertThat(listener.rejected(), equalTo(3L));
+        assertThat(statistics.report(60, null).sum, equalTo(2L));
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() {
+        handle(String.format("upload:1|%d\nuploads:1|%1$d\nupload:|%1$d\nupload:1|\nupload:1\nupload:-1|%1$d\n"
+                + "upload:1|%1$dx\nupload:99999999999999999999|%1$d\nupload:1 |%1$d\nupload:2|%1$d", now));
+
+        assertThat(listener.parsed(), equalTo(2L));
+        assertThat(listener.malformed(), equalTo(8L));
+        assertThat(statistics.report(60, null).sum, equalTo(3L));
+    }
+
+    @Test
+    public void overflowingUploadIsNotLogged() throws Exception {
+        Path dir = Files.createTempDirectory("udp-log");
+        try {
+            UploadLog log = new UploadLog(dir, 1024, 0, statistics, new UploadValidator(60), clock);
+            log.start();
+            listener = new UdpListener(statistics, new UploadValidator(60), clock, log,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            statistics.bump(now, 5_000_000_000_000_000_000L);
+            // the first upload overflows the sum of the second, the other one is counted
+            handle(String.format("upload:5000000000000000000|%d\nupload:7|%d", now, now - 1));
+            assertThat(statistics.report(60, null).count, equalTo(2L));
+            log.stop();
+
+            // an empty server would take the overflowing upload on replay, so it must not be in the log
+            WindowedStatistics restarted = new WindowedStatistics(new Statistics(60, clock), new long[]{60}, clock);
+            log = new UploadLog(dir, 1024, 0, restarted, new UploadValidator(60), clock);
+            log.start();
+            assertThat(log.replayed(), equalTo(1L));
+            assertThat(restarted.report(60, null).sum, equalTo(7L));
+            log.stop();
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void uploadsAreReceivedOverUdp() throws Exception {
+        clock.set(System.currentTimeMillis() / 1000);
+        long now = clock.epochSecond();
+        listener.start();
+        try (DatagramChannel client = DatagramChannel.open()) {
+            InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.port());
+            for (int i = 0; i < 10; i++) {
+                client.send(ByteBuffer.wrap(String.format("upload:1|%d\nupload:2|%1$d", now)
+                        .getBytes(StandardCharsets.UTF_8)), target);
+            }
+            client.send(ByteBuffer.wrap("junk".getBytes(StandardCharsets.UTF_8)), target);
+
+            // datagrams to loopback are not lost unless the receive buffer overflows
+            long deadline = System.currentTimeMillis() + 5000;
+            while (listener.received() < 11 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            listener.stop();
+        }
+
+        assertThat(listener.received(), equalTo(11L));
+        assertThat(listener.parsed(), equalTo(20L));
+        assertThat(listener.malformed(), equalTo(1L));
+        assertThat(statistics.report(60, null).sum, equalTo(30L));
+    }
+}
@@ -6,19 +6,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.time.Instant;
 
+import static org.hamcrest.Matchers.is;
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
 @AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class UploadEndpointTest {
     @Autowired
     private MockMvc mockMvc;
@@ -47,12 +52,31 @@ public class UploadEndpointTest {
     public void postExpiredBatch() throws Exception {
         long now = Instant.now().getEpochSecond();
         MockHttpServletRequestBuilder req = endpoint()
-                .content(String.format("{\"timestamp\":%d,\"count\":2}", now - 100));
+                .content(String.format("{\"timestamp\":%d,\"count\":2}", now - 100000));
 
         this.mockMvc.perform(req)
                 .andExpect(status().is(204));
     }
 
+    @Test
+    public void postBatchBeforeOldestHour() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        if (3600 - Math.floorMod(now, 3600) < 5) {
+            // don't let the boundary move while the test runs
+            Thread.sleep(5000);
+            now = Instant.now().getEpochSecond();
+        }
+        // the 24 hour window keeps 24 aligned hour buckets including the current one
+        long oldest = (Math.floorDiv(now, 3600) - 23) * 3600;
+        this.mockMvc.perform(endpoint().content(String.format("{\"timestamp\":%d,\"count\":2}", oldest)))
+                .andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint().content(String.format("{\"timestamp\":%d,\"count\":3}", oldest - 1)))
+                .andExpect(status().is(204));
+
+        this.mockMvc.perform(get("/statistics?window=24h").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.sum", is(2)));
+    }
+
     @Test
     public void postBatchFromFuture() throws Exception {
         long now = Instant.now().getEpochSecond();
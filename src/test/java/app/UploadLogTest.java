@@ -0,0 +1,206 @@
+package app;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class UploadLogTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+    private UploadValidator validator = new UploadValidator(60);
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("upload-log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private WindowedStatistics statistics() {
+        return new WindowedStatistics(new Statistics(60, clock), new long[]{60}, clock);
+    }
+
+    private UploadLog start(WindowedStatistics statistics, int segmentRecords) throws IOException {
+        UploadLog log = new UploadLog(dir, segmentRecords, 0, statistics, validator, clock);
+        log.start();
+        return log;
+    }
+
+    private long files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void uploadsSurviveRestart() throws Exception {
+        UploadLog log = start(statistics(), 1024);
+        log.append(now - 10, 3);
+        log.append(now - 5, 10);
+        log.append(now, 1);
+        log.stop();
+
+        WindowedStatistics statistics = statistics();
+        log = start(statistics, 1024);
+        assertThat(log.replayed(), equalTo(3L));
+
+        Statistics.Record record = statistics.report(60, null);
+        assertThat(record.count, equalTo(3L));
+        assertThat(record.sum, equalTo(14L));
+        assertThat(record.min, equalTo(1L));
+        assertThat(record.max, equalTo(10L));
+        log.stop();
+    }
+
+    @Test
+    public void onlyUploadsInsideTheWindowAreReplayed() throws Exception {
+        UploadLog log = start(statistics(), 1024);
+        log.append(now - 10, 3);
+        log.append(now, 1);
+        log.stop();
+
+        clock.set(now + 55);
+        WindowedStatistics statistics = statistics();
+        log = start(statistics, 1024);
+        assertThat(log.replayed(), equalTo(1L));
+        assertThat(statistics.report(60, null).sum, equalTo(1L));
+        log.stop();
+
+        // nothing is left to replay, the old segment is deleted
+        clock.set(now + 120);
+        log = start(statistics(), 1024);
+        assertThat(log.replayed(), equalTo(0L));
+        assertThat(files(), equalTo(1L));
+        log.stop();
+    }
+
+    @Test
+    public void fullSegmentsRollAndExpire() throws Exception {
+        UploadLog log = start(statistics(), 2);
+        for (int i = 0; i < 5; i++) {
+            log.append(now, 1);
+        }
+        assertThat(log.segments(), equalTo(3));
+        assertThat(files(), equalTo(3L));
+
+        clock.set(now + 62);
+        log.append(now + 62, 1);
+        log.append(now + 62, 1);
+        // rolling the current segment expires the ones which were closed at now
+        assertThat(log.segments(), equalTo(2));
+        assertThat(files(), equalTo(2L));
+        log.stop();
+
+        // the third segment still has an upload of now which is too old
+        WindowedStatistics statistics = statistics();
+        log = start(statistics, 2);
+        assertThat(log.replayed(), equalTo(2L));
+        assertThat(statistics.report(60, null).count, equalTo(2L));
+        log.stop();
+    }
+
+    @Test
+    public void unwrittenRecordsAreSkipped() throws Exception {
+        UploadLog log = start(statistics(), 1024);
+        log.append(now, 1);
+        log.stop();
+
+        WindowedStatistics statistics = statistics();
+        log = start(statistics, 1024);
+        // the rest of the segment is zeros
+        assertThat(log.replayed(), equalTo(1L));
+        assertThat(statistics.report(60, null).count, equalTo(1L));
+        log.stop();
+    }
+
+    @Test
+    public void batchIsLoggedWhenApplied() throws Exception {
+        WindowedStatistics statistics = statistics();
+        UploadLog log = start(statistics, 1024);
+        UploadBatch batch = new UploadBatch(validator, 3, now, log);
+        read(batch, String.format("[{\"timestamp\":%d,\"count\":2},{\"timestamp\":%d,\"count\":3}]", now, now - 30));
+        batch.applyTo(statistics);
+        log.stop();
+
+        statistics = statistics();
+        log = start(statistics, 1024);
+        assertThat(log.replayed(), equalTo(2L));
+        assertThat(statistics.report(60, null).sum, equalTo(5L));
+        log.stop();
+    }
+
+    @Test
+    public void malformedBatchLeavesNothingToReplay() throws Exception {
+        UploadLog log = start(statistics(), 1024);
+        UploadBatch batch = new UploadBatch(validator, 3, now, log);
+        boolean malformed = false;
+        try {
+            // valid uploads of both the grouped and the late kind come before the malformed element
+            read(batch, String.format("[{\"timestamp\":%d,\"count\":2},{\"timestamp\":%d,\"count\":3},7]",
+                    now, now - 30));
+        } catch (JsonParseException ex) {
+            malformed = true;
+        }
+        assertThat(malformed, is(true));
+        assertThat(batch.accepted(), equalTo(2L));
+        log.stop();
+
+        WindowedStatistics statistics = statistics();
+        log = start(statistics, 1024);
+        assertThat(log.replayed(), equalTo(0L));
+        assertThat(statistics.report(60, null).count, equalTo(0L));
+        log.stop();
+    }
+
+    @Test
+    public void failedRollKeepsTheFullSegment() throws Exception {
+        UploadLog log = start(statistics(), 1);
+        log.append(now, 1);
+        tearDown();
+
+        boolean failed = false;
+        try {
+            log.append(now, 2);
+        } catch (UncheckedIOException ex) {
+            failed = true;
+        }
+        assertThat(failed, is(true));
+        assertThat(log.segments(), equalTo(1));
+
+        Files.createDirectories(dir);
+        log.append(now, 3);
+        assertThat(log.segments(), equalTo(2));
+        log.stop();
+    }
+
+    private static void read(UploadBatch batch, String body) throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(body)) {
+            batch.read(parser);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"uploaders.enabled=true"})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class UploaderEndpointTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    public MockHttpServletRequestBuilder endpoint(long ts, int count, String uploader) {
+        return post("/upload").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(String.format("{\"timestamp\":%d,\"count\":%d,\"uploader\":\"%s\"}", ts, count, uploader));
+    }
+
+    @Test
+    public void topUploaders() throws Exception {
+        long now = Instant.now().getEpochSecond();
+
+        this.mockMvc.perform(endpoint(now, 2, "alice")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now - 3, 5, "alice")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 3, "bob")).andExpect(status().isAccepted());
+        this.mockMvc.perform(endpoint(now, 1, "carol")).andExpect(status().isAccepted());
+
+        this.mockMvc.perform(get("/statistics/top?k=2").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.uploaders.length()", is(2)))
+                .andExpect(jsonPath("$.uploaders[0].uploader", is("alice")))
+                .andExpect(jsonPath("$.uploaders[0].count", is(7)))
+                .andExpect(jsonPath("$.uploaders[1].uploader", is("bob")))
+                .andExpect(jsonPath("$.distinctUploaders", is(3)));
+
+        this.mockMvc.perform(get("/statistics").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.sum", is(11)))
+                .andExpect(jsonPath("$.distinctUploaders", is(3)));
+    }
+
+    @Test
+    public void invalidRequests() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        this.mockMvc.perform(endpoint(now, 2, "")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/top?k=0")).andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/statistics/top?k=101")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,123 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class UploaderStatisticsTest {
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+
+    @Test
+    public void countMinSketchStaysWithinItsBound() {
+        CountMinSketch sketch = new CountMinSketch(UploaderStatistics.DEPTH, UploaderStatistics.WIDTH);
+        int items = 20_000;
+        long[] weights = new long[items];
+        Random random = new Random(1);
+        for (int i = 0; i < items; i++) {
+            // heavy tail: a few items have most of the weight
+            weights[i] = 1 + (long) (1000 / Math.pow(i + 1, 0.8)) + random.nextInt(5);
+            sketch.add(UploaderStatistics.hash("uploader-" + i), weights[i]);
+        }
+
+        double bound = sketch.errorBound();
+        int outside = 0;
+        for (int i = 0; i < items; i++) {
+            long estimate = sketch.estimate(UploaderStatistics.hash("uploader-" + i));
+            assertThat(estimate >= weights[i], equalTo(true));
+            if (estimate - weights[i] > bound) {
+                outside++;
+            }
+        }
+        // the bound holds with probability 1 - e^-depth for every item
+        assertThat((double) outside / items <= 1 - sketch.confidence(), equalTo(true));
+    }
+
+    @Test
+    public void hyperLogLogStaysWithinItsError() {
+        for (int n : new int[]{10, 1_000, 100_000, 1_000_000}) {
+            HyperLogLog merged = new HyperLogLog(UploaderStatistics.PRECISION);
+            HyperLogLog[] parts = new HyperLogLog[4];
+            for (int p = 0; p < parts.length; p++) {
+                parts[p] = new HyperLogLog(UploaderStatistics.PRECISION);
+            }
+            for (int i = 0; i < n; i++) {
+                long hash = UploaderStatistics.hash("uploader-" + i);
+                // every part sees some items twice, duplicates don't count
+                parts[i % 4].add(hash);
+                parts[(i + 1) % 4].add(hash);
+            }
+            for (HyperLogLog part : parts) {
+                merged.add(part);
+            }
+            double error = Math.abs((double) merged.estimate() - n) / n;
+            // three standard errors
+            assertThat(n + ": " + error, error <= 3 * merged.standardError(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void heavyUploadersAreOnTop() {
+        UploaderStatistics statistics = new UploaderStatistics(60, clock);
+        Random random = new Random(7);
+        for (int second = 0; second < 60; second++) {
+            long ts = now - second;
+            for (int i = 0; i < 2000; i++) {
+                statistics.bump("casual-" + random.nextInt(50_000), ts, 1 + random.nextInt(3));
+            }
+            for (int heavy = 0; heavy < 5; heavy++) {
+                statistics.bump("heavy-" + heavy, ts, 100 * (heavy + 1));
+            }
+        }
+
+        UploaderStatistics.Top top = statistics.top(5);
+        List<String> names = top.uploaders.stream().map(u -> u.uploader).collect(Collectors.toList());
+        assertThat(names, equalTo(Arrays.asList("heavy-4", "heavy-3", "heavy-2", "heavy-1", "heavy-0")));
+        for (UploaderStatistics.Uploader uploader : top.uploaders) {
+            long exact = 60L * 100 * (Integer.parseInt(uploader.uploader.substring(6)) + 1);
+            assertThat(uploader.count >= exact && uploader.count <= exact + top.errorBound, equalTo(true));
+        }
+
+        // 5 heavy and about 45,000 of 50,000 casual uploaders are seen
+        double expected = 5 + 50_000 * (1 - Math.pow(1 - 1.0 / 50_000, 120_000));
+        assertThat(Math.abs(top.distinct - expected) / expected <= 3 * 1.04 / Math.sqrt(1 << UploaderStatistics.PRECISION),
+                equalTo(true));
+        assertThat(statistics.distinct(), equalTo(top.distinct));
+    }
+
+    @Test
+    public void secondsLeaveTheWindow() {
+        UploaderStatistics statistics = new UploaderStatistics(60, clock);
+        statistics.bump("alice", now - 10, 3);
+        statistics.bump("bob", now, 10);
+        statistics.bump("alice", now + 1, 2);
+        // outside of the window
+        statistics.bump("carol", now - 60, 100);
+        statistics.bump("carol", now + 2, 100);
+
+        UploaderStatistics.Top top = statistics.top(10);
+        assertThat(top.uploaders.size(), equalTo(2));
+        assertThat(top.uploaders.get(0).uploader, equalTo("bob"));
+        assertThat(top.uploaders.get(0).count, equalTo(10L));
+        assertThat(top.uploaders.get(1).count, equalTo(5L));
+        assertThat(top.distinct, equalTo(2L));
+
+        clock.set(now + 51);
+        top = statistics.top(10);
+        assertThat(top.uploaders.size(), equalTo(2));
+        assertThat(top.uploaders.get(1).count, equalTo(2L));
+
+        clock.set(now + 100);
+        assertThat(statistics.top(10).uploaders.size(), equalTo(0));
+        assertThat(statistics.distinct(), equalTo(0L));
+    }
+}
@@ -0,0 +1,147 @@
+package app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(JUnit4.class)
+public class WindowedStatisticsTest {
+    // the beginning of an hour
+    private long now = 1508450400L;
+    private VirtualClock clock = new VirtualClock(now);
+
+    private WindowedStatistics statistics(String... windows) {
+        long[] seconds = new long[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            seconds[i] = WindowedStatistics.parseWindow(windows[i]);
+        }
+        return new WindowedStatistics(new Statistics(60, clock), seconds, clock);
+    }
+
+    @Test
+    public void parseWindows() {
+        assertThat(WindowedStatistics.parseWindow("90"), equalTo(90L));
+        assertThat(WindowedStatistics.parseWindow("90s"), equalTo(90L));
+        assertThat(WindowedStatistics.parseWindow("5m"), equalTo(300L));
+        assertThat(WindowedStatistics.parseWindow("1h"), equalTo(3600L));
+        assertThat(WindowedStatistics.parseWindow("1d"), equalTo(86400L));
+    }
+
+    @Test
+    public void reportsEveryWindow() {
+        WindowedStatistics statistics = statistics("1m", "5m", "1h", "24h");
+        clock.set(now + 30 * 60);
+
+        statistics.bump(now + 30 * 60, 1);           // now
+        statistics.bump(now + 28 * 60, 2);           // 2 minutes ago
+        statistics.bump(now + 10 * 60, 3);           // 20 minutes ago
+        statistics.bump(now - 5 * 3600, 4);          // 5.5 hours ago
+        statistics.bump(now - 30 * 3600, 5);         // too old for every window
+
+        assertThat(statistics.report(60, null).count, equalTo(1L));
+        assertThat(statistics.report(300, null).sum, equalTo(3L));
+        assertThat(statistics.report(3600, null).sum, equalTo(6L));
+
+        Statistics.Record day = statistics.report(86400, null);
+        assertThat(day.count, equalTo(4L));
+        assertThat(day.min, equalTo(1L));
+        assertThat(day.max, equalTo(4L));
+        assertThat(day.sum, equalTo(10L));
+    }
+
+    @Test
+    public void versionFollowsEveryLevel() {
+        WindowedStatistics statistics = statistics("1m", "1h");
+
+        long version = statistics.version();
+        assertThat(statistics.version(), equalTo(version));
+
+        // too old for the seconds level, but not for minutes
+        statistics.bump(now - 150, 1);
+        assertThat(statistics.version() > version, is(true));
+
+        version = statistics.version();
+        clock.advance(1);
+        assertThat(statistics.version() > version, is(true));
+    }
+
+    @Test
+    public void longWindowsExpireByBuckets() {
+        WindowedStatistics statistics = statistics("5m");
+        clock.set(now + 59);
+        statistics.bump(now, 7);
+
+        LogHistogram histogram = new LogHistogram();
+        assertThat(statistics.report(300, histogram).count, equalTo(1L));
+        assertThat(histogram.valueAt(0.5), equalTo(7L));
+
+        // minute of the upload is the oldest one in the window
+        clock.set(now + 4 * 60 + 59);
+        assertThat(statistics.report(300, null).count, equalTo(1L));
+
+        clock.set(now + 5 * 60);
+        assertThat(statistics.report(300, null).count, equalTo(0L));
+    }
+
+    @Test
+    public void hoursOfTrafficWithVirtualClock() {
+        WindowedStatistics statistics = statistics("1m", "5m", "1h", "24h");
+
+        // an upload every second for 3 hours
+        for (long ts = now; ts <= now + 3 * 3600; ts++) {
+            clock.set(ts);
+            statistics.bump(ts, 1);
+        }
+
+        assertThat(statistics.report(60, null).count, equalTo(60L));
+        // the current minute has just started
+        assertThat(statistics.report(300, null).count, equalTo(4 * 60 + 1L));
+        assertThat(statistics.report(3600, null).count, equalTo(59 * 60 + 1L));
+        assertThat(statistics.report(86400, null).count, equalTo(3 * 3600 + 1L));
+    }
+
+    @Test
+    public void defaultWindowIsAlwaysSupported() {
+        WindowedStatistics statistics = statistics("1h");
+        assertThat(statistics.supports(60), is(true));
+        assertThat(statistics.supports(3600), is(true));
+        assertThat(statistics.supports(300), is(false));
+        assertThat(statistics.largestWindow(), equalTo(3600L));
+    }
+
+    @Test
+    public void oldestFollowsCoarsestBuckets() {
+        clock.set(now + 30 * 60);
+        // 24 hour buckets starting at the hour 23 hours ago, not 24 hours ago
+        assertThat(statistics("1m", "24h").oldest(now + 30 * 60), equalTo(now - 23 * 3600));
+        assertThat(statistics("1h").oldest(now + 30 * 60), equalTo(now - 29 * 60));
+        assertThat(statistics("5m").oldest(now + 30 * 60), equalTo(now + 25 * 60));
+        // the seconds level keeps the last 60 seconds including the current one
+        assertThat(statistics("1m").oldest(now + 30 * 60), equalTo(now + 30 * 60 - 59));
+    }
+
+    @Test
+    public void uploadsFromOldestTimestampAreCounted() {
+        WindowedStatistics statistics = statistics("1m", "24h");
+        clock.set(now + 30 * 60);
+        long oldest = statistics.oldest(now + 30 * 60);
+        statistics.bump(oldest, 1);
+        statistics.bump(oldest - 1, 2);
+        assertThat(statistics.report(86400, null).sum, equalTo(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedWindowFails() {
+        statistics("1m").report(300, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowWhichDoesNotFitAnyLevelFails() {
+        statistics("90m");
+    }
+}